@@ -0,0 +1,36 @@
+package com.scriptsentries.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * How analysis capacity is shared between tenants ({@code scriptsentries.analysis.fair-share}).
+ *
+ * A tenant is the project's studio ({@code tenant-by: studio}, projects without a studio
+ * name fall back to {@code project-<id>}) or each project on its own ({@code tenant-by: project}).
+ * {@code weights} maps tenant keys to their share of the page slots relative to
+ * {@code default-weight}; studio names with spaces need brackets in YAML ({@code "[Acme Pictures]": 3}).
+ * A tenant with nothing queued or running for {@code idle-eviction} is forgotten, meters included.
+ */
+@ConfigurationProperties(prefix = "scriptsentries.analysis.fair-share")
+public record FairShareProperties(String tenantBy, Integer defaultWeight, Map<String, Integer> weights,
+                                  Duration idleEviction) {
+
+    public FairShareProperties {
+        tenantBy = tenantBy == null ? "studio" : tenantBy;
+        defaultWeight = defaultWeight == null ? 1 : Math.max(1, defaultWeight);
+        weights = weights == null ? Map.of() : Map.copyOf(weights);
+        idleEviction = idleEviction == null ? Duration.ofMinutes(10) : idleEviction;
+    }
+
+    public boolean byStudio() {
+        return !"project".equalsIgnoreCase(tenantBy);
+    }
+
+    public int weightOf(String tenant) {
+        Integer weight = weights.get(tenant);
+        return weight != null ? Math.max(1, weight) : defaultWeight;
+    }
+}
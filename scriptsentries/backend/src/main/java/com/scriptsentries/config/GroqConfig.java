@@ -4,18 +4,47 @@ import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.retry.support.RetryTemplate;
 
 @Configuration
+@EnableConfigurationProperties(LlmPoolProperties.class)
 public class GroqConfig {
     @Bean
-    public OpenAiChatModel openAiChatModel(@Value("${spring.ai.openai.api-key}") String apiKey) {
+    @Primary
+    public OpenAiChatModel openAiChatModel(
+            @Value("${spring.ai.openai.api-key}") String apiKey,
+            @Value("${spring.ai.openai.chat.options.model:llama-3.3-70b-versatile}") String model) {
         // We hardcode the URL here to bypass all discovery bugs
         var openAiApi = new OpenAiApi("https://api.groq.com/openai", apiKey);
         return new OpenAiChatModel(openAiApi, OpenAiChatOptions.builder()
-                .withModel("llama-3.3-70b-versatile")
+                .withModel(model)
                 .withTemperature(0.1f)
-                .build());
+                .build(), null, singleAttempt());
     }
-}
\ No newline at end of file
+
+    /**
+     * No retries inside the chat model: LlmGateway retries 429s and fails over, and a 5xx
+     * must reach it at once so the endpoint's circuit breaker sees it. Spring AI's default
+     * template would retry 5xx for minutes, past the request deadline.
+     */
+    public static RetryTemplate singleAttempt() {
+        return RetryTemplate.builder().maxAttempts(1).build();
+    }
+
+    /** Small, cheap model that decides which pages are worth the large model (see PageScreener). */
+    @Bean
+    public OpenAiChatModel screeningChatModel(
+            @Value("${spring.ai.openai.api-key}") String apiKey,
+            @Value("${scriptsentries.analysis.cascade.screening-model:llama-3.1-8b-instant}") String model) {
+        var openAiApi = new OpenAiApi("https://api.groq.com/openai", apiKey);
+        return new OpenAiChatModel(openAiApi, OpenAiChatOptions.builder()
+                .withModel(model)
+                .withTemperature(0.0f)
+                .withMaxTokens(200)
+                .build(), null, singleAttempt());
+    }
+}
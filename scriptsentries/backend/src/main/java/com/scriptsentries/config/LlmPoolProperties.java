@@ -0,0 +1,27 @@
+package com.scriptsentries.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+
+/**
+ * OpenAI-compatible endpoints page requests are spread over
+ * ({@code scriptsentries.llm.pool.endpoints}). When the list is empty the single Groq
+ * endpoint from {@code spring.ai.openai.*} is used, as before.
+ *
+ * {@code baseUrl} is the API root without {@code /v1} (e.g. {@code https://api.groq.com/openai}
+ * or {@code http://localhost:8000} for a local stand-in). Unset weights default to 1 and
+ * unset limits to {@code scriptsentries.llm.requests-per-minute} / {@code tokens-per-minute}.
+ * Members may serve different models. Cached page results are keyed on all of the pool's
+ * models, so changing any member's model starts a fresh cache.
+ */
+@ConfigurationProperties(prefix = "scriptsentries.llm.pool")
+public record LlmPoolProperties(List<Endpoint> endpoints) {
+
+    public LlmPoolProperties {
+        endpoints = endpoints == null ? List.of() : List.copyOf(endpoints);
+    }
+
+    public record Endpoint(String name, String baseUrl, String apiKey, String model, Integer weight,
+                           Integer requestsPerMinute, Integer tokensPerMinute) {}
+}
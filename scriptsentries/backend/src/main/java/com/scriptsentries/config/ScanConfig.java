@@ -0,0 +1,72 @@
+package com.scriptsentries.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Executors used by the scan pipeline.
+ *
+ * The scan job pool is deliberately small and bounded: each job holds a temp PDF
+ * on disk until it finishes, so an unbounded queue would defeat zero-retention.
+ * When the queue is full the upload is rejected (503) instead of piling up.
+ *
+ * Queued jobs do not start in arrival order: {@link PrioritizedTask}s go urgent first,
+ * then by how many jobs their tenant already had in the system, so a studio's fifth
+ * draft waits behind another studio's first. Page-level sharing is done by
+ * {@link com.scriptsentries.service.AnalysisExecutor}.
+ *
+ * Scheduling is enabled for the pipeline's background upkeep: lease renewal and orphan
+ * adoption in distributed mode, re-runs of degraded scans, and the checkpoint scratch
+ * sweeper.
+ */
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties(FairShareProperties.class)
+public class ScanConfig {
+
+    /** A scan job with its place in the queue; {@code tenantRank} is the tenant's jobs ahead of it. */
+    public record PrioritizedTask(Runnable task, boolean urgent, int tenantRank, long sequence) implements Runnable {
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private static final Comparator<Runnable> SCAN_ORDER = Comparator
+            .comparing((Runnable r) -> !(r instanceof PrioritizedTask p && p.urgent()))
+            .thenComparingInt(r -> r instanceof PrioritizedTask p ? p.tenantRank() : Integer.MAX_VALUE)
+            .thenComparingLong(r -> r instanceof PrioritizedTask p ? p.sequence() : Long.MAX_VALUE);
+
+    @Bean(name = "scanJobExecutor")
+    public ThreadPoolTaskExecutor scanJobExecutor(
+            @Value("${scriptsentries.scan.workers:4}") int workers,
+            @Value("${scriptsentries.scan.queue-capacity:50}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor() {
+            @Override
+            protected BlockingQueue<Runnable> createQueue(int capacity) {
+                // Bounded like the default queue: a full queue rejects the job
+                return new PriorityBlockingQueue<>(Math.max(1, capacity), SCAN_ORDER) {
+                    @Override
+                    public synchronized boolean offer(Runnable task) {
+                        return size() < capacity && super.offer(task);
+                    }
+                };
+            }
+        };
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("scan-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -2,6 +2,7 @@ package com.scriptsentries.controller;
 
 import com.scriptsentries.dto.RiskFlagResponse;
 import com.scriptsentries.dto.RiskUpdateRequest;
+import com.scriptsentries.dto.ScanJobResponse;
 import com.scriptsentries.dto.ScriptResponse;
 import com.scriptsentries.model.Project;
 import com.scriptsentries.model.RiskFlag;
@@ -10,8 +11,9 @@ import com.scriptsentries.repository.ProjectRepository;
 import com.scriptsentries.repository.RiskFlagRepository;
 import com.scriptsentries.repository.ScriptRepository;
 import com.scriptsentries.service.ExcelExportService;
-import com.scriptsentries.service.PdfExtractionService;
-import com.scriptsentries.service.ScriptAnalysisService;
+import com.scriptsentries.service.ScanEventBroadcaster;
+import com.scriptsentries.service.ScanJob;
+import com.scriptsentries.service.ScanJobService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ContentDisposition;
@@ -20,11 +22,10 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -39,8 +40,8 @@ public class ScriptController {
 
     private final ScriptRepository scriptRepository;
     private final RiskFlagRepository riskFlagRepository;
-    private final PdfExtractionService pdfExtractionService;
-    private final ScriptAnalysisService scriptAnalysisService;
+    private final ScanJobService scanJobService;
+    private final ScanEventBroadcaster scanEventBroadcaster;
     private final ExcelExportService excelExportService;
     private final ProjectRepository projectRepository;
 
@@ -73,12 +74,15 @@ public class ScriptController {
     }
 
     // ─────────────────────────────────────────────────────────────────────────
-    // POST /api/scripts/scan — ZERO RETENTION PDF ANALYSIS (PROJECT-AWARE)
+    // POST /api/scripts/scan — ZERO RETENTION PDF ANALYSIS (PROJECT-AWARE, ASYNC)
+    // Returns 202 + job id immediately; extraction and analysis run on the scan pool.
     // ─────────────────────────────────────────────────────────────────────────
     @PostMapping(value = "/scripts/scan", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<ScriptResponse> scanScript(
+    public ResponseEntity<ScanJobResponse> scanScript(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("projectId") Long projectId) throws IOException {
+            @RequestParam("projectId") Long projectId,
+            @RequestParam(value = "profile", defaultValue = "STANDARD") Script.ScanProfile profile,
+            @RequestParam(value = "urgent", defaultValue = "false") boolean urgent) throws IOException {
 
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().build();
@@ -98,56 +102,57 @@ public class ScriptController {
                 .riskCount(0)
                 .project(project)
                 .status(Script.ScriptStatus.PROCESSING)
+                .scanProfile(profile)
+                .urgent(urgent)
                 .build();
         script = scriptRepository.save(script);
 
-        // Write PDF to a TEMP FILE — ZERO RETENTION
+        // 3. Move the stored upload to a TEMP FILE — ZERO RETENTION (the scan job deletes it
+        //    after extraction). transferTo renames the multipart's own disk file where it can,
+        //    so the PDF is never copied onto the heap.
         File tempFile = File.createTempFile("ss_" + UUID.randomUUID(), ".pdf");
 
         try {
-            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-                fos.write(file.getBytes());
-            }
-
-            List<String> pages = pdfExtractionService.extractPages(tempFile);
-            log.info("Extracted {} pages from '{}'", pages.size(), originalFilename);
-
-            script.setTotalPages(pages.size());
-            script = scriptRepository.save(script);
-
-            // Run AI analysis
-            List<RiskFlag> flags = scriptAnalysisService.analyzeScript(pages, script);
-            riskFlagRepository.saveAll(flags);
-
-            // Update script with final counts and status
-            script.setRiskCount(flags.size());
-            script.setStatus(Script.ScriptStatus.COMPLETE);
-            script = scriptRepository.save(script);
-
-            log.info("Analysis complete for '{}': {} risks found", originalFilename, flags.size());
-
-            List<RiskFlagResponse> risks = flags.stream().map(RiskFlagResponse::from).toList();
-            return ResponseEntity.ok(ScriptResponse.from(script, risks));
-
-        } catch (Exception e) {
+            file.transferTo(tempFile);
+        } catch (IOException e) {
+            tempFile.delete();
             script.setStatus(Script.ScriptStatus.FAILED);
             scriptRepository.save(script);
-            log.error("Analysis failed for '{}': {}", originalFilename, e.getMessage(), e);
             throw e;
-        } finally {
-            // ZERO-RETENTION: CRITICAL — delete temp PDF regardless of outcome
-            boolean deleted = tempFile.delete();
-            if (deleted) {
-                log.info("ZERO-RETENTION: Temp PDF '{}' securely deleted", tempFile.getName());
-            } else {
-                log.error("ZERO-RETENTION VIOLATION: Failed to delete temp file '{}'! Manual cleanup required.", tempFile.getAbsolutePath());
-                try {
-                    Files.deleteIfExists(tempFile.toPath());
-                } catch (IOException ex) {
-                    log.error("NIO fallback delete also failed: {}", ex.getMessage());
-                }
-            }
         }
+
+        // 4. Hand off to the scan pool and return straight away
+        ScanJob job = scanJobService.submit(script, tempFile);
+        return ResponseEntity.accepted().body(ScanJobResponse.from(job));
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // GET /api/scripts/scan/jobs/{jobId} — poll scan progress
+    // ─────────────────────────────────────────────────────────────────────────
+    @GetMapping("/scripts/scan/jobs/{jobId}")
+    public ResponseEntity<ScanJobResponse> getScanJob(@PathVariable String jobId) {
+        ScanJob job = scanJobService.findJob(jobId)
+                .orElseThrow(() -> new RuntimeException("Scan job not found: " + jobId));
+        return ResponseEntity.ok(ScanJobResponse.from(job));
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // GET /api/scripts/scan/jobs/{jobId}/events — SSE: progress + flags per finished page
+    // ─────────────────────────────────────────────────────────────────────────
+    @GetMapping(value = "/scripts/scan/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamScanJob(@PathVariable String jobId) {
+        ScanJob job = scanJobService.findJob(jobId)
+                .orElseThrow(() -> new RuntimeException("Scan job not found: " + jobId));
+        return scanEventBroadcaster.subscribe(job);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // POST /api/scripts/{id}/resume — re-run unfinished pages of a failed scan, or degraded pages
+    // ─────────────────────────────────────────────────────────────────────────
+    @PostMapping("/scripts/{id:\\d+}/resume")
+    public ResponseEntity<ScanJobResponse> resumeScan(@PathVariable Long id) {
+        ScanJob job = scanJobService.resume(id);
+        return ResponseEntity.accepted().body(ScanJobResponse.from(job));
     }
 
     // ─────────────────────────────────────────────────────────────────────────
@@ -29,5 +29,6 @@ public class AiPageAnalysisResult {
         private String snippet;
         private String reason;
         private String suggestion;
+        private Integer pageNumber;     // page the risk was found on (multi-page requests)
     }
 }
@@ -0,0 +1,45 @@
+package com.scriptsentries.dto;
+
+import com.scriptsentries.service.ScanJob;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class ScanJobResponse {
+    private String jobId;
+    private Long scriptId;
+    private String filename;
+    private String tenant;
+    private boolean urgent;
+    private ScanJob.State state;
+    private int pagesDone;
+    private int pagesTotal;
+    private int pagesFailed;
+    private int pagesDegraded;
+    private int riskCount;
+    private String error;
+    private Instant submittedAt;
+    private Instant finishedAt;
+
+    public static ScanJobResponse from(ScanJob job) {
+        return ScanJobResponse.builder()
+                .jobId(job.getJobId())
+                .scriptId(job.getScriptId())
+                .filename(job.getFilename())
+                .tenant(job.getTenant())
+                .urgent(job.isUrgent())
+                .state(job.getState())
+                .pagesDone(job.getPagesDone().get())
+                .pagesTotal(job.getPagesTotal())
+                .pagesFailed(job.getPagesFailed().get())
+                .pagesDegraded(job.getPagesDegraded().get())
+                .riskCount(job.getRiskCount().get())
+                .error(job.getError())
+                .submittedAt(job.getSubmittedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
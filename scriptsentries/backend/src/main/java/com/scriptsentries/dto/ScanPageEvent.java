@@ -0,0 +1,16 @@
+package com.scriptsentries.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/** Payload of the {@code page} SSE event: one finished page and its flags. */
+@Data
+@Builder
+public class ScanPageEvent {
+    private int pageNumber;
+    private int pagesDone;
+    private int pagesTotal;
+    private List<RiskFlagResponse> risks;
+}
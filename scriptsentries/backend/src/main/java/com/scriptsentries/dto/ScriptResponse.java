@@ -15,6 +15,7 @@ public class ScriptResponse {
     private int totalPages;
     private int riskCount;
     private Script.ScriptStatus status;
+    private boolean degraded;
     private LocalDateTime uploadedAt;
     private List<RiskFlagResponse> risks;
 
@@ -25,6 +26,7 @@ public class ScriptResponse {
                 .totalPages(s.getTotalPages())
                 .riskCount(s.getRiskCount())
                 .status(s.getStatus())
+                .degraded(Boolean.TRUE.equals(s.getDegraded()))
                 .uploadedAt(s.getUploadedAt())
                 .risks(risks)
                 .build();
@@ -0,0 +1,36 @@
+package com.scriptsentries.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cached AI result for one page, addressed by a hash of the page content.
+ *
+ * ZERO-RETENTION: only the SHA-256 key and the structured risk items are stored —
+ * never the page text itself.
+ */
+@Entity
+@Table(name = "page_analysis_cache")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PageAnalysisCacheEntry {
+
+    /** Hex SHA-256 of prompt version + model id + normalized page text. */
+    @Id
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    /** JSON array of AiRiskItem; "[]" for pages the model found clean. */
+    @Column(name = "risks_json", columnDefinition = "TEXT", nullable = false)
+    private String risksJson;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+}
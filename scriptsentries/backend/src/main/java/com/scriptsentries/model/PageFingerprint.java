@@ -0,0 +1,42 @@
+package com.scriptsentries.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Content hash and MinHash signature of one page of an analyzed script version.
+ * Lets a later draft in the same project tell which pages are unchanged — or only
+ * shifted — without the page text ever being stored (zero-retention).
+ */
+@Entity
+@Table(name = "page_fingerprints", indexes = @Index(name = "idx_page_fingerprints_script", columnList = "script_id"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PageFingerprint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "script_id", nullable = false)
+    private Script script;
+
+    @Column(name = "page_number", nullable = false)
+    private int pageNumber;
+
+    /** Hex SHA-256 of the whitespace-normalized page text. */
+    @Column(name = "content_hash", length = 64, nullable = false)
+    private String contentHash;
+
+    /** MinHash signature (see service.MinHash), 4 bytes per value. Null for pre-MinHash rows. */
+    @Column(name = "minhash")
+    private byte[] minhash;
+
+    /** Number of word 3-gram shingles the signature was built from. */
+    @Column(name = "shingle_count")
+    private int shingleCount;
+}
@@ -0,0 +1,75 @@
+package com.scriptsentries.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Checkpoint for one page of a scan: whether its results are persisted, how often it
+ * was attempted, and — only until the scan completes or the TTL passes — its text,
+ * AES-GCM encrypted, so an interrupted or partly failed scan can resume without the PDF.
+ *
+ * With distributed scanning the PENDING rows are also the work queue: a node's
+ * {@code ScanPageWorker} leases them ({@code leasedBy}, {@code leaseExpiresAt}) and
+ * pages whose lease runs out are claimed again by any node.
+ */
+@Entity
+@Table(name = "scan_pages",
+        uniqueConstraints = @UniqueConstraint(name = "uk_scan_pages_script_page", columnNames = {"script_id", "page_number"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScanPage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "script_id", nullable = false)
+    private Script script;
+
+    @Column(name = "page_number", nullable = false)
+    private int pageNumber;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @Builder.Default
+    private State state = State.PENDING;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    /** DONE from the local detectors only (model unavailable); scratch is kept for the re-run. */
+    @Column(name = "degraded")
+    private Boolean degraded;
+
+    /** IV + ciphertext of the page text (see service.ScratchCipher); null once wiped. */
+    @Column(name = "scratch")
+    private byte[] scratch;
+
+    @Column(name = "scratch_expires_at")
+    private LocalDateTime scratchExpiresAt;
+
+    /** Node analyzing the page; meaningful only while {@code leaseExpiresAt} is in the future. */
+    @Column(name = "leased_by", length = 100)
+    private String leasedBy;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public enum State {
+        PENDING, DONE, FAILED
+    }
+}
@@ -0,0 +1,76 @@
+package com.scriptsentries.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Routing and cost record of one analysis run of a script — the first scan or a resume.
+ * Says how many pages each tier of the cascade settled and how many calls and tokens
+ * each model tier used; costs are estimates from the configured token prices.
+ */
+@Entity
+@Table(name = "scan_runs", indexes = @Index(name = "idx_scan_runs_script", columnList = "script_id"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScanRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "script_id", nullable = false)
+    private Script script;
+
+    @Column(name = "pages_requested", nullable = false)
+    private int pagesRequested;
+
+    /** Pages the local rules found nothing model-worthy on. */
+    @Column(name = "pages_rule_cleared", nullable = false)
+    private int pagesRuleCleared;
+
+    @Column(name = "pages_from_cache", nullable = false)
+    private int pagesFromCache;
+
+    @Column(name = "pages_screened", nullable = false)
+    private int pagesScreened;
+
+    /** Pages the screening model cleared, so the large model never saw them. */
+    @Column(name = "pages_screen_cleared", nullable = false)
+    private int pagesScreenCleared;
+
+    @Column(name = "pages_large_model", nullable = false)
+    private int pagesLargeModel;
+
+    /** Pages left with local findings only because the model was unavailable. Null on older rows. */
+    @Column(name = "pages_degraded")
+    private Integer pagesDegraded;
+
+    @Column(name = "screening_calls", nullable = false)
+    private int screeningCalls;
+
+    @Column(name = "screening_tokens", nullable = false)
+    private long screeningTokens;
+
+    @Column(name = "screening_cost_usd", nullable = false)
+    private double screeningCostUsd;
+
+    @Column(name = "large_model_calls", nullable = false)
+    private int largeModelCalls;
+
+    @Column(name = "large_model_tokens", nullable = false)
+    private long largeModelTokens;
+
+    @Column(name = "large_model_cost_usd", nullable = false)
+    private double largeModelCostUsd;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -38,6 +38,11 @@ public class Script {
     @Builder.Default
     private ScriptStatus status = ScriptStatus.PROCESSING;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "scan_profile")
+    @Builder.Default
+    private ScanProfile scanProfile = ScanProfile.STANDARD;
+
     @CreationTimestamp
     @Column(name = "uploaded_at", updatable = false)
     private LocalDateTime uploadedAt;
@@ -56,6 +61,28 @@ public class Script {
     @Column(name = "deleted_at")
     private LocalDateTime deletedAt;
 
+    /**
+     * True when some pages were analyzed by the local detectors only because the model
+     * was unavailable; those pages are re-run once it is back. Null on older rows.
+     */
+    @Column(name = "degraded")
+    private Boolean degraded;
+
+    /** Urgent clearance: its pages are served ahead of normal scans. Null on older rows. */
+    @Column(name = "urgent")
+    private Boolean urgent;
+
+    /** Node that runs (coordinates) the current scan job; a restart only fails its own scans. */
+    @Column(name = "scan_node", length = 100)
+    private String scanNode;
+
+    /**
+     * Renewed by the coordinating node while its job runs; once it has run out, another
+     * node takes the scan over (distributed mode). Null on older rows.
+     */
+    @Column(name = "scan_lease_expires_at")
+    private LocalDateTime scanLeaseExpiresAt;
+
     @OneToMany(mappedBy = "script", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<RiskFlag> risks;
 
@@ -64,4 +91,12 @@ public class Script {
     public enum ScriptStatus {
         PROCESSING, COMPLETE, FAILED
     }
+
+    /**
+     * STANDARD sends every page with a candidate entity to the model; FAST only pages
+     * with a dictionary or rule hit, trading recall on unknown names for speed and cost.
+     */
+    public enum ScanProfile {
+        STANDARD, FAST
+    }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.scriptsentries.repository;
+
+import com.scriptsentries.model.PageFingerprint;
+import com.scriptsentries.model.Project;
+import com.scriptsentries.model.Script;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PageFingerprintRepository extends JpaRepository<PageFingerprint, Long> {
+    List<PageFingerprint> findByScriptOrderByPageNumberAsc(Script script);
+
+    /**
+     * Signed pages of every completed, active version in the project except {@code exclude};
+     * degraded versions are left out, their pages were never seen by the model.
+     */
+    @Query("SELECT f FROM PageFingerprint f JOIN FETCH f.script s " +
+            "WHERE s.project = :project AND s <> :exclude AND s.deletedAt IS NULL " +
+            "AND s.status = com.scriptsentries.model.Script.ScriptStatus.COMPLETE " +
+            "AND (s.degraded IS NULL OR s.degraded = false) " +
+            "AND f.minhash IS NOT NULL " +
+            "ORDER BY s.uploadedAt DESC, f.pageNumber ASC")
+    List<PageFingerprint> findSignedByProjectExcluding(@Param("project") Project project,
+                                                       @Param("exclude") Script exclude);
+}
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -24,4 +25,6 @@ public interface RiskFlagRepository extends JpaRepository<RiskFlag, Long> {
                 r.pageNumber ASC
             """)
     List<RiskFlag> findByScriptSortedBySeverity(@Param("script") Script script);
+
+    List<RiskFlag> findByScriptIdAndPageNumberIn(Long scriptId, Collection<Integer> pageNumbers);
 }
\ No newline at end of file
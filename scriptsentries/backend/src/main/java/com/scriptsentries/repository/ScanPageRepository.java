@@ -0,0 +1,118 @@
+package com.scriptsentries.repository;
+
+import com.scriptsentries.model.ScanPage;
+import com.scriptsentries.model.Script;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ScanPageRepository extends JpaRepository<ScanPage, Long> {
+
+    List<ScanPage> findByScriptOrderByPageNumberAsc(Script script);
+
+    Optional<ScanPage> findByScriptAndPageNumber(Script script, int pageNumber);
+
+    long countByScriptAndStateNot(Script script, ScanPage.State state);
+
+    /** Page progress without the scratch column, for coordinators polling a distributed scan. */
+    interface PageState {
+        int getPageNumber();
+        ScanPage.State getState();
+        Boolean getDegraded();
+    }
+
+    List<PageState> findByScriptIdOrderByPageNumberAsc(Long scriptId);
+
+    // ── Distributed work queue ───────────────────────────────────────────────
+
+    /** A script with claimable pages: urgent scans first, otherwise a random one so no scan is starved. */
+    @Query(value = "SELECT p.script_id FROM scan_pages p JOIN scripts s ON s.id = p.script_id " +
+            "WHERE p.state = 'PENDING' AND p.scratch IS NOT NULL " +
+            "AND (p.lease_expires_at IS NULL OR p.lease_expires_at < :now) " +
+            "GROUP BY p.script_id, s.urgent ORDER BY COALESCE(s.urgent, false) DESC, random() LIMIT 1",
+            nativeQuery = true)
+    Optional<Long> findClaimableScriptId(@Param("now") LocalDateTime now);
+
+    /** Locks up to {@code limit} claimable pages of a script; rows other nodes hold are skipped, not waited for. */
+    @Query(value = "SELECT * FROM scan_pages WHERE script_id = :scriptId AND state = 'PENDING' " +
+            "AND scratch IS NOT NULL AND (lease_expires_at IS NULL OR lease_expires_at < :now) " +
+            "ORDER BY page_number LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<ScanPage> lockClaimable(@Param("scriptId") Long scriptId, @Param("now") LocalDateTime now,
+                                 @Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanPage p SET p.leaseExpiresAt = :until " +
+            "WHERE p.id IN :ids AND p.leasedBy = :node AND p.state = com.scriptsentries.model.ScanPage.State.PENDING")
+    int renewLease(@Param("ids") Collection<Long> ids, @Param("node") String node, @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanPage p SET p.leasedBy = NULL, p.leaseExpiresAt = NULL WHERE p.id IN :ids AND p.leasedBy = :node")
+    int releaseLease(@Param("ids") Collection<Long> ids, @Param("node") String node);
+
+    /**
+     * Puts failed pages and degraded pages that still have scratch back in the queue.
+     * Pending pages keep their lease: a live node may still be working on them.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanPage p SET p.state = com.scriptsentries.model.ScanPage.State.PENDING, " +
+            "p.leasedBy = NULL, p.leaseExpiresAt = NULL " +
+            "WHERE p.script = :script AND p.scratch IS NOT NULL " +
+            "AND (p.state = com.scriptsentries.model.ScanPage.State.FAILED " +
+            "OR (p.state = com.scriptsentries.model.ScanPage.State.DONE AND p.degraded = true))")
+    int requeue(@Param("script") Script script);
+
+    /** Finished pages no longer need their scratch. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanPage p SET p.state = com.scriptsentries.model.ScanPage.State.DONE, " +
+            "p.attempts = p.attempts + 1, p.lastError = NULL, p.scratch = NULL, p.scratchExpiresAt = NULL, " +
+            "p.degraded = false, p.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE p.script.id = :scriptId AND p.pageNumber IN :pageNumbers")
+    int markDone(@Param("scriptId") Long scriptId, @Param("pageNumbers") Collection<Integer> pageNumbers);
+
+    /** Done from local detectors only; the scratch stays so the page can be re-run with the model. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanPage p SET p.state = com.scriptsentries.model.ScanPage.State.DONE, " +
+            "p.attempts = p.attempts + 1, p.lastError = 'Model unavailable; local detectors only', " +
+            "p.degraded = true, p.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE p.script.id = :scriptId AND p.pageNumber IN :pageNumbers")
+    int markDegraded(@Param("scriptId") Long scriptId, @Param("pageNumbers") Collection<Integer> pageNumbers);
+
+    long countByScriptAndDegradedTrue(Script script);
+
+    /** Scripts with degraded pages that can still be re-run (scratch not yet expired). */
+    @Query("SELECT DISTINCT p.script.id FROM ScanPage p WHERE p.degraded = true AND p.scratch IS NOT NULL")
+    List<Long> findScriptIdsWithRerunnablePages();
+
+    /** Zero-retention: drop the encrypted page text once a scan no longer needs it. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanPage p SET p.scratch = NULL, p.scratchExpiresAt = NULL " +
+            "WHERE p.script = :script AND (p.degraded IS NULL OR p.degraded = false)")
+    int wipeScratch(@Param("script") Script script);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanPage p SET p.scratch = NULL, p.scratchExpiresAt = NULL " +
+            "WHERE p.scratchExpiresAt IS NOT NULL AND p.scratchExpiresAt < :now")
+    int wipeExpiredScratch(@Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScanPage p SET p.scratch = NULL, p.scratchExpiresAt = NULL WHERE p.scratch IS NOT NULL")
+    int wipeAllScratch();
+}
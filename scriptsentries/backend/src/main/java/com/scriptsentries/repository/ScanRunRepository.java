@@ -0,0 +1,9 @@
+package com.scriptsentries.repository;
+
+import com.scriptsentries.model.ScanRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ScanRunRepository extends JpaRepository<ScanRun, Long> {
+}
@@ -3,11 +3,16 @@ package com.scriptsentries.repository;
 import com.scriptsentries.model.Project;
 import com.scriptsentries.model.Script;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ScriptRepository extends JpaRepository<Script, Long> {
@@ -38,4 +43,68 @@ public interface ScriptRepository extends JpaRepository<Script, Long> {
      * Returns ALL scripts including soft-deleted — prefer findAllActiveOrderByUploadedAtDesc().
      */
     List<Script> findAllByOrderByUploadedAtDesc();
+
+    List<Script> findByStatus(Script.ScriptStatus status);
+
+    /** The script's project, loaded — scan threads have no session to initialize the lazy one. */
+    @Query("SELECT p FROM Script s JOIN s.project p WHERE s.id = :id")
+    Optional<Project> findProjectOf(@Param("id") Long id);
+
+    // ── Scan bookkeeping ─────────────────────────────────────────────────────
+
+    /** Bumped as page results are flushed, so the count is current while a scan runs. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Script s SET s.riskCount = s.riskCount + :delta WHERE s.id = :id")
+    int incrementRiskCount(@Param("id") Long id, @Param("delta") int delta);
+
+    /** Status change that leaves riskCount alone — saving a stale entity would reset it. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Script s SET s.status = :status WHERE s.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") Script.ScriptStatus status);
+
+    /** Status change only if nobody changed it first; 0 when another node got there. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Script s SET s.status = :status, s.scanNode = :node, s.scanLeaseExpiresAt = :until " +
+            "WHERE s.id = :id AND s.status = :expected")
+    int claimScan(@Param("id") Long id, @Param("expected") Script.ScriptStatus expected,
+                  @Param("status") Script.ScriptStatus status, @Param("node") String node,
+                  @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Script s SET s.scanNode = :node, s.scanLeaseExpiresAt = :until WHERE s.id = :id")
+    int updateScanNode(@Param("id") Long id, @Param("node") String node, @Param("until") LocalDateTime until);
+
+    /** Keeps the scans {@code node} coordinates from being taken over. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Script s SET s.scanLeaseExpiresAt = :until " +
+            "WHERE s.id IN :ids AND s.scanNode = :node AND s.status = com.scriptsentries.model.Script.ScriptStatus.PROCESSING")
+    int renewScanLeases(@Param("ids") Collection<Long> ids, @Param("node") String node,
+                        @Param("until") LocalDateTime until);
+
+    /** Scans whose coordinating node stopped renewing its lease. */
+    @Query("SELECT s.id FROM Script s WHERE s.status = com.scriptsentries.model.Script.ScriptStatus.PROCESSING " +
+            "AND s.scanLeaseExpiresAt < :now")
+    List<Long> findOrphanedScanIds(@Param("now") LocalDateTime now);
+
+    /** Makes {@code node} the coordinator of an orphaned scan; 0 when the lease was renewed or another node took it. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Script s SET s.scanNode = :node, s.scanLeaseExpiresAt = :until " +
+            "WHERE s.id = :id AND s.status = com.scriptsentries.model.Script.ScriptStatus.PROCESSING " +
+            "AND s.scanLeaseExpiresAt < :now")
+    int takeOverScan(@Param("id") Long id, @Param("node") String node, @Param("now") LocalDateTime now,
+                     @Param("until") LocalDateTime until);
+
+    @Query("SELECT s.riskCount FROM Script s WHERE s.id = :id")
+    int findRiskCount(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Script s SET s.degraded = :degraded WHERE s.id = :id")
+    int updateDegraded(@Param("id") Long id, @Param("degraded") boolean degraded);
 }
\ No newline at end of file
@@ -0,0 +1,280 @@
+package com.scriptsentries.service;
+
+import java.util.Arrays;
+
+/**
+ * Immutable Aho–Corasick automaton over case-folded patterns, stored in flat primitive
+ * arrays so dictionaries of several hundred thousand entries stay compact.
+ *
+ * Layout: node 0 is the root. The outgoing edges of node n are
+ * {@code edgeChar/edgeTarget[edgeStart[n] .. edgeStart[n + 1])}, sorted by character and
+ * looked up by binary search. {@code fail} is the classic failure link, {@code output}
+ * the first pattern ending at a node (chained through {@code patternNext}) and
+ * {@code dictLink} the nearest node on the failure chain that has an output.
+ *
+ * Text is matched on whole words only: a hit must not be preceded or followed by a
+ * letter or digit. Runs of whitespace in the text match a single space in a pattern.
+ */
+final class AhoCorasick {
+
+    private final int[] edgeStart;
+    private final char[] edgeChar;
+    private final int[] edgeTarget;
+    private final int[] fail;
+    private final int[] dictLink;
+    private final int[] output;
+
+    private final int[] patternNext;
+    private final int[] patternLength;
+    private final int[] patternValue;
+    private final int maxLength;
+
+    /** Receives hits in order of their end position. */
+    @FunctionalInterface
+    interface HitConsumer {
+        void accept(int value, int start, int end);
+    }
+
+    private AhoCorasick(int[] edgeStart, char[] edgeChar, int[] edgeTarget, int[] fail, int[] dictLink,
+                        int[] output, int[] patternNext, int[] patternLength, int[] patternValue, int maxLength) {
+        this.edgeStart = edgeStart;
+        this.edgeChar = edgeChar;
+        this.edgeTarget = edgeTarget;
+        this.fail = fail;
+        this.dictLink = dictLink;
+        this.output = output;
+        this.patternNext = patternNext;
+        this.patternLength = patternLength;
+        this.patternValue = patternValue;
+        this.maxLength = maxLength;
+    }
+
+    int nodeCount() {
+        return fail.length;
+    }
+
+    int patternCount() {
+        return patternValue.length;
+    }
+
+    /** Single left-to-right pass over {@code text}. */
+    void scan(CharSequence text, HitConsumer consumer) {
+        if (maxLength == 0) return;
+        int[] positions = new int[maxLength];   // text index of the last maxLength folded chars
+        int folded = 0;
+        int state = 0;
+        char previous = ' ';
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            if (c == ' ' && previous == ' ') continue;
+            previous = c;
+            positions[folded % maxLength] = i;
+            folded++;
+
+            state = next(state, c);
+            for (int node = output[state] >= 0 ? state : dictLink[state]; node > 0; node = dictLink[node]) {
+                for (int p = output[node]; p >= 0; p = patternNext[p]) {
+                    int start = positions[(folded - patternLength[p]) % maxLength];
+                    int end = i + 1;
+                    if (isWordBoundary(text, start - 1) && isWordBoundary(text, end)) {
+                        consumer.accept(patternValue[p], start, end);
+                    }
+                }
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            int target = transition(state, c);
+            if (target >= 0) return target;
+            if (state == 0) return 0;
+            state = fail[state];
+        }
+    }
+
+    private int transition(int node, char c) {
+        int lo = edgeStart[node];
+        int hi = edgeStart[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = edgeChar[mid];
+            if (m < c) lo = mid + 1;
+            else if (m > c) hi = mid - 1;
+            else return edgeTarget[mid];
+        }
+        return -1;
+    }
+
+    private static boolean isWordBoundary(CharSequence text, int index) {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    /** Case folding shared by patterns and text; all whitespace becomes a space. */
+    static char fold(char c) {
+        if (Character.isWhitespace(c)) return ' ';
+        if (c == '\u2019' || c == '\u2018') return '\'';
+        return Character.toLowerCase(c);
+    }
+
+    static String fold(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        char previous = ' ';
+        for (int i = 0; i < s.length(); i++) {
+            char c = fold(s.charAt(i));
+            if (c == ' ' && previous == ' ') continue;
+            sb.append(c);
+            previous = c;
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ') sb.setLength(end - 1);
+        return sb.toString();
+    }
+
+    /**
+     * Builds the automaton. {@code values[i]} is reported for every hit of
+     * {@code patterns[i]}; patterns must already be {@link #fold folded}.
+     */
+    static AhoCorasick build(String[] patterns, int[] values) {
+        int n = patterns.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> patterns[a].compareTo(patterns[b]));
+
+        // 1. Trie in preorder from the sorted patterns: a node's children are created in
+        //    increasing character order, so the edge table comes out pre-sorted.
+        IntArray parent = new IntArray(n * 4 + 1);
+        CharArray label = new CharArray(n * 4 + 1);
+        IntArray terminal = new IntArray(n * 4 + 1);
+        parent.add(-1);
+        label.add('\0');
+        terminal.add(-1);
+
+        int[] patternNext = new int[n];
+        int[] patternLength = new int[n];
+        int[] patternValue = new int[n];
+        int[] path = new int[16];
+        String prev = "";
+        int maxLength = 0;
+
+        for (int k = 0; k < n; k++) {
+            String p = patterns[order[k]];
+            if (p.isEmpty()) {
+                patternNext[k] = -1;
+                patternValue[k] = values[order[k]];
+                continue;
+            }
+            int common = 0;
+            int limit = Math.min(prev.length(), p.length());
+            while (common < limit && prev.charAt(common) == p.charAt(common)) common++;
+            if (path.length < p.length() + 1) path = Arrays.copyOf(path, p.length() * 2 + 1);
+
+            for (int d = common; d < p.length(); d++) {
+                int node = parent.size();
+                parent.add(path[d]);
+                label.add(p.charAt(d));
+                terminal.add(-1);
+                path[d + 1] = node;
+            }
+            int end = path[p.length()];
+            patternNext[k] = terminal.get(end);
+            terminal.set(end, k);
+            patternLength[k] = p.length();
+            patternValue[k] = values[order[k]];
+            maxLength = Math.max(maxLength, p.length());
+            prev = p;
+        }
+
+        int nodes = parent.size();
+
+        // 2. Compressed edge table
+        int[] edgeStart = new int[nodes + 1];
+        for (int v = 1; v < nodes; v++) edgeStart[parent.get(v) + 1]++;
+        for (int v = 0; v < nodes; v++) edgeStart[v + 1] += edgeStart[v];
+        char[] edgeChar = new char[nodes - 1];
+        int[] edgeTarget = new int[nodes - 1];
+        int[] fill = Arrays.copyOf(edgeStart, nodes);
+        for (int v = 1; v < nodes; v++) {
+            int slot = fill[parent.get(v)]++;
+            edgeChar[slot] = label.get(v);
+            edgeTarget[slot] = v;
+        }
+
+        int[] output = Arrays.copyOf(terminal.toArray(), nodes);
+        int[] fail = new int[nodes];
+        int[] dictLink = new int[nodes];
+        AhoCorasick automaton = new AhoCorasick(edgeStart, edgeChar, edgeTarget, fail, dictLink, output,
+                patternNext, patternLength, patternValue, maxLength);
+
+        // 3. Failure and dictionary links, breadth first
+        int[] queue = new int[nodes];
+        int head = 0;
+        int tail = 0;
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) queue[tail++] = edgeTarget[e];
+        while (head < tail) {
+            int u = queue[head++];
+            for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+                int v = edgeTarget[e];
+                char c = edgeChar[e];
+                int f = fail[u];
+                int target;
+                while ((target = automaton.transition(f, c)) < 0 && f != 0) f = fail[f];
+                fail[v] = target >= 0 && target != v ? target : 0;
+                dictLink[v] = output[fail[v]] >= 0 ? fail[v] : dictLink[fail[v]];
+                queue[tail++] = v;
+            }
+        }
+        return automaton;
+    }
+
+    /** Growable int[] for the build phase. */
+    private static final class IntArray {
+        private int[] data;
+        private int size;
+
+        IntArray(int capacity) {
+            data = new int[Math.max(16, capacity)];
+        }
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int get(int i) {
+            return data[i];
+        }
+
+        void set(int i, int v) {
+            data[i] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /** Growable char[] for the build phase. */
+    private static final class CharArray {
+        private char[] data;
+        private int size;
+
+        CharArray(int capacity) {
+            data = new char[Math.max(16, capacity)];
+        }
+
+        void add(char c) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = c;
+        }
+
+        char get(int i) {
+            return data[i];
+        }
+    }
+}
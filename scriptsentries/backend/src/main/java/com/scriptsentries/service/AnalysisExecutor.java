@@ -0,0 +1,106 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.config.FairShareProperties;
+import com.scriptsentries.model.Project;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs blocking LLM page calls on virtual threads.
+ *
+ * Page calls spend almost all their time waiting on the provider, so the thread count
+ * is not the limit — the provider is. Concurrency is therefore capped twice: a per-scan
+ * cap so one large script cannot queue every page at once, and a global in-flight cap
+ * shared by every scan. The global slots are handed out by a {@link FairShareScheduler}
+ * per tenant (studio or project, see {@link FairShareProperties}), weighted round-robin
+ * with an urgent lane served first, so one studio's batch of drafts cannot hold back
+ * another's rush script. Nothing here touches the ForkJoin common pool.
+ */
+@Component
+@Slf4j
+public class AnalysisExecutor {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final FairShareScheduler scheduler;
+    private final FairShareProperties fairShare;
+    private final int maxInFlight;
+    private final int perScanInFlight;
+
+    public AnalysisExecutor(@Value("${scriptsentries.analysis.max-in-flight:16}") int maxInFlight,
+                            @Value("${scriptsentries.analysis.per-scan-in-flight:8}") int perScanInFlight,
+                            FairShareProperties fairShare,
+                            MeterRegistry meterRegistry) {
+        this.maxInFlight = maxInFlight;
+        this.perScanInFlight = Math.min(perScanInFlight, maxInFlight);
+        this.fairShare = fairShare;
+        this.scheduler = new FairShareScheduler(maxInFlight, fairShare::weightOf, fairShare.idleEviction(), meterRegistry);
+        log.info("Analysis executor: virtual threads, {} in flight globally, {} per scan, fair share by {}",
+                maxInFlight, this.perScanInFlight, fairShare.byStudio() ? "studio" : "project");
+    }
+
+    /** Whose share a scan's pages count against, and whether they jump the normal queue. */
+    public record Tenancy(String tenant, boolean urgent) {
+        public static final Tenancy DEFAULT = new Tenancy("default", false);
+    }
+
+    /** The tenant of a scan under {@code project}; scripts without a project share one tenant. */
+    public Tenancy tenancy(Project project, boolean urgent) {
+        if (project == null) return new Tenancy("unassigned", urgent);
+        String studio = project.getStudioName();
+        if (fairShare.byStudio() && studio != null && !studio.isBlank()) {
+            return new Tenancy(studio.trim(), urgent);
+        }
+        return new Tenancy("project-" + project.getId(), urgent);
+    }
+
+    /** Per-scan permits and tenancy; pass the same instance to every {@link #submit} of that scan. */
+    public ScanSlots newScan(Tenancy tenancy) {
+        return new ScanSlots(new Semaphore(perScanInFlight, true), tenancy);
+    }
+
+    public record ScanSlots(Semaphore permits, Tenancy tenancy) {}
+
+    /**
+     * Runs {@code task} once it holds a per-scan permit and the scheduler gives its
+     * tenant a global slot. Failures surface as an exceptionally completed future.
+     */
+    public <T> CompletableFuture<T> submit(ScanSlots scan, Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                scan.permits().acquire();
+                try {
+                    return scheduler.run(scan.tenancy().tenant(), scan.tenancy().urgent(), task);
+                } finally {
+                    scan.permits().release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /** Calls currently holding a global slot. */
+    public int inFlight() {
+        return scheduler.busy(maxInFlight);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
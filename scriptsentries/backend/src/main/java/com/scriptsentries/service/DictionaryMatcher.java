@@ -0,0 +1,194 @@
+package com.scriptsentries.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds known real-world entities — brands, living public figures, song titles and
+ * landmarks — in page text with one Aho–Corasick pass.
+ *
+ * Dictionaries are plain UTF-8 files, one entry per line, {@code #} for comments, and
+ * optional aliases after a pipe: {@code Coca-Cola|Coke}. Each kind takes a comma-separated
+ * list of Spring resource locations, so deployments can add their own lists
+ * ({@code file:/etc/scriptsentries/brands.txt}) next to the bundled ones.
+ *
+ * Hits are hints, not findings: the model sees them next to the page and decides the
+ * context; when it does not run, they become LOW-severity flags.
+ */
+@Component
+@Slf4j
+public class DictionaryMatcher {
+
+    public enum EntityKind { BRAND, PUBLIC_FIGURE, SONG, LANDMARK }
+
+    /** A whole-word occurrence of dictionary entry {@code name} at {@code [start, end)}. */
+    public record DictionaryHit(EntityKind kind, String name, int start, int end, String snippet) {}
+
+    private static final EntityKind[] KINDS = EntityKind.values();
+
+    private final AhoCorasick automaton;
+    private final byte[] entryKind;
+    private final char[] names;
+    private final int[] nameOffsets;
+    private final String version;
+
+    public DictionaryMatcher(ResourceLoader resourceLoader,
+                             @Value("${scriptsentries.dictionaries.brands:classpath:dictionaries/brands.txt}") String[] brands,
+                             @Value("${scriptsentries.dictionaries.public-figures:classpath:dictionaries/public-figures.txt}") String[] publicFigures,
+                             @Value("${scriptsentries.dictionaries.songs:classpath:dictionaries/songs.txt}") String[] songs,
+                             @Value("${scriptsentries.dictionaries.landmarks:classpath:dictionaries/landmarks.txt}") String[] landmarks,
+                             @Value("${scriptsentries.dictionaries.min-length:3}") int minLength) {
+        Builder builder = new Builder(minLength);
+        Map<EntityKind, String[]> sources = new LinkedHashMap<>();
+        sources.put(EntityKind.BRAND, brands);
+        sources.put(EntityKind.PUBLIC_FIGURE, publicFigures);
+        sources.put(EntityKind.SONG, songs);
+        sources.put(EntityKind.LANDMARK, landmarks);
+        sources.forEach((kind, locations) -> {
+            for (String location : locations) {
+                if (!location.isBlank()) builder.load(resourceLoader.getResource(location.trim()), kind);
+            }
+        });
+
+        long start = System.nanoTime();
+        this.automaton = AhoCorasick.build(builder.patterns.toArray(String[]::new), builder.patternEntry.toArray());
+        this.entryKind = Arrays.copyOf(builder.entryKind, builder.entries);
+        this.names = builder.names.toString().toCharArray();
+        this.nameOffsets = builder.nameOffsets.toArray();
+        this.version = HexFormat.of().formatHex(builder.digest.digest()).substring(0, 16);
+
+        log.info("Dictionary matcher: {} entries, {} patterns, {} automaton nodes, built in {} ms",
+                builder.entries, automaton.patternCount(), automaton.nodeCount(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Identifies the loaded dictionaries; changes whenever an entry is added or removed. */
+    public String version() {
+        return version;
+    }
+
+    /**
+     * Distinct entities on the page, in order of appearance. A hit must start with a
+     * capital (or a non-letter) in the text — "Apple" the brand, not "an apple" — and
+     * hits inside a longer hit are dropped ("Empire" within "Empire State Building").
+     */
+    public List<DictionaryHit> scan(String pageText) {
+        if (pageText == null || pageText.isEmpty()) return List.of();
+
+        List<DictionaryHit> raw = new ArrayList<>();
+        automaton.scan(pageText, (entry, start, end) -> {
+            char first = pageText.charAt(start);
+            if (Character.isLetter(first) && !Character.isUpperCase(first)) return;
+            raw.add(new DictionaryHit(KINDS[entryKind[entry]], name(entry), start, end, null));
+        });
+        if (raw.isEmpty()) return List.of();
+
+        raw.sort((a, b) -> a.start() != b.start() ? Integer.compare(a.start(), b.start()) : Integer.compare(b.end(), a.end()));
+        Map<String, DictionaryHit> distinct = new LinkedHashMap<>();
+        int coveredUntil = -1;
+        for (DictionaryHit hit : raw) {
+            if (hit.end() <= coveredUntil) continue;
+            coveredUntil = hit.end();
+            distinct.putIfAbsent(hit.kind() + "|" + hit.name(), hit);
+        }
+        return distinct.values().stream()
+                .map(h -> new DictionaryHit(h.kind(), h.name(), h.start(), h.end(),
+                        PreFilterEngine.snippet(pageText, h.start(), h.end())))
+                .toList();
+    }
+
+    private String name(int entry) {
+        return new String(names, nameOffsets[entry], nameOffsets[entry + 1] - nameOffsets[entry]);
+    }
+
+    /** Accumulates entries while the dictionary files are read. */
+    private static final class Builder {
+        private final int minLength;
+        private final List<String> patterns = new ArrayList<>();
+        private final IntList patternEntry = new IntList();
+        private final StringBuilder names = new StringBuilder();
+        private final IntList nameOffsets = new IntList();
+        private final MessageDigest digest;
+        private byte[] entryKind = new byte[1024];
+        private int entries;
+
+        Builder(int minLength) {
+            this.minLength = minLength;
+            nameOffsets.add(0);
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void load(Resource resource, EntityKind kind) {
+            if (!resource.exists()) {
+                log.warn("Dictionary not found, skipping: {}", resource.getDescription());
+                return;
+            }
+            int before = entries;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.strip();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    addEntry(line.split("\\|"), kind);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read dictionary " + resource.getDescription(), e);
+            }
+            log.debug("Loaded {} {} entries from {}", entries - before, kind, resource.getDescription());
+        }
+
+        private void addEntry(String[] variants, EntityKind kind) {
+            String canonical = variants[0].strip();
+            int entry = entries;
+            boolean added = false;
+            for (String variant : variants) {
+                String folded = AhoCorasick.fold(variant);
+                if (folded.length() < minLength) continue;
+                patterns.add(folded);
+                patternEntry.add(entry);
+                digest.update((kind.ordinal() + folded + '\n').getBytes(StandardCharsets.UTF_8));
+                added = true;
+            }
+            if (!added) return;
+
+            if (entries == entryKind.length) entryKind = Arrays.copyOf(entryKind, entries * 2);
+            entryKind[entries++] = (byte) kind.ordinal();
+            names.append(canonical);
+            nameOffsets.add(names.length());
+        }
+    }
+
+    private static final class IntList {
+        private int[] data = new int[1024];
+        private int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.scriptsentries.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Hands out the global in-flight slots of {@link AnalysisExecutor} to waiting page tasks,
+ * fairly across tenants instead of first come, first served.
+ *
+ * Each tenant has two queues, urgent and normal. A free slot goes to an urgent task if
+ * any is waiting, else to a normal one; within a lane the tenant is chosen by smooth
+ * weighted round-robin, so a tenant with weight 2 gets two slots for every one of a
+ * tenant with weight 1 while both have work waiting, and a tenant that just arrived is
+ * served within one round however long the others' queues are. Inside a tenant's queue
+ * tasks are FIFO.
+ *
+ * Meters per tenant: {@code scriptsentries.analysis.queue.depth} (tasks waiting),
+ * {@code scriptsentries.analysis.queue.running} (tasks holding a slot) and
+ * {@code scriptsentries.analysis.queue.wait} (time from queueing to getting a slot,
+ * tagged by priority). A tenant with nothing waiting or running for {@code idleEviction}
+ * is dropped with its meters, so tenants that come and go do not pile up.
+ */
+final class FairShareScheduler {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private final ToIntFunction<String> weights;
+    private final MeterRegistry meterRegistry;
+    private final long idleEvictionNanos;
+    private long nextEviction;
+    private int free;
+
+    FairShareScheduler(int slots, ToIntFunction<String> weights, Duration idleEviction, MeterRegistry meterRegistry) {
+        this.free = slots;
+        this.weights = weights;
+        this.meterRegistry = meterRegistry;
+        this.idleEvictionNanos = Math.max(1, idleEviction.toNanos());
+        this.nextEviction = System.nanoTime() + idleEvictionNanos;
+    }
+
+    /** Waits for {@code tenant}'s turn at a slot, runs {@code task} on the calling thread, then frees the slot. */
+    <T> T run(String tenant, boolean urgent, Callable<T> task) throws Exception {
+        Ticket ticket = enqueue(tenant, urgent);
+        await(ticket);
+        ticket.tenant.waitTimer(urgent).record(System.nanoTime() - ticket.queuedAt, TimeUnit.NANOSECONDS);
+        try {
+            return task.call();
+        } finally {
+            release(ticket.tenant);
+        }
+    }
+
+    /** Slots currently held by running tasks. */
+    int busy(int slots) {
+        lock.lock();
+        try {
+            return slots - free;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Ticket enqueue(String key, boolean urgent) {
+        lock.lock();
+        try {
+            evictIdle();
+            Tenant tenant = tenants.computeIfAbsent(key, this::newTenant);
+            Ticket ticket = new Ticket(tenant, urgent, lock.newCondition());
+            tenant.lane(urgent).waiting.addLast(ticket);
+            tenant.waiting.incrementAndGet();
+            dispatch();
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void await(Ticket ticket) throws InterruptedException {
+        lock.lock();
+        try {
+            while (!ticket.granted) ticket.turn.await();
+        } catch (InterruptedException e) {
+            // Granted while being interrupted: the slot is ours and must be passed on
+            if (ticket.granted) {
+                ticket.tenant.running.decrementAndGet();
+                free++;
+            } else {
+                Lane lane = ticket.tenant.lane(ticket.urgent);
+                lane.waiting.remove(ticket);
+                if (lane.waiting.isEmpty()) lane.credit = 0;
+                ticket.tenant.waiting.decrementAndGet();
+            }
+            ticket.tenant.touch();
+            dispatch();
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Tenant tenant) {
+        lock.lock();
+        try {
+            tenant.running.decrementAndGet();
+            tenant.touch();
+            free++;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Grants free slots to the next tickets in turn. Caller holds the lock. */
+    private void dispatch() {
+        while (free > 0) {
+            Ticket next = pick(true);
+            if (next == null) next = pick(false);
+            if (next == null) return;
+            free--;
+            next.tenant.waiting.decrementAndGet();
+            next.tenant.running.incrementAndGet();
+            next.granted = true;
+            next.turn.signal();
+        }
+    }
+
+    /** Smooth weighted round-robin over the tenants with tickets waiting in this lane. */
+    private Ticket pick(boolean urgent) {
+        Tenant best = null;
+        int totalWeight = 0;
+        for (Tenant tenant : tenants.values()) {
+            Lane lane = tenant.lane(urgent);
+            if (lane.waiting.isEmpty()) continue;
+            lane.credit += tenant.weight;
+            totalWeight += tenant.weight;
+            if (best == null || lane.credit > best.lane(urgent).credit) best = tenant;
+        }
+        if (best == null) return null;
+
+        Lane lane = best.lane(urgent);
+        lane.credit -= totalWeight;
+        Ticket ticket = lane.waiting.pollFirst();
+        // A tenant that goes idle does not bank credit for its next burst
+        if (lane.waiting.isEmpty()) lane.credit = 0;
+        return ticket;
+    }
+
+    /**
+     * Drops tenants with nothing waiting or running since {@code idleEviction} ago, and
+     * their meters. Runs at most once per {@code idleEviction}. Caller holds the lock.
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        if (now - nextEviction < 0) return;
+        nextEviction = now + idleEvictionNanos;
+        tenants.values().removeIf(tenant -> {
+            if (!tenant.idle() || now - tenant.idleSince < idleEvictionNanos) return false;
+            tenant.meters.forEach(meterRegistry::remove);
+            return true;
+        });
+    }
+
+    private Tenant newTenant(String key) {
+        Timer urgentWait = waitTimer(key, "urgent");
+        Timer normalWait = waitTimer(key, "normal");
+        Tenant tenant = new Tenant(weights.applyAsInt(key), urgentWait, normalWait);
+        tenant.meters.add(urgentWait);
+        tenant.meters.add(normalWait);
+        tenant.meters.add(Gauge.builder("scriptsentries.analysis.queue.depth", tenant.waiting, AtomicInteger::get)
+                .tag("tenant", key).description("Page tasks waiting for an analysis slot")
+                .register(meterRegistry));
+        tenant.meters.add(Gauge.builder("scriptsentries.analysis.queue.running", tenant.running, AtomicInteger::get)
+                .tag("tenant", key).description("Page tasks holding an analysis slot")
+                .register(meterRegistry));
+        return tenant;
+    }
+
+    private Timer waitTimer(String tenant, String priority) {
+        return Timer.builder("scriptsentries.analysis.queue.wait")
+                .tag("tenant", tenant).tag("priority", priority)
+                .description("Time a page task waited for an analysis slot")
+                .register(meterRegistry);
+    }
+
+    private static final class Tenant {
+        private final int weight;
+        private final Lane urgent = new Lane();
+        private final Lane normal = new Lane();
+        private final Timer urgentWait;
+        private final Timer normalWait;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final List<Meter> meters = new ArrayList<>(4);
+        private long idleSince = System.nanoTime();
+
+        Tenant(int weight, Timer urgentWait, Timer normalWait) {
+            this.weight = weight;
+            this.urgentWait = urgentWait;
+            this.normalWait = normalWait;
+        }
+
+        boolean idle() {
+            return waiting.get() == 0 && running.get() == 0;
+        }
+
+        /** Starts the idle clock if the last task just left. Caller holds the scheduler lock. */
+        void touch() {
+            if (idle()) idleSince = System.nanoTime();
+        }
+
+        Lane lane(boolean urgent) {
+            return urgent ? this.urgent : normal;
+        }
+
+        Timer waitTimer(boolean urgent) {
+            return urgent ? urgentWait : normalWait;
+        }
+    }
+
+    private static final class Lane {
+        private final ArrayDeque<Ticket> waiting = new ArrayDeque<>();
+        private long credit;
+    }
+
+    private static final class Ticket {
+        private final Tenant tenant;
+        private final boolean urgent;
+        private final Condition turn;
+        private final long queuedAt = System.nanoTime();
+        private boolean granted;
+
+        Ticket(Tenant tenant, boolean urgent, Condition turn) {
+            this.tenant = tenant;
+            this.urgent = urgent;
+            this.turn = turn;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.scriptsentries.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The heap that open PDF documents of {@link PdfExtractionService} may use between them.
+ *
+ * A document is charged its estimated cost before it is loaded and refunded when it
+ * closes. Below the pressure mark it is charged in full, parse and stream cache on the
+ * heap. Above the mark it gets the reduced charge, and the caller keeps its stream cache
+ * in temp files. A charge that does not fit waits in line, first come, first served,
+ * until earlier documents close. A document larger than the whole budget is charged the
+ * whole budget and waits until nothing else is open, so it still loads, alone.
+ *
+ * Meters: {@code scriptsentries.pdf.heap.used} and {@code .limit} (bytes),
+ * {@code .waiting} (documents in line) and {@code .wait} (time spent in line).
+ */
+final class HeapBudget {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<Object> line = new ArrayDeque<>();
+    private final long limit;
+    private final long pressureMark;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Timer waitTimer;
+
+    HeapBudget(long limit, double pressureRatio, MeterRegistry meterRegistry) {
+        this.limit = limit;
+        this.pressureMark = (long) (limit * Math.min(1, Math.max(0, pressureRatio)));
+        Gauge.builder("scriptsentries.pdf.heap.used", used, AtomicLong::get)
+                .baseUnit("bytes").description("Estimated heap charged to open PDF documents")
+                .register(meterRegistry);
+        Gauge.builder("scriptsentries.pdf.heap.limit", this, b -> b.limit)
+                .baseUnit("bytes").description("Heap budget for open PDF documents")
+                .register(meterRegistry);
+        Gauge.builder("scriptsentries.pdf.heap.waiting", waiting, AtomicInteger::get)
+                .description("PDF documents waiting for heap budget")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("scriptsentries.pdf.heap.wait")
+                .description("Time a PDF document waited for heap budget")
+                .register(meterRegistry);
+    }
+
+    long limit() {
+        return limit;
+    }
+
+    /**
+     * Charges {@code full} if usage stays under the pressure mark, else waits until
+     * {@code reduced} fits. Returns the amount charged; pass it back to {@link #release}.
+     */
+    long acquire(long full, long reduced) throws InterruptedException {
+        Object turn = new Object();
+        long queuedAt = System.nanoTime();
+        long charge;
+        lock.lock();
+        try {
+            line.addLast(turn);
+            waiting.incrementAndGet();
+            try {
+                while ((charge = fit(turn, full, reduced)) < 0) changed.await();
+            } finally {
+                line.remove(turn);
+                waiting.decrementAndGet();
+                // The next in line may fit now, or may have been waiting behind us
+                changed.signalAll();
+            }
+            used.addAndGet(charge);
+        } finally {
+            lock.unlock();
+        }
+        waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        return charge;
+    }
+
+    void release(long charge) {
+        lock.lock();
+        try {
+            used.addAndGet(-charge);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** What {@code turn} may charge now, or -1 to keep waiting. Caller holds the lock. */
+    private long fit(Object turn, long full, long reduced) {
+        if (line.peekFirst() != turn) return -1;
+        long current = used.get();
+        if (current + full <= pressureMark) return full;
+        long charge = Math.min(reduced, limit);
+        return current + charge <= limit ? charge : -1;
+    }
+}
@@ -0,0 +1,288 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.config.GroqConfig;
+import com.scriptsentries.config.LlmPoolProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * The OpenAI-compatible endpoints {@link LlmGateway} sends page requests to, each with
+ * its own key, model name, weight and {@link LlmRateLimiter}.
+ *
+ * Requests go to the endpoint with the fewest outstanding requests per unit of weight
+ * (waiting for its rate limit counts as outstanding). Each endpoint is also a circuit
+ * breaker: after {@code ejection.consecutive-failures} failures in a row it opens
+ * (the endpoint is ejected) for {@code ejection.base-time}, doubled on each further
+ * ejection up to {@code ejection.max-time}. Then a single probe request is let through
+ * (half-open); its success closes the breaker, its failure opens it again. 429s are the
+ * limiter's business and do not count. When every breaker is open, {@link #acquire}
+ * fails fast with {@link CircuitOpenException} instead of letting requests time out.
+ *
+ * Meters per endpoint: {@code scriptsentries.llm.endpoint.outstanding} and
+ * {@code scriptsentries.llm.endpoint.ejections}.
+ */
+@Component
+@Slf4j
+public class LlmEndpointPool {
+
+    private final List<Endpoint> endpoints;
+    private final LongSupplier clock;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    @Autowired
+    public LlmEndpointPool(@Qualifier("openAiChatModel") ChatModel defaultModel,
+                           @Value("${spring.ai.openai.chat.options.model:llama-3.3-70b-versatile}") String defaultModelName,
+                           LlmPoolProperties properties,
+                           MeterRegistry meterRegistry,
+                           @Value("${scriptsentries.llm.requests-per-minute:300}") int requestsPerMinute,
+                           @Value("${scriptsentries.llm.tokens-per-minute:100000}") int tokensPerMinute,
+                           @Value("${scriptsentries.llm.initial-concurrency:4}") int initialConcurrency,
+                           @Value("${scriptsentries.analysis.max-in-flight:16}") int maxConcurrency,
+                           @Value("${scriptsentries.llm.pool.ejection.consecutive-failures:3}") int ejectAfter,
+                           @Value("${scriptsentries.llm.pool.ejection.base-time:30s}") Duration ejectionBase,
+                           @Value("${scriptsentries.llm.pool.ejection.max-time:5m}") Duration ejectionMax) {
+        List<Endpoint> members = new ArrayList<>();
+        if (properties.endpoints().isEmpty()) {
+            members.add(new Endpoint("groq", defaultModelName, defaultModel, 1,
+                    new LlmRateLimiter(requestsPerMinute, tokensPerMinute, initialConcurrency, maxConcurrency),
+                    ejectAfter, ejectionBase, ejectionMax, System::nanoTime));
+        }
+        for (LlmPoolProperties.Endpoint config : properties.endpoints()) {
+            String name = config.name() != null ? config.name() : config.baseUrl();
+            String model = config.model() != null ? config.model() : defaultModelName;
+            ChatModel chatModel = new OpenAiChatModel(new OpenAiApi(config.baseUrl(), config.apiKey()),
+                    OpenAiChatOptions.builder().withModel(model).withTemperature(0.1f).build(),
+                    null, GroqConfig.singleAttempt());
+            members.add(new Endpoint(name, model, chatModel,
+                    config.weight() != null ? Math.max(1, config.weight()) : 1,
+                    new LlmRateLimiter(
+                            config.requestsPerMinute() != null ? config.requestsPerMinute() : requestsPerMinute,
+                            config.tokensPerMinute() != null ? config.tokensPerMinute() : tokensPerMinute,
+                            initialConcurrency, maxConcurrency),
+                    ejectAfter, ejectionBase, ejectionMax, System::nanoTime));
+        }
+        this.endpoints = List.copyOf(members);
+        this.clock = System::nanoTime;
+
+        for (Endpoint endpoint : endpoints) {
+            Gauge.builder("scriptsentries.llm.endpoint.outstanding", endpoint.outstanding, AtomicInteger::get)
+                    .tag("endpoint", endpoint.name).description("Requests sent or waiting on this endpoint")
+                    .register(meterRegistry);
+            FunctionCounter.builder("scriptsentries.llm.endpoint.ejections", endpoint.ejectionCount, AtomicLong::get)
+                    .tag("endpoint", endpoint.name).description("Times this endpoint was ejected for failing")
+                    .register(meterRegistry);
+        }
+        log.info("LLM endpoint pool: {}", endpoints.stream()
+                .map(e -> e.name + " (" + e.model + ", weight " + e.weight + ")").toList());
+    }
+
+    /** A pool of one model, without failover or meters — for a model used on its own. */
+    static LlmEndpointPool single(String name, String modelName, ChatModel chatModel, LlmRateLimiter limiter) {
+        return new LlmEndpointPool(List.of(new Endpoint(name, modelName, chatModel, 1, limiter,
+                3, Duration.ofSeconds(30), Duration.ofMinutes(5), System::nanoTime)), System::nanoTime);
+    }
+
+    /** {@code clock} stands in for {@link System#nanoTime()}; the endpoints should share it. */
+    LlmEndpointPool(List<Endpoint> endpoints, LongSupplier clock) {
+        this.endpoints = List.copyOf(endpoints);
+        this.clock = clock;
+    }
+
+    /**
+     * Claims the least-loaded endpoint not in {@code exclude} — one paused by a 429 only
+     * if no other is free, an excluded one only if nothing else is left — counting the
+     * caller as outstanding on it until {@link Endpoint#succeeded}, {@link Endpoint#throttled}
+     * or {@link Endpoint#failed}. An endpoint whose ejection has run out is claimed as
+     * its single probe.
+     *
+     * @throws CircuitOpenException if every endpoint is ejected or already being probed
+     */
+    Endpoint acquire(Set<Endpoint> exclude) {
+        long now = clock.getAsLong();
+        int start = Math.floorMod(cursor.getAndIncrement(), endpoints.size());
+        List<Choice> choices = new ArrayList<>(endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint e = endpoints.get((start + i) % endpoints.size());
+            choices.add(new Choice(e, exclude.contains(e), e.limiter.paused(), (e.outstanding.get() + 1.0) / e.weight));
+        }
+        choices.sort(Comparator.comparing(Choice::excluded).thenComparing(Choice::paused).thenComparingDouble(Choice::load));
+        for (Choice choice : choices) {
+            if (choice.endpoint().tryClaim(now)) {
+                choice.endpoint().outstanding.incrementAndGet();
+                return choice.endpoint();
+            }
+        }
+        throw new CircuitOpenException("All " + endpoints.size() + " LLM endpoint(s) unavailable; circuit open");
+    }
+
+    /** Snapshot of one endpoint's standing, so the sort sees stable values. */
+    private record Choice(Endpoint endpoint, boolean excluded, boolean paused, double load) {}
+
+    /** True if an endpoint outside {@code tried} could take a request right now. */
+    boolean hasAlternative(Set<Endpoint> tried) {
+        long now = clock.getAsLong();
+        return endpoints.stream().anyMatch(e -> !tried.contains(e) && e.available(now));
+    }
+
+    /** True while every endpoint is ejected, i.e. a request would fail fast. */
+    public boolean isOpen() {
+        long now = clock.getAsLong();
+        return endpoints.stream().noneMatch(e -> e.available(now));
+    }
+
+    /** The distinct models of the pool, sorted and comma-separated; any of them may answer a request. */
+    public String modelIds() {
+        return endpoints.stream().map(e -> e.model).distinct().sorted().collect(Collectors.joining(","));
+    }
+
+    /** Thrown instead of calling the model while every endpoint's breaker is open. */
+    public static class CircuitOpenException extends RuntimeException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    /** One pool member. Failure bookkeeping is synchronized; calls take microseconds. */
+    static final class Endpoint {
+        private final String name;
+        private final String model;
+        private final ChatModel chatModel;
+        private final int weight;
+        private final LlmRateLimiter limiter;
+        private final int ejectAfter;
+        private final Duration ejectionBase;
+        private final Duration ejectionMax;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong ejectionCount = new AtomicLong();
+        private final LongSupplier clock;
+
+        private int consecutiveFailures;
+        private int ejections;          // since the last success; sets the next ejection time
+        private long ejectedUntil;
+        private boolean ejected;
+        private boolean probing;        // the one request let through after an ejection
+
+        Endpoint(String name, String model, ChatModel chatModel, int weight, LlmRateLimiter limiter,
+                 int ejectAfter, Duration ejectionBase, Duration ejectionMax, LongSupplier clock) {
+            this.name = name;
+            this.model = model;
+            this.chatModel = chatModel;
+            this.weight = weight;
+            this.limiter = limiter;
+            this.ejectAfter = ejectAfter;
+            this.ejectionBase = ejectionBase;
+            this.ejectionMax = ejectionMax;
+            this.clock = clock;
+        }
+
+        String name() {
+            return name;
+        }
+
+        ChatModel chatModel() {
+            return chatModel;
+        }
+
+        /** Waits for this endpoint's rate-limit budget; on interrupt the claim is released. */
+        void awaitBudget(int estimatedTokens) {
+            try {
+                limiter.acquire(estimatedTokens);
+            } catch (InterruptedException e) {
+                abandon();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for LLM rate limit", e);
+            }
+        }
+
+        /** Releases the claim without a request having been sent; nothing is held against the endpoint. */
+        void abandon() {
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                probing = false;
+            }
+        }
+
+        void succeeded(int estimatedTokens, long actualTokens, long tokensRemaining) {
+            limiter.onSuccess(estimatedTokens, actualTokens, tokensRemaining);
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                if (ejected) log.info("LLM endpoint {} healthy again, circuit closed", name);
+                consecutiveFailures = 0;
+                ejections = 0;
+                ejected = false;
+                probing = false;
+            }
+        }
+
+        /** A 429 still proves the endpoint is up, so a probe that gets one closes the breaker. */
+        void throttled(Duration retryAfter) {
+            limiter.onThrottled(retryAfter);
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                if (probing) {
+                    probing = false;
+                    ejected = false;
+                    consecutiveFailures = 0;
+                }
+            }
+        }
+
+        /** {@code endpointFault} is false for errors the request itself caused; those do not count. */
+        void failed(boolean endpointFault) {
+            limiter.onFailure();
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                boolean probe = probing;
+                probing = false;
+                if (!endpointFault) return;
+                if (probe || ++consecutiveFailures >= ejectAfter) eject();
+            }
+        }
+
+        private void eject() {
+            consecutiveFailures = 0;
+            long nanos = Math.min(ejectionBase.toNanos() << Math.min(ejections, 10), ejectionMax.toNanos());
+            ejections++;
+            ejectedUntil = clock.getAsLong() + nanos;
+            ejected = true;
+            ejectionCount.incrementAndGet();
+            log.warn("LLM endpoint {} ejected for {} s, circuit open", name, nanos / 1_000_000_000);
+        }
+
+        /** Closed, or open with its time run out and no probe in flight. */
+        private synchronized boolean available(long now) {
+            return !ejected || (now - ejectedUntil >= 0 && !probing);
+        }
+
+        private synchronized boolean tryClaim(long now) {
+            if (!available(now)) return false;
+            if (ejected) probing = true;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
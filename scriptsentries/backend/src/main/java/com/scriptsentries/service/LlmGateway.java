@@ -0,0 +1,244 @@
+package com.scriptsentries.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.StreamingChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single entry point for chat completions.
+ *
+ * Sends each call to an endpoint of the {@link LlmEndpointPool}, paced by that
+ * endpoint's {@link LlmRateLimiter} to its account's RPM/TPM budget, and retries 429s
+ * after the provider's retry-after instead of letting the caller drop the page. A call
+ * that fails on one endpoint is sent once to each other healthy endpoint before the
+ * error is passed through; errors caused by the request itself are passed straight
+ * through. {@link #stream} does the same for {@link StreamingChatModel#stream}.
+ */
+@Service
+@Slf4j
+public class LlmGateway {
+
+    // Groq / OpenAI 429 bodies say e.g. "Please try again in 1m2.5s" or "... in 850ms"
+    private static final Pattern RETRY_IN = Pattern.compile("try again in (?:(\\d+)m)?(\\d+(?:\\.\\d+)?)(ms|s)");
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int OUTPUT_TOKEN_ALLOWANCE = 600;
+
+    // Status codes the request itself is to blame for; any other failure counts against the endpoint
+    private static final Pattern REQUEST_ERROR = Pattern.compile("^(400|413|422)\\b");
+
+    private final LlmEndpointPool pool;
+    private final int maxAttempts;
+    private final Duration defaultBackoff;
+
+    public LlmGateway(LlmEndpointPool pool,
+                      @Value("${scriptsentries.llm.max-attempts:6}") int maxAttempts,
+                      @Value("${scriptsentries.llm.default-backoff:2s}") Duration defaultBackoff) {
+        this.pool = pool;
+        this.maxAttempts = maxAttempts;
+        this.defaultBackoff = defaultBackoff;
+    }
+
+    /**
+     * Sends {@code prompt}, waiting for rate-limit budget first.
+     *
+     * @param estimatedTokens prompt + expected completion tokens, see {@link #estimateTokens}
+     * @throws LlmThrottledException if every attempt was rejected with 429
+     * @throws LlmEndpointPool.CircuitOpenException at once if no endpoint is available
+     */
+    public ChatResponse call(Prompt prompt, int estimatedTokens) {
+        return call(prompt, estimatedTokens, () -> Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Same as {@link #call(Prompt, int)}; a failure while {@code cancelledByCaller} is true
+     * (e.g. a hedge that lost the race) is not counted against the endpoint. Any other
+     * failure is, including a call interrupted because it ran past its deadline.
+     */
+    public ChatResponse call(Prompt prompt, int estimatedTokens, BooleanSupplier cancelledByCaller) {
+        Set<LlmEndpointPool.Endpoint> failedOn = new HashSet<>();
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            LlmEndpointPool.Endpoint endpoint = pool.acquire(failedOn);
+            endpoint.awaitBudget(estimatedTokens);
+
+            ChatResponse response;
+            try {
+                response = endpoint.chatModel().call(prompt);
+            } catch (RuntimeException e) {
+                if (!isThrottled(e)) {
+                    boolean endpointFault = !cancelledByCaller.getAsBoolean() && isEndpointFault(e);
+                    endpoint.failed(endpointFault);
+                    failedOn.add(endpoint);
+                    if (!endpointFault || Thread.currentThread().isInterrupted() || !pool.hasAlternative(failedOn)) throw e;
+                    log.warn("LLM endpoint {} failed, failing over: {}", endpoint.name(), e.getMessage());
+                    continue;
+                }
+                Duration retryAfter = retryAfter(e, attempt);
+                endpoint.throttled(retryAfter);
+                log.warn("LLM 429 from {} (attempt {}/{}), retrying after {} ms",
+                        endpoint.name(), attempt, maxAttempts, retryAfter.toMillis());
+                continue;
+            }
+
+            endpoint.succeeded(estimatedTokens, totalTokens(response), tokensRemaining(response));
+            return response;
+        }
+        throw new LlmThrottledException("LLM provider still rate limiting after " + maxAttempts + " attempts");
+    }
+
+    /**
+     * Streams {@code prompt}, handing each content chunk to {@code onChunk} on the calling
+     * thread as it arrives. 429s and endpoint failures are retried as in {@link #call}
+     * while nothing has been delivered yet; after the first chunk any error is passed
+     * through. A stream that stays silent for {@code stallTimeout} fails. One that has not
+     * completed {@code deadline} after this call began, retries included, is cancelled
+     * and counts against its endpoint, like a call abandoned at the hedger's deadline.
+     *
+     * @throws LlmThrottledException if every attempt was rejected with 429
+     * @throws LlmHedger.DeadlineExceededException if the stream ran past {@code deadline}
+     */
+    public void stream(Prompt prompt, int estimatedTokens, Duration stallTimeout, Duration deadline,
+                       Consumer<String> onChunk) {
+        long deadlineAt = System.nanoTime() + deadline.toNanos();
+        Set<LlmEndpointPool.Endpoint> failedOn = new HashSet<>();
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (System.nanoTime() - deadlineAt >= 0) throw deadlineExceeded(deadline);
+            LlmEndpointPool.Endpoint endpoint = pool.acquire(failedOn);
+            if (!(endpoint.chatModel() instanceof StreamingChatModel streamingModel)) {
+                endpoint.failed(false);
+                throw new UnsupportedOperationException("Chat model of endpoint " + endpoint.name() + " does not support streaming");
+            }
+            endpoint.awaitBudget(estimatedTokens);
+            if (System.nanoTime() - deadlineAt >= 0) {
+                // The budget wait used up the time; the endpoint was never asked
+                endpoint.abandon();
+                throw deadlineExceeded(deadline);
+            }
+
+            boolean delivered = false;
+            long totalTokens = 0;
+            try {
+                // Each chunk must come within the stall timeout and before the deadline; the
+                // timeout cancels the subscription, which closes the connection
+                Flux<ChatResponse> chunks = streamingModel.stream(prompt).timeout(
+                        Mono.delay(nextChunkWait(stallTimeout, deadlineAt)),
+                        chunk -> Mono.delay(nextChunkWait(stallTimeout, deadlineAt)));
+                for (ChatResponse chunk : chunks.toIterable()) {
+                    totalTokens = Math.max(totalTokens, totalTokens(chunk));
+                    String content = chunk.getResult() != null && chunk.getResult().getOutput() != null
+                            ? chunk.getResult().getOutput().getContent() : null;
+                    if (content != null && !content.isEmpty()) {
+                        delivered = true;
+                        onChunk.accept(content);
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (System.nanoTime() - deadlineAt >= 0) {
+                    endpoint.failed(!Thread.currentThread().isInterrupted());
+                    throw deadlineExceeded(deadline);
+                }
+                if (delivered || !isThrottled(e)) {
+                    boolean endpointFault = !Thread.currentThread().isInterrupted() && isEndpointFault(e);
+                    endpoint.failed(endpointFault);
+                    failedOn.add(endpoint);
+                    if (delivered || !endpointFault || !pool.hasAlternative(failedOn)) throw e;
+                    log.warn("LLM endpoint {} failed on stream, failing over: {}", endpoint.name(), e.getMessage());
+                    continue;
+                }
+                Duration retryAfter = retryAfter(e, attempt);
+                endpoint.throttled(retryAfter);
+                log.warn("LLM 429 on stream from {} (attempt {}/{}), retrying after {} ms",
+                        endpoint.name(), attempt, maxAttempts, retryAfter.toMillis());
+                continue;
+            }
+
+            endpoint.succeeded(estimatedTokens, totalTokens, -1);
+            return;
+        }
+        throw new LlmThrottledException("LLM provider still rate limiting after " + maxAttempts + " attempts");
+    }
+
+    /** The stall timeout, cut short by the deadline. */
+    private static Duration nextChunkWait(Duration stallTimeout, long deadlineAt) {
+        return Duration.ofNanos(Math.max(0, Math.min(stallTimeout.toNanos(), deadlineAt - System.nanoTime())));
+    }
+
+    private static LlmHedger.DeadlineExceededException deadlineExceeded(Duration deadline) {
+        return new LlmHedger.DeadlineExceededException("LLM stream exceeded the " + deadline.toSeconds() + " s deadline");
+    }
+
+    /** Rough token count for budget purposes: ~4 characters per token plus room for the reply. */
+    public static int estimateTokens(String... parts) {
+        int tokens = OUTPUT_TOKEN_ALLOWANCE;
+        for (String part : parts) {
+            tokens += approxTokens(part);
+        }
+        return tokens;
+    }
+
+    /** ~4 characters per token; good enough for budgeting, not for billing. */
+    public static int approxTokens(String text) {
+        return text == null ? 0 : text.length() / CHARS_PER_TOKEN;
+    }
+
+    /** Bad requests fail everywhere; any other error is the endpoint's. */
+    private static boolean isEndpointFault(RuntimeException e) {
+        String msg = e.getMessage();
+        return msg == null || !REQUEST_ERROR.matcher(msg).find();
+    }
+
+    private static boolean isThrottled(RuntimeException e) {
+        String msg = e.getMessage();
+        return msg != null && (msg.startsWith("429") || msg.contains("rate_limit_exceeded")
+                || msg.contains("Too Many Requests"));
+    }
+
+    private Duration retryAfter(RuntimeException e, int attempt) {
+        Matcher m = RETRY_IN.matcher(e.getMessage());
+        if (m.find()) {
+            long minutes = m.group(1) != null ? Long.parseLong(m.group(1)) : 0;
+            double amount = Double.parseDouble(m.group(2));
+            long millis = "ms".equals(m.group(3)) ? (long) amount : (long) (amount * 1000);
+            return Duration.ofMinutes(minutes).plusMillis(millis);
+        }
+        // No hint from the provider: exponential backoff from the configured base.
+        return defaultBackoff.multipliedBy(1L << Math.min(attempt - 1, 5));
+    }
+
+    /** Prompt + completion tokens the provider reports for {@code response}, 0 if it reports none. */
+    static long totalTokens(ChatResponse response) {
+        ChatResponseMetadata metadata = response.getMetadata();
+        Usage usage = metadata != null ? metadata.getUsage() : null;
+        Long total = usage != null ? usage.getTotalTokens() : null;
+        return total != null ? total : 0;
+    }
+
+    private static long tokensRemaining(ChatResponse response) {
+        ChatResponseMetadata metadata = response.getMetadata();
+        RateLimit rateLimit = metadata != null ? metadata.getRateLimit() : null;
+        Long remaining = rateLimit != null ? rateLimit.getTokensRemaining() : null;
+        return remaining != null ? remaining : -1;
+    }
+
+    /** Thrown when the provider keeps answering 429 after all retries. */
+    public static class LlmThrottledException extends RuntimeException {
+        public LlmThrottledException(String message) {
+            super(message);
+        }
+    }
+}
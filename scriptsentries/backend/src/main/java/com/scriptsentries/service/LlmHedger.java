@@ -0,0 +1,265 @@
+package com.scriptsentries.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Tail-latency control for page requests, in front of {@link LlmGateway}.
+ *
+ * A request that has not answered after the {@code hedge.percentile} latency of recent
+ * requests gets one duplicate; the first successful answer wins and the other call is
+ * cancelled (its thread interrupted). Hedges are capped at {@code hedge.max-ratio} of
+ * all requests so a provider-wide slowdown cannot double the bill. Every request also
+ * has a hard deadline; past it the call fails like any other error and is retried by
+ * the caller, and counts against the endpoint that did not answer in time. Streamed
+ * requests get the deadline but no hedges.
+ *
+ * Meters: {@code scriptsentries.llm.requests}, {@code .hedges}, {@code .hedge.wins},
+ * {@code .deadline.exceeded}, {@code .latency} and the current {@code .hedge.delay}.
+ */
+@Component
+@Slf4j
+public class LlmHedger {
+
+    private final LlmGateway llmGateway;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final boolean hedgeEnabled;
+    private final double percentile;
+    private final Duration initialDelay;
+    private final Duration minDelay;
+    private final double maxHedgeRatio;
+    private final Duration deadline;
+    private final LatencyWindow latencies;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong deadlinesExceeded = new AtomicLong();
+    private final Timer latency;
+
+    public LlmHedger(LlmGateway llmGateway,
+                     MeterRegistry meterRegistry,
+                     @Value("${scriptsentries.llm.hedge.enabled:true}") boolean hedgeEnabled,
+                     @Value("${scriptsentries.llm.hedge.percentile:0.95}") double percentile,
+                     @Value("${scriptsentries.llm.hedge.initial-delay:20s}") Duration initialDelay,
+                     @Value("${scriptsentries.llm.hedge.min-delay:3s}") Duration minDelay,
+                     @Value("${scriptsentries.llm.hedge.max-ratio:0.1}") double maxHedgeRatio,
+                     @Value("${scriptsentries.llm.hedge.window:256}") int window,
+                     @Value("${scriptsentries.llm.deadline:90s}") Duration deadline) {
+        this.llmGateway = llmGateway;
+        this.hedgeEnabled = hedgeEnabled;
+        this.percentile = percentile;
+        this.initialDelay = initialDelay;
+        this.minDelay = minDelay;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.deadline = deadline;
+        this.latencies = new LatencyWindow(window);
+
+        FunctionCounter.builder("scriptsentries.llm.requests", requests, AtomicLong::get)
+                .description("Page requests sent to the model, hedges not included").register(meterRegistry);
+        FunctionCounter.builder("scriptsentries.llm.hedges", hedges, AtomicLong::get)
+                .description("Duplicate requests sent for slow calls").register(meterRegistry);
+        FunctionCounter.builder("scriptsentries.llm.hedge.wins", hedgeWins, AtomicLong::get)
+                .description("Requests answered by the hedge rather than the original call").register(meterRegistry);
+        FunctionCounter.builder("scriptsentries.llm.deadline.exceeded", deadlinesExceeded, AtomicLong::get)
+                .description("Requests abandoned at the per-request deadline").register(meterRegistry);
+        Gauge.builder("scriptsentries.llm.hedge.delay", this, h -> h.hedgeDelay().toMillis())
+                .baseUnit("milliseconds").description("Current wait before a request is hedged").register(meterRegistry);
+        this.latency = Timer.builder("scriptsentries.llm.latency")
+                .description("Successful model calls, by call").publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /** One answered call and whether it came from the hedge. */
+    private record Answer(ChatResponse response, boolean hedged) {}
+
+    /**
+     * A running call; {@code task} is kept so the loser can be interrupted. Only a call
+     * {@code superseded} by the other one's answer is let off by the endpoint's circuit
+     * breaker; one abandoned at the deadline counts as the endpoint's failure.
+     */
+    private record Call(Future<?> task, CompletableFuture<ChatResponse> result, AtomicBoolean superseded) {
+        void cancel(boolean answered) {
+            if (answered) superseded.set(true);
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Same contract as {@link LlmGateway#call}, plus hedging and the deadline.
+     *
+     * @throws DeadlineExceededException if no call answered within {@code llm.deadline}
+     */
+    public ChatResponse call(Prompt prompt, int estimatedTokens) {
+        requests.incrementAndGet();
+        long start = System.nanoTime();
+        Call primary = submit(prompt, estimatedTokens);
+        Call hedge = null;
+        boolean answered = false;
+        try {
+            if (hedgeEnabled) {
+                try {
+                    ChatResponse response = await(primary.result(), Math.min(hedgeDelay().toNanos(), deadline.toNanos()));
+                    answered = true;
+                    return response;
+                } catch (TimeoutException slow) {
+                    if (mayHedge()) {
+                        hedges.incrementAndGet();
+                        log.debug("LLM call slower than {} ms, hedging", hedgeDelay().toMillis());
+                        hedge = submit(prompt, estimatedTokens);
+                    }
+                }
+            }
+
+            long remaining = deadline.toNanos() - (System.nanoTime() - start);
+            if (hedge == null) {
+                ChatResponse response = await(primary.result(), remaining);
+                answered = true;
+                return response;
+            }
+
+            Answer answer = await(firstSuccess(primary.result(), hedge.result()), remaining);
+            answered = true;
+            if (answer.hedged()) hedgeWins.incrementAndGet();
+            return answer.response();
+        } catch (TimeoutException e) {
+            deadlinesExceeded.incrementAndGet();
+            throw new DeadlineExceededException("LLM call exceeded the " + deadline.toSeconds() + " s deadline");
+        } finally {
+            primary.cancel(answered);
+            if (hedge != null) hedge.cancel(answered);
+        }
+    }
+
+    /**
+     * Same contract as {@link LlmGateway#stream}, plus the deadline. Streams are not hedged:
+     * once chunks have been handed on, a duplicate could not take over.
+     *
+     * @throws DeadlineExceededException if the stream did not complete within {@code llm.deadline}
+     */
+    public void stream(Prompt prompt, int estimatedTokens, Duration stallTimeout, Consumer<String> onChunk) {
+        requests.incrementAndGet();
+        try {
+            llmGateway.stream(prompt, estimatedTokens, stallTimeout, deadline, onChunk);
+        } catch (DeadlineExceededException e) {
+            deadlinesExceeded.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private Call submit(Prompt prompt, int estimatedTokens) {
+        CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        AtomicBoolean superseded = new AtomicBoolean();
+        Future<?> task = executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                ChatResponse response = llmGateway.call(prompt, estimatedTokens, superseded::get);
+                long nanos = System.nanoTime() - start;
+                latencies.record(nanos);
+                latency.record(nanos, TimeUnit.NANOSECONDS);
+                result.complete(response);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return new Call(task, result, superseded);
+    }
+
+    /** Completes with the first successful call; fails only once both have failed. */
+    private static CompletableFuture<Answer> firstSuccess(CompletableFuture<ChatResponse> primary,
+                                                          CompletableFuture<ChatResponse> hedge) {
+        CompletableFuture<Answer> first = new CompletableFuture<>();
+        primary.whenComplete((response, error) -> {
+            if (error == null) first.complete(new Answer(response, false));
+            else if (hedge.isCompletedExceptionally()) first.completeExceptionally(error);
+        });
+        hedge.whenComplete((response, error) -> {
+            if (error == null) first.complete(new Answer(response, true));
+            else if (primary.isCompletedExceptionally()) first.completeExceptionally(error);
+        });
+        return first;
+    }
+
+    private static <T> T await(CompletableFuture<T> future, long timeoutNanos) throws TimeoutException {
+        try {
+            return future.get(Math.max(timeoutNanos, 0), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for LLM response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** The configured percentile of recent latencies, or {@code initial-delay} until enough samples exist. */
+    Duration hedgeDelay() {
+        long nanos = latencies.percentile(percentile);
+        if (nanos < 0) return initialDelay;
+        return Duration.ofNanos(Math.max(nanos, minDelay.toNanos()));
+    }
+
+    private boolean mayHedge() {
+        return hedges.get() + 1 <= Math.max(1, requests.get() * maxHedgeRatio);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** Thrown when neither the call nor its hedge answered before the deadline. */
+    public static class DeadlineExceededException extends RuntimeException {
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /** Ring buffer of the last {@code size} successful call latencies. */
+    private static final class LatencyWindow {
+        private static final int MIN_SAMPLES = 20;
+
+        private final long[] samples;
+        private int next;
+        private int count;
+
+        LatencyWindow(int size) {
+            samples = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) count++;
+        }
+
+        /** -1 while fewer than {@link #MIN_SAMPLES} calls have been seen. */
+        synchronized long percentile(double p) {
+            if (count < MIN_SAMPLES) return -1;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.scriptsentries.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side throttle for one LLM account.
+ *
+ * Two token buckets enforce the provider's requests/minute and tokens/minute budgets,
+ * and an AIMD concurrency limit adapts to what the provider actually accepts:
+ * every success adds roughly one slot per round trip, every 429 halves the limit and
+ * pauses new calls until the provider's retry-after has passed.
+ *
+ * Uses a {@link ReentrantLock} rather than {@code synchronized} because callers are
+ * virtual threads and may park here for seconds.
+ */
+@Slf4j
+class LlmRateLimiter {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private final LongSupplier clock;
+    private final TokenBucket requests;
+    private final TokenBucket tokens;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+
+    private double concurrencyLimit;
+    private int inFlight;
+    private long pausedUntil;
+    private long lastDecrease;
+
+    LlmRateLimiter(int requestsPerMinute, int tokensPerMinute, int initialConcurrency, int maxConcurrency) {
+        this(requestsPerMinute, tokensPerMinute, initialConcurrency, maxConcurrency, System::nanoTime);
+    }
+
+    /** {@code clock} stands in for {@link System#nanoTime()}. */
+    LlmRateLimiter(int requestsPerMinute, int tokensPerMinute, int initialConcurrency, int maxConcurrency,
+                   LongSupplier clock) {
+        this.clock = clock;
+        long now = clock.getAsLong();
+        this.requests = new TokenBucket(requestsPerMinute, now);
+        this.tokens = new TokenBucket(tokensPerMinute, now);
+        this.minConcurrency = 1;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.concurrencyLimit = Math.max(1, Math.min(initialConcurrency, this.maxConcurrency));
+        this.pausedUntil = now;
+        this.lastDecrease = now - TimeUnit.MINUTES.toNanos(1);
+    }
+
+    /** Blocks until a request of roughly {@code estimatedTokens} may be sent. */
+    void acquire(int estimatedTokens) throws InterruptedException {
+        lock.lock();
+        try {
+            long waitNanos;
+            while ((waitNanos = reserve(estimatedTokens)) != 0) {
+                if (waitNanos < 0) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(waitNanos);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Like {@link #acquire}, but returns false instead of waiting. */
+    boolean tryAcquire(int estimatedTokens) {
+        lock.lock();
+        try {
+            return reserve(estimatedTokens) == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot and the budget and returns 0 if the request may be sent now; otherwise
+     * the nanos until it may, or -1 to wait for a slot. Caller holds the lock.
+     */
+    private long reserve(int estimatedTokens) {
+        long now = clock.getAsLong();
+        if (pausedUntil - now > 0) return pausedUntil - now;
+        if (inFlight >= (int) concurrencyLimit) return -1;
+
+        long waitNanos = Math.max(requests.nanosUntil(1, now), tokens.nanosUntil(estimatedTokens, now));
+        if (waitNanos == 0) {
+            requests.take(1);
+            tokens.take(estimatedTokens);
+            inFlight++;
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Additive increase. {@code actualTokens} (0 if unknown) corrects the estimate taken
+     * at acquire time; {@code tokensRemaining} (-1 if unknown) is the provider's own
+     * view of the minute budget and wins when it is lower than ours.
+     */
+    void onSuccess(int estimatedTokens, long actualTokens, long tokensRemaining) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (actualTokens > 0) {
+                tokens.take(actualTokens - estimatedTokens);
+            }
+            if (tokensRemaining >= 0) {
+                tokens.clampTo(tokensRemaining, clock.getAsLong());
+            }
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1.0 / concurrencyLimit);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Multiplicative decrease plus a global pause for {@code retryAfter}. */
+    void onThrottled(Duration retryAfter) {
+        lock.lock();
+        try {
+            inFlight--;
+            long now = clock.getAsLong();
+            long pause = retryAfter.toNanos();
+
+            // Many in-flight calls see the same 429 burst; halve once per window, not once per call.
+            if (now - lastDecrease > pause) {
+                concurrencyLimit = Math.max(minConcurrency, concurrencyLimit / 2);
+                lastDecrease = now;
+                log.info("LLM throttled: concurrency limit now {}, pausing {} ms",
+                        (int) concurrencyLimit, retryAfter.toMillis());
+            }
+            pausedUntil = Math.max(pausedUntil, now + pause);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Non-throttling failure: give the slot back without touching the limit. */
+    void onFailure() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True while a 429's retry-after is still running. */
+    boolean paused() {
+        lock.lock();
+        try {
+            return pausedUntil - clock.getAsLong() > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int concurrencyLimit() {
+        lock.lock();
+        try {
+            return (int) concurrencyLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Continuous-refill bucket sized to one minute of budget. Not thread-safe; guarded by the limiter lock. */
+    private static final class TokenBucket {
+        private final double capacity;
+        private final double refillPerNano;
+        private double level;
+        private long lastRefill;
+
+        TokenBucket(int perMinute, long now) {
+            this.capacity = Math.max(1, perMinute);
+            this.refillPerNano = capacity / TimeUnit.MINUTES.toNanos(1);
+            this.level = capacity;
+            this.lastRefill = now;
+        }
+
+        long nanosUntil(long amount, long now) {
+            refill(now);
+            // A request bigger than the whole bucket goes through once the bucket is full.
+            double needed = Math.min(amount, capacity);
+            if (level >= needed) return 0;
+            return (long) Math.ceil((needed - level) / refillPerNano);
+        }
+
+        void take(long amount) {
+            level -= amount;
+        }
+
+        void clampTo(long remaining, long now) {
+            // Refill first, or the time since the last refill would be credited on top of it
+            refill(now);
+            level = Math.min(level, remaining);
+        }
+
+        private void refill(long now) {
+            level = Math.min(capacity, level + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+        }
+    }
+}
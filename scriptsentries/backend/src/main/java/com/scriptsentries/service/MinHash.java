@@ -0,0 +1,134 @@
+package com.scriptsentries.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * MinHash signatures over word 3-gram shingles of a page.
+ *
+ * Two pages' signatures agree in a fraction of positions that estimates the Jaccard
+ * similarity of their shingle sets, and the element-wise minimum of two signatures is
+ * the signature of the union — which is what lets a page that straddles two pages of
+ * an earlier draft still be recognised after a scene insertion shifts everything.
+ *
+ * Signatures are persisted, so {@link #SEED} and {@link #SIZE} must never change
+ * without re-fingerprinting stored versions.
+ */
+public final class MinHash {
+
+    public static final int SIZE = 128;
+    private static final long SEED = 0x5C41F7E5E17L;
+    private static final int SHINGLE_WORDS = 3;
+    private static final long[] SALTS = new long[SIZE];
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < SIZE; i++) SALTS[i] = random.nextLong();
+    }
+
+    private MinHash() {}
+
+    /** Signature plus the shingle-set size needed for containment estimates. */
+    public record Signature(int[] values, int shingleCount) {}
+
+    public static Signature of(String pageText) {
+        int[] sig = new int[SIZE];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+
+        long[] words = wordHashes(pageText);
+        if (words.length == 0) return new Signature(sig, 0);
+
+        int shingles = Math.max(1, words.length - SHINGLE_WORDS + 1);
+        for (int s = 0; s < shingles; s++) {
+            long h = words[s];
+            for (int w = 1; w < SHINGLE_WORDS && s + w < words.length; w++) {
+                h = Long.rotateLeft(h, 21) ^ words[s + w];
+            }
+            for (int k = 0; k < SIZE; k++) {
+                int v = (int) (mix(h ^ SALTS[k]) >>> 32);
+                if (v < sig[k]) sig[k] = v;
+            }
+        }
+        return new Signature(sig, shingles);
+    }
+
+    /** Estimated Jaccard similarity: share of positions where the signatures agree. */
+    public static double jaccard(int[] a, int[] b) {
+        int equal = 0;
+        for (int k = 0; k < SIZE; k++) {
+            if (a[k] == b[k]) equal++;
+        }
+        return (double) equal / SIZE;
+    }
+
+    /** Signature of the union of two shingle sets. */
+    public static int[] union(int[] a, int[] b) {
+        int[] u = new int[SIZE];
+        for (int k = 0; k < SIZE; k++) u[k] = Math.min(a[k], b[k]);
+        return u;
+    }
+
+    /**
+     * Estimated share of A's shingles that also occur in B, |A∩B| / |A|.
+     * Derived from J = |A∩B| / |A∪B| and |A∪B| = (|A| + |B|) / (1 + J).
+     */
+    public static double containment(Signature a, int[] b, double bSize) {
+        if (a.shingleCount() == 0) return 0;
+        double j = jaccard(a.values(), b);
+        double c = j * (a.shingleCount() + bSize) / ((1 + j) * a.shingleCount());
+        return Math.min(1.0, c);
+    }
+
+    /** Estimated shingle count of the union of two sets, for chaining into {@link #containment}. */
+    public static double unionSize(Signature a, Signature b) {
+        double j = jaccard(a.values(), b.values());
+        return (a.shingleCount() + b.shingleCount()) / (1 + j);
+    }
+
+    public static byte[] toBytes(int[] signature) {
+        ByteBuffer buf = ByteBuffer.allocate(SIZE * Integer.BYTES);
+        for (int v : signature) buf.putInt(v);
+        return buf.array();
+    }
+
+    public static int[] fromBytes(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int[] sig = new int[SIZE];
+        for (int k = 0; k < SIZE; k++) sig[k] = buf.getInt();
+        return sig;
+    }
+
+    /** 64-bit FNV-1a hash per lower-cased alphanumeric word. */
+    private static long[] wordHashes(String text) {
+        if (text == null) return new long[0];
+        String lower = text.toLowerCase(Locale.ROOT);
+        long[] out = new long[Math.max(16, lower.length() / 5)];
+        int n = 0;
+        long h = 0;
+        boolean inWord = false;
+        for (int i = 0; i <= lower.length(); i++) {
+            char c = i < lower.length() ? lower.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    h = 0xcbf29ce484222325L;
+                    inWord = true;
+                }
+                h = (h ^ c) * 0x100000001b3L;
+            } else if (inWord) {
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = h;
+                inWord = false;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** SplitMix64 finalizer — cheap, well-distributed 64-bit mixing. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
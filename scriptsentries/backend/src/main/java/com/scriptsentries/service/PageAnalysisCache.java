@@ -0,0 +1,105 @@
+package com.scriptsentries.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scriptsentries.dto.AiPageAnalysisResult;
+import com.scriptsentries.model.PageAnalysisCacheEntry;
+import com.scriptsentries.repository.PageAnalysisCacheRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Content-addressed cache of per-page AI results.
+ *
+ * The key is SHA-256 over the prompt version, the models of the {@link LlmEndpointPool}
+ * (any of which may answer) and the normalized page text, so an unchanged page in a
+ * re-uploaded draft costs a lookup instead of a model call, while any prompt or model
+ * change naturally misses. Postgres holds the durable copy; a small LRU in front saves
+ * the round trip for hot pages within a scan burst.
+ *
+ * Cache failures are logged and treated as a miss — they never fail a page.
+ */
+@Service
+@Slf4j
+public class PageAnalysisCache {
+
+    private static final TypeReference<List<AiPageAnalysisResult.AiRiskItem>> ITEMS = new TypeReference<>() {};
+
+    private final PageAnalysisCacheRepository repository;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final String modelId;
+    private final Map<String, List<AiPageAnalysisResult.AiRiskItem>> memory;
+
+    public PageAnalysisCache(PageAnalysisCacheRepository repository,
+                             ObjectMapper objectMapper,
+                             @Value("${scriptsentries.analysis.cache.enabled:true}") boolean enabled,
+                             @Value("${scriptsentries.analysis.cache.memory-entries:2000}") int memoryEntries,
+                             LlmEndpointPool llmEndpointPool) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.modelId = llmEndpointPool.modelIds();
+        this.memory = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<AiPageAnalysisResult.AiRiskItem>> eldest) {
+                return size() > memoryEntries;
+            }
+        });
+    }
+
+    public String key(String promptVersion, String pageText) {
+        return PageText.sha256(promptVersion, modelId, PageText.normalize(pageText));
+    }
+
+    public Optional<List<AiPageAnalysisResult.AiRiskItem>> get(String key) {
+        if (!enabled) return Optional.empty();
+
+        List<AiPageAnalysisResult.AiRiskItem> hit = memory.get(key);
+        if (hit != null) return Optional.of(hit);
+
+        try {
+            Optional<List<AiPageAnalysisResult.AiRiskItem>> stored = repository.findById(key)
+                    .map(entry -> readItems(entry.getRisksJson()));
+            stored.ifPresent(items -> memory.put(key, items));
+            return stored;
+        } catch (Exception e) {
+            log.debug("Page cache lookup failed for {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, List<AiPageAnalysisResult.AiRiskItem> items) {
+        if (!enabled) return;
+
+        List<AiPageAnalysisResult.AiRiskItem> copy = List.copyOf(items);
+        memory.put(key, copy);
+        try {
+            if (!repository.existsById(key)) {
+                repository.save(PageAnalysisCacheEntry.builder()
+                        .cacheKey(key)
+                        .risksJson(objectMapper.writeValueAsString(copy))
+                        .build());
+            }
+        } catch (Exception e) {
+            // Typically two scans writing the same page at once — the other insert won.
+            log.debug("Page cache write skipped for {}: {}", key, e.getMessage());
+        }
+    }
+
+    private List<AiPageAnalysisResult.AiRiskItem> readItems(String json) {
+        try {
+            return objectMapper.readValue(json, ITEMS);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupt page cache entry", e);
+        }
+    }
+}
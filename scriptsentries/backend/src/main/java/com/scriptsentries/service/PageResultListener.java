@@ -0,0 +1,38 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.model.RiskFlag;
+
+import java.util.List;
+
+/**
+ * Callback invoked by {@link ScriptAnalysisService} each time a page finishes analysis,
+ * or gives up on it after retries. May be called concurrently from several analysis threads.
+ */
+@FunctionalInterface
+public interface PageResultListener {
+
+    PageResultListener NONE = (pageNumber, flags) -> {};
+
+    void onPageComplete(int pageNumber, List<RiskFlag> flags);
+
+    /**
+     * A risk the model has just reported while streaming, before its page is complete.
+     * A preview only: the flag has no id, and {@link #onPageComplete} remains the
+     * authoritative result (a failed attempt can report the same risk again).
+     */
+    default void onRiskFound(int pageNumber, RiskFlag flag) {}
+
+    /** The page could not be analyzed; it produced no flags and can be retried by resuming. */
+    default void onPageFailed(int pageNumber, String error) {}
+
+    /**
+     * The model was unavailable, so the page was analyzed by the local detectors only.
+     * The flags are real but possibly incomplete; the page should be re-run later.
+     */
+    default void onPageDegraded(int pageNumber, List<RiskFlag> flags) {
+        onPageComplete(pageNumber, flags);
+    }
+
+    /** Called once, after the last page: how the pages were routed and what each model tier cost. */
+    default void onRouting(ScanRouting routing) {}
+}
@@ -0,0 +1,212 @@
+package com.scriptsentries.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * First tier of the model cascade: a small, cheap model reads batches of pages and
+ * names the ones that may hold a clearance risk. Only those go on to the large model;
+ * the rest complete with their rule flags alone.
+ *
+ * The screener can only clear pages, never add findings, and it fails open: pages with
+ * dictionary hits are never screened, and a batch whose call fails or whose answer
+ * cannot be read keeps all of its pages as candidates, as does every batch still open
+ * at {@code cascade.deadline}. While the circuit of every large-model endpoint is open
+ * the pages are completed from local detectors anyway, so nothing is screened.
+ *
+ * It has its own {@link LlmGateway}, since the provider rate-limits each model separately.
+ */
+@Component
+@Slf4j
+public class PageScreener {
+
+    private static final Pattern CANDIDATES = Pattern.compile("\"candidates\"\\s*:\\s*\\[([^\\]]*)\\]");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    private static final String SYSTEM_PROMPT = """
+            You screen film and TV script pages for a clearance attorney. For each page, decide
+            whether it could contain anything that needs legal clearance:
+            - a real person, living or historical;
+            - a real brand, product, company, organization, government agency or logo;
+            - a song, lyrics, artwork, book, film or TV show;
+            - a real place, business, landmark or event;
+            - a phone number, address, URL or license plate;
+            - alcohol, tobacco, drugs, weapons or military uniforms shown in a specific way.
+            Invented characters, generic places ("a diner") and generic objects are not risks.
+            If you are unsure about a page, it IS a candidate.
+
+            The input has several pages, each starting with a "PAGE <n>:" header.
+            Reply with JSON only, no explanation: {"candidates": [<n>, ...]}
+            """;
+
+    private final LlmGateway gateway;
+    private final LlmEndpointPool llmEndpointPool;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final boolean enabled;
+    private final int tokenBudget;
+    private final int maxPages;
+    private final Duration deadline;
+    private final double screeningPricePerMTok;
+    private final double largeModelPricePerMTok;
+
+    public PageScreener(@Qualifier("screeningChatModel") ChatModel screeningModel,
+                        LlmEndpointPool llmEndpointPool,
+                        @Value("${scriptsentries.analysis.cascade.screening-model:llama-3.1-8b-instant}") String screeningModelName,
+                        @Value("${scriptsentries.analysis.cascade.enabled:true}") boolean enabled,
+                        @Value("${scriptsentries.analysis.cascade.token-budget:6000}") int tokenBudget,
+                        @Value("${scriptsentries.analysis.cascade.max-pages:10}") int maxPages,
+                        @Value("${scriptsentries.analysis.cascade.requests-per-minute:30}") int requestsPerMinute,
+                        @Value("${scriptsentries.analysis.cascade.tokens-per-minute:60000}") int tokensPerMinute,
+                        @Value("${scriptsentries.analysis.cascade.max-in-flight:8}") int maxInFlight,
+                        @Value("${scriptsentries.analysis.cascade.deadline:20s}") Duration deadline,
+                        @Value("${scriptsentries.analysis.cascade.screening-price-per-mtok:0.06}") double screeningPricePerMTok,
+                        @Value("${scriptsentries.analysis.cascade.large-model-price-per-mtok:0.70}") double largeModelPricePerMTok,
+                        @Value("${scriptsentries.llm.max-attempts:6}") int maxAttempts,
+                        @Value("${scriptsentries.llm.default-backoff:2s}") Duration defaultBackoff) {
+        this.gateway = new LlmGateway(LlmEndpointPool.single("screening", screeningModelName, screeningModel,
+                new LlmRateLimiter(requestsPerMinute, tokensPerMinute, Math.min(4, maxInFlight), maxInFlight)),
+                maxAttempts, defaultBackoff);
+        this.llmEndpointPool = llmEndpointPool;
+        this.enabled = enabled;
+        this.tokenBudget = tokenBudget;
+        this.maxPages = maxPages;
+        this.deadline = deadline;
+        this.screeningPricePerMTok = screeningPricePerMTok;
+        this.largeModelPricePerMTok = largeModelPricePerMTok;
+    }
+
+    /** Fresh routing counters for one analysis run, priced for this cascade. */
+    ScanRouting newRouting() {
+        return new ScanRouting(screeningPricePerMTok, largeModelPricePerMTok);
+    }
+
+    /**
+     * Page numbers of {@code pages} that need the large model. With the cascade disabled,
+     * or the large model unreachable, every page.
+     */
+    Set<Integer> candidates(List<ScriptAnalysisService.PageInput> pages, ScanRouting routing) {
+        boolean screening = enabled && !llmEndpointPool.isOpen();
+        Set<Integer> candidates = new HashSet<>();
+        List<ScriptAnalysisService.PageInput> toScreen = new ArrayList<>();
+        for (ScriptAnalysisService.PageInput page : pages) {
+            // A dictionary hit already makes the page a candidate
+            if (!screening || !page.hints().isEmpty()) candidates.add(page.pageNumber());
+            else toScreen.add(page);
+        }
+        if (toScreen.isEmpty()) return candidates;
+
+        long start = System.nanoTime();
+        List<List<ScriptAnalysisService.PageInput>> batches = batch(toScreen);
+        List<Future<Set<Integer>>> screens = batches.stream()
+                .map(batch -> executor.submit(() -> screen(batch, routing)))
+                .toList();
+        long until = start + deadline.toNanos();
+        for (int i = 0; i < screens.size(); i++) {
+            candidates.addAll(awaitScreen(screens.get(i), batches.get(i), until));
+        }
+
+        int cleared = pages.size() - candidates.size();
+        routing.screened(toScreen.size(), cleared);
+        log.info("Screening: {} of {} pages cleared in {} requests ({} ms)",
+                cleared, toScreen.size(), batches.size(), (System.nanoTime() - start) / 1_000_000);
+        return candidates;
+    }
+
+    /** The batch's candidates, or all of its pages if it has not answered by {@code until}. */
+    private Set<Integer> awaitScreen(Future<Set<Integer>> screen, List<ScriptAnalysisService.PageInput> batch, long until) {
+        try {
+            return screen.get(Math.max(0, until - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            screen.cancel(true);
+            log.warn("Screening of page(s) {} exceeded {}, keeping all", pageNumbers(batch), deadline);
+        } catch (ExecutionException e) {
+            log.warn("Screening failed for page(s) {}, keeping all: {}", pageNumbers(batch), e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            screen.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        return batch.stream().map(ScriptAnalysisService.PageInput::pageNumber).collect(Collectors.toSet());
+    }
+
+    /** Candidate page numbers of one batch; all of them if the screen cannot be trusted. */
+    private Set<Integer> screen(List<ScriptAnalysisService.PageInput> batch, ScanRouting routing) {
+        Set<Integer> all = batch.stream().map(ScriptAnalysisService.PageInput::pageNumber).collect(Collectors.toSet());
+        String userText = batch.stream()
+                .map(page -> "PAGE " + page.pageNumber() + ":\n\n" + page.text())
+                .collect(Collectors.joining("\n\n"));
+        int estimated = LlmGateway.estimateTokens(SYSTEM_PROMPT, userText);
+        try {
+            ChatResponse response = gateway.call(
+                    new Prompt(List.of(new SystemMessage(SYSTEM_PROMPT), new UserMessage(userText))), estimated);
+            long used = LlmGateway.totalTokens(response);
+            routing.screeningCall(used > 0 ? used : estimated);
+
+            Matcher m = CANDIDATES.matcher(response.getResult().getOutput().getContent());
+            if (!m.find()) {
+                log.warn("Unreadable screening answer for page(s) {}, keeping all", pageNumbers(batch));
+                return all;
+            }
+            Set<Integer> candidates = new HashSet<>();
+            Matcher n = NUMBER.matcher(m.group(1));
+            while (n.find()) {
+                int pageNumber = Integer.parseInt(n.group());
+                if (all.contains(pageNumber)) candidates.add(pageNumber);
+            }
+            return candidates;
+        } catch (RuntimeException e) {
+            log.warn("Screening failed for page(s) {}, keeping all: {}", pageNumbers(batch), e.getMessage());
+            return all;
+        }
+    }
+
+    /** Order-preserving batches under the screening token budget. */
+    private List<List<ScriptAnalysisService.PageInput>> batch(List<ScriptAnalysisService.PageInput> pages) {
+        List<List<ScriptAnalysisService.PageInput>> batches = new ArrayList<>();
+        List<ScriptAnalysisService.PageInput> current = new ArrayList<>();
+        int tokens = 0;
+        for (ScriptAnalysisService.PageInput page : pages) {
+            int pageTokens = LlmGateway.approxTokens(page.text());
+            if (!current.isEmpty() && (tokens + pageTokens > tokenBudget || current.size() >= maxPages)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                tokens = 0;
+            }
+            current.add(page);
+            tokens += pageTokens;
+        }
+        if (!current.isEmpty()) batches.add(current);
+        return batches;
+    }
+
+    private static String pageNumbers(List<ScriptAnalysisService.PageInput> batch) {
+        return batch.stream().map(p -> String.valueOf(p.pageNumber())).collect(Collectors.joining(","));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
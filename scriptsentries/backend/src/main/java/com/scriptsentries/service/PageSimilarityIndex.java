@@ -0,0 +1,121 @@
+package com.scriptsentries.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LSH index over MinHash signatures of earlier versions' pages.
+ *
+ * Signatures are cut into {@link #BANDS} bands of {@link #ROWS} values; two pages that
+ * share any whole band land in the same bucket and become candidates. With 64×2 a pair
+ * at Jaccard 1/3 — a page shifted by half a page, against each of the two it now
+ * straddles — is found 99.9% of the time and at 0.2 still ~93%, while unrelated pages
+ * rarely collide — so a query touches a handful of pages instead of every page of
+ * every draft.
+ *
+ * Holds only signatures and (script, page) coordinates, never text.
+ */
+class PageSimilarityIndex {
+
+    static final int BANDS = 64;
+    static final int ROWS = MinHash.SIZE / BANDS;
+
+    /** One indexed page. {@code rank} 0 = most recent version. */
+    record Entry(long scriptId, int rank, int pageNumber, MinHash.Signature signature) {}
+
+    /** A new page explained by one prior page, or by two consecutive ones after a shift. */
+    record Match(Entry primary, Entry secondary, double containment) {
+        List<Entry> pages() {
+            return secondary == null ? List.of(primary) : List.of(primary, secondary);
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<Long, List<Integer>> buckets = new HashMap<>();
+    private final Map<Long, Integer> byPage = new HashMap<>();
+
+    void add(Entry entry) {
+        int id = entries.size();
+        entries.add(entry);
+        byPage.put(pageKey(entry.scriptId(), entry.pageNumber()), id);
+        int[] sig = entry.signature().values();
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfAbsent(bucketKey(band, sig), k -> new ArrayList<>(2)).add(id);
+        }
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Best prior page (or consecutive pair) containing at least {@code threshold} of
+     * the new page's shingles; among equally good matches the most recent version wins.
+     */
+    Match bestMatch(MinHash.Signature page, double threshold) {
+        if (page.shingleCount() == 0) return null;
+
+        Set<Integer> candidates = new LinkedHashSet<>();
+        int[] sig = page.values();
+        for (int band = 0; band < BANDS; band++) {
+            List<Integer> bucket = buckets.get(bucketKey(band, sig));
+            if (bucket != null) candidates.addAll(bucket);
+        }
+
+        Match best = null;
+        for (int id : candidates) {
+            Entry candidate = entries.get(id);
+            best = better(best, score(page, candidate, null), threshold);
+            best = better(best, score(page, candidate, neighbour(candidate, 1)), threshold);
+            best = better(best, score(page, candidate, neighbour(candidate, -1)), threshold);
+        }
+        return best;
+    }
+
+    private Match score(MinHash.Signature page, Entry primary, Entry secondary) {
+        if (secondary == null) {
+            double c = MinHash.containment(page, primary.signature().values(), primary.signature().shingleCount());
+            return new Match(primary, null, c);
+        }
+        int[] union = MinHash.union(primary.signature().values(), secondary.signature().values());
+        double unionSize = MinHash.unionSize(primary.signature(), secondary.signature());
+        return new Match(primary, secondary, MinHash.containment(page, union, unionSize));
+    }
+
+    private static Match better(Match current, Match candidate, double threshold) {
+        if (candidate.containment() < threshold) return current;
+        if (current == null) return candidate;
+        if (candidate.primary().rank() != current.primary().rank()) {
+            return candidate.primary().rank() < current.primary().rank() ? candidate : current;
+        }
+        // Same version: prefer the single-page explanation unless the pair is clearly better.
+        boolean candidateSingle = candidate.secondary() == null;
+        boolean currentSingle = current.secondary() == null;
+        if (candidateSingle != currentSingle
+                && Math.abs(candidate.containment() - current.containment()) < 0.02) {
+            return candidateSingle ? candidate : current;
+        }
+        return candidate.containment() > current.containment() ? candidate : current;
+    }
+
+    private Entry neighbour(Entry entry, int offset) {
+        Integer id = byPage.get(pageKey(entry.scriptId(), entry.pageNumber() + offset));
+        return id != null ? entries.get(id) : null;
+    }
+
+    private static long pageKey(long scriptId, int pageNumber) {
+        return (scriptId << 20) ^ pageNumber;
+    }
+
+    private static long bucketKey(int band, int[] sig) {
+        long h = band;
+        for (int r = band * ROWS; r < (band + 1) * ROWS; r++) {
+            h = h * 0x9E3779B97F4A7C15L + sig[r];
+        }
+        return h;
+    }
+}
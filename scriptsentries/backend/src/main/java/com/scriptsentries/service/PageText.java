@@ -0,0 +1,49 @@
+package com.scriptsentries.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Helpers for identifying page content without keeping it.
+ */
+public final class PageText {
+
+    private PageText() {}
+
+    /**
+     * Collapses runs of whitespace and trims, so re-exports of the same draft
+     * (different line wrapping, trailing spaces) hash identically.
+     */
+    public static String normalize(String text) {
+        if (text == null) return "";
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) sb.append(' ');
+                sb.append(c);
+                pendingSpace = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Lower-case hex SHA-256 of the UTF-8 bytes of {@code parts}, separated by newlines. */
+    public static String sha256(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) digest.update((byte) '\n');
+                digest.update(parts[i].getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
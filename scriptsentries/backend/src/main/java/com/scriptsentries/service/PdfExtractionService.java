@@ -2,24 +2,111 @@ package com.scriptsentries.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.io.RandomAccessReadMemoryMappedFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Extracts text content from a PDF file page-by-page using Apache PDFBox 3.0.
  * Designed for use in conjunction with Zero-Retention policy — callers must
  * ensure the temp file is deleted in a try-finally block.
+ *
+ * The file is never read onto the heap as a whole: PDFBox reads it through a small
+ * page-buffered {@link RandomAccessRead} (or a memory-mapped one, outside the heap, with
+ * {@code scriptsentries.scan.pdf.memory-mapped}), and decoded streams are cached in
+ * memory only up to {@code pdf.max-main-memory}, beyond that in PDFBox scratch files
+ * that are removed when the document closes.
+ *
+ * Documents of at least {@code pdf.parallel-min-pages} pages are stripped in parallel:
+ * the page range is cut into chunks of {@code pdf.chunk-pages}, which up to
+ * {@code pdf.extraction-threads} workers take in turn, each with its own document handle
+ * and stripper (neither is thread-safe). Pages are still handed on in order, and workers
+ * stay at most a few chunks ahead of the consumer, so a slow consumer holds them back
+ * instead of letting extracted text pile up. The worker threads are shared by all scans.
+ *
+ * Every open document is charged against one {@link HeapBudget} of
+ * {@code pdf.heap-budget}: its parse, estimated at {@code pdf.parse-cost-factor} times the
+ * file size, plus its in-memory stream cache. Once the budget is {@code pdf.heap-pressure}
+ * full, new documents cache streams in temp files only and are charged the parse alone;
+ * when even that does not fit, they wait for earlier documents to close. Concurrent large
+ * uploads therefore queue instead of running the heap out.
  */
 @Service
 @Slf4j
 public class PdfExtractionService {
 
+    private final boolean memoryMapped;
+    private final DataSize maxMainMemory;
+    private final int extractionThreads;
+    private final int parallelMinPages;
+    private final int chunkPages;
+    private final ExecutorService extractionPool;
+    private final HeapBudget heapBudget;
+    private final double parseCostFactor;
+
+    private static final long MIN_PARSE_COST = DataSize.ofMegabytes(1).toBytes();
+
+    public PdfExtractionService(@Value("${scriptsentries.scan.pdf.memory-mapped:false}") boolean memoryMapped,
+                                @Value("${scriptsentries.scan.pdf.max-main-memory:8MB}") DataSize maxMainMemory,
+                                @Value("${scriptsentries.scan.pdf.extraction-threads:0}") int extractionThreads,
+                                @Value("${scriptsentries.scan.pdf.parallel-min-pages:40}") int parallelMinPages,
+                                @Value("${scriptsentries.scan.pdf.chunk-pages:10}") int chunkPages,
+                                @Value("${scriptsentries.scan.pdf.heap-budget:0}") DataSize heapBudget,
+                                @Value("${scriptsentries.scan.pdf.heap-pressure:0.75}") double heapPressure,
+                                @Value("${scriptsentries.scan.pdf.parse-cost-factor:1.0}") double parseCostFactor,
+                                MeterRegistry meterRegistry) {
+        this.memoryMapped = memoryMapped;
+        this.maxMainMemory = maxMainMemory;
+        // 0 = a quarter of the max heap
+        long budget = heapBudget.toBytes() > 0 ? heapBudget.toBytes() : Runtime.getRuntime().maxMemory() / 4;
+        this.heapBudget = new HeapBudget(budget, heapPressure, meterRegistry);
+        this.parseCostFactor = parseCostFactor;
+        // 0 = one per core; 1 = always sequential
+        this.extractionThreads = extractionThreads > 0 ? extractionThreads : Runtime.getRuntime().availableProcessors();
+        this.parallelMinPages = parallelMinPages;
+        this.chunkPages = Math.max(1, chunkPages);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.extractionPool = Executors.newFixedThreadPool(this.extractionThreads, r -> {
+            Thread thread = new Thread(r, "pdf-extract-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("PDF extraction: {} threads, heap budget {} MB for open documents",
+                this.extractionThreads, budget / (1024 * 1024));
+    }
+
+    /** Receives pages as they are extracted, in order, on the extracting thread. */
+    public interface PageConsumer {
+        /** Called once the document is open, before the first page. */
+        default void onStart(int totalPages) throws IOException {}
+
+        void onPage(int pageNumber, String text) throws IOException;
+    }
+
     /**
      * Extracts all text pages from a PDF file.
      *
@@ -28,30 +115,221 @@ public class PdfExtractionService {
      */
     public List<String> extractPages(File pdfFile) throws IOException {
         List<String> pages = new ArrayList<>();
+        extractPages(pdfFile, (pageNumber, text) -> pages.add(text));
+        return pages;
+    }
 
-        try (PDDocument document = Loader.loadPDF(pdfFile)) {
-            int totalPages = document.getNumberOfPages();
-            log.info("PDF loaded: {} pages", totalPages);
+    /**
+     * Streams the pages of a PDF file to {@code consumer} one by one, each as soon as it
+     * is stripped, so analysis can start on page 1 while later pages are still being read.
+     *
+     * @param pdfFile the temp file (caller is responsible for deletion)
+     * @return number of pages
+     */
+    public int extractPages(File pdfFile, PageConsumer consumer) throws IOException {
+        return extractPages(pdfFile, consumer, extractionThreads);
+    }
 
-            PDFTextStripper stripper = new PDFTextStripper();
+    /** Same as {@link #extractPages(File, PageConsumer)} with at most {@code threads} workers. */
+    int extractPages(File pdfFile, PageConsumer consumer, int threads) throws IOException {
+        int totalPages;
+        try (BudgetedDocument loaded = load(pdfFile)) {
+            PDDocument document = loaded.document;
+            totalPages = document.getNumberOfPages();
+            int workers = totalPages < parallelMinPages ? 1
+                    : Math.min(Math.min(threads, extractionThreads), (totalPages + chunkPages - 1) / chunkPages);
+            log.info("PDF loaded: {} pages, {} extraction worker(s)", totalPages, Math.max(1, workers));
+            consumer.onStart(totalPages);
 
-            for (int i = 1; i <= totalPages; i++) {
-                stripper.setStartPage(i);
-                stripper.setEndPage(i);
-                String pageText = stripper.getText(document).trim();
-                pages.add(pageText);
+            if (workers <= 1) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                for (int i = 1; i <= totalPages; i++) {
+                    consumer.onPage(i, strip(stripper, document, i));
+                }
+                return totalPages;
             }
         }
+        extractInParallel(pdfFile, totalPages, Math.min(threads, extractionThreads), consumer);
+        return totalPages;
+    }
 
-        return pages;
+    private static String strip(PDFTextStripper stripper, PDDocument document, int pageNumber) throws IOException {
+        stripper.setStartPage(pageNumber);
+        stripper.setEndPage(pageNumber);
+        return stripper.getText(document).trim();
+    }
+
+    /**
+     * Workers claim chunks in page order and park finished ones in {@code chunks}; this
+     * thread hands them to {@code consumer} in order. Returns only after every worker has
+     * closed its document, so the caller may delete the file straight away.
+     */
+    private void extractInParallel(File pdfFile, int totalPages, int threads, PageConsumer consumer) throws IOException {
+        int chunkCount = (totalPages + chunkPages - 1) / chunkPages;
+        int workers = Math.min(threads, chunkCount);
+        int maxAhead = workers * 2;
+        List<List<String>> chunks = new ArrayList<>(Collections.nCopies(chunkCount, null));
+        AtomicInteger nextChunk = new AtomicInteger();
+        ReentrantLock lock = new ReentrantLock();
+        Condition changed = lock.newCondition();
+        int[] delivered = {0};
+        IOException[] failure = {null};
+        boolean[] aborted = {false};
+
+        List<Future<?>> running = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            running.add(extractionPool.submit(() -> {
+                // Faster workers may have claimed every chunk already; don't load a copy for nothing
+                if (nextChunk.get() >= chunkCount) return null;
+                try (BudgetedDocument loaded = load(pdfFile)) {
+                    PDDocument document = loaded.document;
+                    PDFTextStripper stripper = new PDFTextStripper();
+                    int chunk;
+                    while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                        lock.lock();
+                        try {
+                            while (chunk >= delivered[0] + maxAhead && !aborted[0]) changed.await();
+                            if (aborted[0]) return null;
+                        } finally {
+                            lock.unlock();
+                        }
+                        int first = chunk * chunkPages + 1;
+                        int last = Math.min(first + chunkPages - 1, totalPages);
+                        List<String> texts = new ArrayList<>(last - first + 1);
+                        for (int page = first; page <= last; page++) texts.add(strip(stripper, document, page));
+
+                        lock.lock();
+                        try {
+                            chunks.set(chunk, texts);
+                            changed.signalAll();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                } catch (IOException | RuntimeException | InterruptedException e) {
+                    lock.lock();
+                    try {
+                        if (failure[0] == null) {
+                            failure[0] = e instanceof IOException io ? io : new IOException("PDF extraction failed", e);
+                        }
+                        aborted[0] = true;
+                        changed.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                List<String> texts;
+                lock.lock();
+                try {
+                    while (chunks.get(chunk) == null && failure[0] == null) changed.await();
+                    if (failure[0] != null) throw failure[0];
+                    texts = chunks.set(chunk, null);
+                    delivered[0] = chunk + 1;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                for (int i = 0; i < texts.size(); i++) {
+                    consumer.onPage(chunk * chunkPages + i + 1, texts.get(i));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during PDF extraction");
+        } finally {
+            lock.lock();
+            try {
+                aborted[0] = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            // Zero-retention: no worker may still have the file open when the caller deletes it
+            for (Future<?> worker : running) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ignored) {
+                    // reported through failure
+                }
+            }
+        }
     }
 
     /**
      * Returns total page count without extracting content.
      */
     public int getPageCount(File pdfFile) throws IOException {
-        try (PDDocument document = Loader.loadPDF(pdfFile)) {
-            return document.getNumberOfPages();
+        try (BudgetedDocument loaded = load(pdfFile)) {
+            return loaded.document.getNumberOfPages();
         }
     }
+
+    /**
+     * Waits for heap budget, then opens the document. The document owns the source and
+     * closes it (and any scratch files) with itself; closing it refunds the budget.
+     */
+    private BudgetedDocument load(File pdfFile) throws IOException {
+        long size = pdfFile.length();
+        long parse = Math.max(MIN_PARSE_COST, (long) (size * parseCostFactor));
+        long cache = Math.min(size, maxMainMemory.toBytes());
+        long charge;
+        try {
+            charge = heapBudget.acquire(parse + cache, parse);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for PDF heap budget");
+        }
+
+        boolean tempFilesOnly = charge < parse + cache;
+        if (tempFilesOnly) {
+            log.debug("PDF heap budget under pressure: caching streams of {} in temp files", pdfFile.getName());
+        }
+        RandomAccessRead source = null;
+        try {
+            source = memoryMapped
+                    ? new RandomAccessReadMemoryMappedFile(pdfFile)
+                    : new RandomAccessReadBufferedFile(pdfFile);
+            MemoryUsageSetting memory = tempFilesOnly
+                    ? MemoryUsageSetting.setupTempFileOnly()
+                    : MemoryUsageSetting.setupMixed(maxMainMemory.toBytes());
+            return new BudgetedDocument(Loader.loadPDF(source, memory.streamCache), charge);
+        } catch (IOException | RuntimeException e) {
+            if (source != null) source.close();
+            heapBudget.release(charge);
+            throw e;
+        }
+    }
+
+    /** An open document and the heap budget it holds until closed. */
+    private final class BudgetedDocument implements Closeable {
+        private final PDDocument document;
+        private final long charge;
+
+        BudgetedDocument(PDDocument document, long charge) {
+            this.document = document;
+            this.charge = charge;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                document.close();
+            } finally {
+                heapBudget.release(charge);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        extractionPool.shutdownNow();
+    }
 }
@@ -0,0 +1,312 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.model.enums.RiskCategory;
+import com.scriptsentries.model.enums.RiskSeverity;
+import com.scriptsentries.model.enums.RiskSubCategory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic, in-process scan of a page for risks that do not need a model:
+ * 10-digit phone numbers, URLs and e-mail addresses, street addresses and license plates.
+ *
+ * Also decides whether a page has any candidate entity at all: a capitalised word in
+ * action or dialogue, sentence-initial ones included unless they are common sentence
+ * openers ("The", "She"), a quotation, or a slugline, whose location may be a real place.
+ * Pages without one (pronoun-led dialogue, cues, transitions) have nothing the model
+ * could flag and may skip it ({@code prefilter.skip-pages-without-candidates}).
+ *
+ * One pass over the characters finds anchor positions (digit runs, a dot before a
+ * letter, "plate", "@"); the anchored patterns run only there, so a 200-page script
+ * scans in a few milliseconds. Stateless and thread-safe.
+ */
+@Component
+public class PreFilterEngine {
+
+    /** One rule hit; {@code key} is the entity reduced to lower-case letters and digits. */
+    public record RuleMatch(RiskCategory category, RiskSubCategory subCategory, RiskSeverity severity,
+                            String entityName, String snippet, String reason, String suggestion, String key) {}
+
+    /** Rule hits for a page, plus whether anything on it still needs the model. */
+    public record PageScan(List<RuleMatch> matches, boolean hasCandidates) {}
+
+    // Patterns are anchored and only tried at plausible start positions found by the
+    // character loop in scan(), never slid across the whole page.
+
+    // (310) 555-0199, 310-555-0199, 310.555.0199, +1 310 555 0199
+    private static final Pattern PHONE = Pattern.compile(
+            "(?:\\+?1[ .-]?)?(?:\\(\\d{3}\\)\\s?|\\d{3}[ .-])\\d{3}[ .-]\\d{4}(?![\\d-])");
+
+    // Suffixes are matched in Title case or in CAPS (sluglines), never lower case, so
+    // "3 cars on the road" is not an address.
+    private static final String[] STREET_SUFFIXES = {
+            "Street", "St", "Avenue", "Ave", "Boulevard", "Blvd", "Road", "Rd", "Drive", "Dr",
+            "Lane", "Ln", "Way", "Court", "Ct", "Place", "Pl", "Terrace", "Parkway", "Pkwy",
+            "Highway", "Hwy", "Circle", "Cir", "Square", "Sq"
+    };
+
+    private static final Pattern ADDRESS = Pattern.compile(
+            "\\d{1,6}(?:\\s+[NSEW]\\.?)?(?:\\s+(?:[A-Z][a-z']+|[A-Z0-9']+)\\.?){1,4}\\s+(?:"
+            + String.join("|", streetSuffixes()) + ")\\b\\.?");
+
+    private static final Pattern LICENSE_PLATE = Pattern.compile(
+            "(?i:licen[cs]e\\s+plate|plate\\s+number|plates?)\\s*(?i:reads?|says|number|no\\.?|#)?\\s*[:\\-]?\\s*[\"']?"
+            + "([A-Z0-9]{1,4}[ -]?[A-Z0-9]{2,5})\\b");
+
+    private static final Pattern EMAIL = Pattern.compile(
+            "\\b[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}\\b");
+
+    private static final Set<String> TLDS = Set.of(
+            "com", "net", "org", "io", "co", "tv", "gov", "edu", "info", "biz", "us", "ly", "me");
+
+    // Reserved for fiction by the North American Numbering Plan: 555-0100 to 555-0199
+    private static final Pattern FICTIONAL_PHONE = Pattern.compile("555\\D?01\\d\\d$");
+
+    private static final Pattern SLUGLINE = Pattern.compile("^\\s*(?:\\d+[A-Z]?\\s+)?(?:INT|EXT|I/E)[./\\s]");
+
+    // Capitalised only because they open a sentence; any other capitalised word may be a name
+    private static final Set<String> SENTENCE_OPENERS = Set.of(
+            "a", "an", "the", "this", "that", "these", "those", "there", "here", "then", "now",
+            "he", "she", "it", "we", "they", "you", "i'm", "i'll", "i've", "i'd", "me", "us", "them",
+            "his", "her", "its", "our", "their", "my", "your", "no", "yes", "not", "oh", "ok", "okay",
+            "hey", "well", "so", "and", "but", "or", "if", "when", "while", "what", "where", "who",
+            "why", "how", "as", "at", "in", "on", "of", "to", "for", "with", "from", "by", "after",
+            "before", "all", "some", "one", "just", "is", "are", "was", "were", "do", "does", "did",
+            "don't", "can", "can't", "could", "will", "would", "should", "let's", "please", "thanks",
+            "sorry", "maybe", "still", "again", "later", "suddenly", "silence", "beat", "nothing");
+
+    public PageScan scan(String pageText) {
+        if (pageText == null || pageText.isBlank()) return new PageScan(List.of(), false);
+
+        List<RuleMatch> matches = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Matcher phone = PHONE.matcher(pageText).useTransparentBounds(true);
+        Matcher address = ADDRESS.matcher(pageText).useTransparentBounds(true);
+        boolean hasAt = false;
+        boolean mentionsPlate = false;
+
+        int len = pageText.length();
+        int skipUntil = 0;
+        for (int i = 0; i < len; i++) {
+            char c = pageText.charAt(i);
+            char prev = i > 0 ? pageText.charAt(i - 1) : ' ';
+            if (i < skipUntil) continue;
+
+            if ((isDigit(c) && !isDigit(prev) && prev != '-') || ((c == '(' || c == '+') && i + 1 < len && isDigit(pageText.charAt(i + 1)))) {
+                int end = Math.min(len, i + 100);
+                if (phone.region(i, end).lookingAt()) {
+                    addPhone(pageText, phone.start(), phone.end(), matches, seen);
+                    skipUntil = phone.end();
+                } else if (isDigit(c) && address.region(i, end).lookingAt()) {
+                    addAddress(pageText, address.start(), address.end(), matches, seen);
+                    skipUntil = address.end();
+                }
+            } else if (c == '@') {
+                hasAt = true;
+            } else if (c == '.' && i + 1 < len && Character.isLetter(pageText.charAt(i + 1))) {
+                skipUntil = findUrlAt(pageText, i, matches, seen);
+            } else if ((c == 'p' || c == 'P') && pageText.regionMatches(true, i, "plate", 0, 5)) {
+                mentionsPlate = true;
+            }
+        }
+
+        if (mentionsPlate) findLicensePlates(pageText, matches, seen);
+        if (hasAt) findEmails(pageText, matches, seen);
+
+        return new PageScan(matches, hasAt || hasCandidateEntity(pageText));
+    }
+
+    private void addPhone(String text, int start, int end, List<RuleMatch> out, Set<String> seen) {
+        String number = text.substring(start, end).trim();
+        if (!seen.add(key(number))) return;
+        boolean fictional = FICTIONAL_PHONE.matcher(number).find();
+        out.add(match(RiskSubCategory.PHONE_NUMBER, fictional ? RiskSeverity.LOW : RiskSeverity.MEDIUM,
+                number, text, start, end,
+                fictional
+                        ? "Number is in the 555-0100 to 555-0199 range reserved for fictional use."
+                        : "A real-looking 10-digit phone number may reach an actual subscriber.",
+                fictional
+                        ? "No change needed; confirm the number is shown exactly as written."
+                        : "Replace with a number in the reserved 555-0100 to 555-0199 range."));
+    }
+
+    private void addAddress(String text, int start, int end, List<RuleMatch> out, Set<String> seen) {
+        String address = text.substring(start, end).trim();
+        if (!seen.add(key(address))) return;
+        out.add(match(RiskSubCategory.ADDRESS, RiskSeverity.MEDIUM, address, text, start, end,
+                "Street address may identify a real residence or business.",
+                "Use a cleared or fictional address."));
+    }
+
+    /**
+     * {@code dot} precedes a letter; if what follows is a known TLD, widens to the whole
+     * host (and scheme/path) and records it. Returns the index scanning may resume from.
+     */
+    private int findUrlAt(String text, int dot, List<RuleMatch> out, Set<String> seen) {
+        int tldEnd = dot + 1;
+        while (tldEnd < text.length() && Character.isLetter(text.charAt(tldEnd))) tldEnd++;
+        if (tldEnd < text.length() && isHostChar(text.charAt(tldEnd)) && text.charAt(tldEnd) != '.') return dot + 1;
+        if (!TLDS.contains(text.substring(dot + 1, tldEnd).toLowerCase(Locale.ROOT))) return dot + 1;
+
+        int start = dot;
+        while (start > 0 && isHostChar(text.charAt(start - 1))) start--;
+        if (start == dot || text.charAt(start) == '.' || (start > 0 && text.charAt(start - 1) == '@')) return dot + 1;
+        if (text.startsWith("://", start - 3)) {
+            while (start > 0 && Character.isLetter(text.charAt(start - 1))) start--;
+        }
+
+        int end = tldEnd;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))
+                && "\"'<>()".indexOf(text.charAt(end)) < 0) end++;
+        String url = stripTrailingPunctuation(text.substring(start, end));
+        if (seen.add(key(url))) {
+            out.add(match(RiskSubCategory.WEBSITE_URL, RiskSeverity.MEDIUM, url, text, start, end,
+                    "Website address may belong to a real owner.",
+                    "Use a production-owned or cleared domain."));
+        }
+        return end;
+    }
+
+    private void findEmails(String text, List<RuleMatch> out, Set<String> seen) {
+        Matcher m = EMAIL.matcher(text);
+        while (m.find()) {
+            String email = m.group();
+            if (!seen.add(key(email))) continue;
+            out.add(match(RiskSubCategory.WEBSITE_URL, RiskSeverity.MEDIUM, email, text, m.start(), m.end(),
+                    "E-mail address may reach a real mailbox.",
+                    "Use an address on a production-owned or cleared domain."));
+        }
+    }
+
+    private void findLicensePlates(String text, List<RuleMatch> out, Set<String> seen) {
+        Matcher m = LICENSE_PLATE.matcher(text);
+        while (m.find()) {
+            String plate = m.group(1);
+            if (!containsDigit(plate) || !seen.add(key(plate))) continue;
+            out.add(match(RiskSubCategory.LICENSE_PLATE, RiskSeverity.MEDIUM, plate, text, m.start(), m.end(),
+                    "License plate number may be registered to a real vehicle.",
+                    "Use a cleared plate number."));
+        }
+    }
+
+    /**
+     * True if some line is a slugline, or is not all caps (cues and transitions are) and
+     * holds a quotation or a capitalised word other than "I" or a sentence opener.
+     */
+    static boolean hasCandidateEntity(String text) {
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = text.length();
+            if (isAllCaps(text, lineStart, lineEnd)
+                    ? SLUGLINE.matcher(text).region(lineStart, lineEnd).lookingAt()
+                    : lineHasCandidate(text, lineStart, lineEnd)) {
+                return true;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return false;
+    }
+
+    private static boolean lineHasCandidate(String text, int start, int end) {
+        boolean sentenceStart = true;
+        boolean inWord = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\u201C') return true;
+            if (Character.isLetter(c)) {
+                if (!inWord && Character.isUpperCase(c) && !isPronounI(text, i, end)
+                        && (!sentenceStart || !isSentenceOpener(text, i, end))) {
+                    return true;
+                }
+                inWord = true;
+                sentenceStart = false;
+            } else {
+                inWord = c == '\'' && inWord;
+                if (c == '.' || c == '!' || c == '?' || c == ':' || c == '(') sentenceStart = true;
+                else if (c == '-' && i + 1 < end && text.charAt(i + 1) == '-') sentenceStart = true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAllCaps(String text, int start, int end) {
+        boolean letters = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isLowerCase(c)) return false;
+            if (Character.isLetter(c)) letters = true;
+        }
+        return letters;
+    }
+
+    private static boolean isSentenceOpener(String text, int start, int end) {
+        int i = start;
+        while (i < end && (Character.isLetter(text.charAt(i)) || text.charAt(i) == '\'')) i++;
+        return SENTENCE_OPENERS.contains(text.substring(start, i).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isPronounI(String text, int i, int end) {
+        if (text.charAt(i) != 'I') return false;
+        return i + 1 >= end || !Character.isLetter(text.charAt(i + 1));
+    }
+
+    private static RuleMatch match(RiskSubCategory subCategory, RiskSeverity severity, String entity,
+                                   String text, int start, int end, String reason, String suggestion) {
+        return new RuleMatch(RiskCategory.NAMES_NUMBERS, subCategory, severity, entity,
+                snippet(text, start, end), reason, suggestion, key(entity));
+    }
+
+    /** The match with up to 60 characters of context on each side, on one line. */
+    static String snippet(String text, int start, int end) {
+        int from = Math.max(0, start - 60);
+        int to = Math.min(text.length(), end + 60);
+        return text.substring(from, to).replaceAll("\\s+", " ").trim();
+    }
+
+    static String key(String entity) {
+        StringBuilder sb = new StringBuilder(entity.length());
+        for (int i = 0; i < entity.length(); i++) {
+            char c = entity.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHostChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '-' || c == '.';
+    }
+
+    private static boolean containsDigit(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isDigit(s.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    private static String stripTrailingPunctuation(String s) {
+        int end = s.length();
+        while (end > 0 && ".,;:!?".indexOf(s.charAt(end - 1)) >= 0) end--;
+        return s.substring(0, end);
+    }
+
+    private static List<String> streetSuffixes() {
+        List<String> out = new ArrayList<>();
+        for (String suffix : STREET_SUFFIXES) {
+            out.add(suffix);
+            out.add(suffix.toUpperCase(Locale.ROOT));
+        }
+        return out;
+    }
+}
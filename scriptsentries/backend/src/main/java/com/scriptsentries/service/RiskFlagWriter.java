@@ -0,0 +1,197 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.model.RiskFlag;
+import com.scriptsentries.model.Script;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind stage between page analysis and Postgres.
+ *
+ * Finished pages are queued and a single writer thread commits them in small batches —
+ * up to {@code batch-pages} pages or {@code batch-flags} flags, or whatever arrived
+ * within {@code max-delay} — instead of one transaction per page or one burst at the end
+ * of the scan. The queue is bounded, so when the database falls behind, analysis threads
+ * block on {@link #write} rather than piling results up in memory.
+ *
+ * A batch that fails is retried page by page; a page that still cannot be written is
+ * reported to its callback as failed and stays resumable.
+ *
+ * Callbacks run on virtual threads of their own, never on the writer thread: they push
+ * SSE events, and a stalled client must not hold up persistence for every scan.
+ * {@link #flushed} still waits for the callbacks of the pages queued before it.
+ */
+@Component
+@Slf4j
+public class RiskFlagWriter {
+
+    /** Told once a page's flags are committed (they then carry ids), or that the write failed. */
+    interface Callback {
+        void onSaved(List<RiskFlag> flags);
+
+        void onFailed(RuntimeException e);
+    }
+
+    /** A queued page, or — with {@code barrier} set — a marker for {@link #flushed}. */
+    private record Entry(ScanCheckpointService.CompletedPage page, Callback callback,
+                         CompletableFuture<Void> barrier) {}
+
+    private final ScanCheckpointService scanCheckpointService;
+    private final BlockingQueue<Entry> queue;
+    private final int batchPages;
+    private final int batchFlags;
+    private final Duration maxDelay;
+    private final Thread writer;
+    private final ExecutorService callbacks = Executors.newVirtualThreadPerTaskExecutor();
+    // Callbacks still running; touched by the writer thread only
+    private final List<CompletableFuture<Void>> pendingCallbacks = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public RiskFlagWriter(ScanCheckpointService scanCheckpointService,
+                          @Value("${scriptsentries.scan.write-behind.queue-capacity:256}") int queueCapacity,
+                          @Value("${scriptsentries.scan.write-behind.batch-pages:16}") int batchPages,
+                          @Value("${scriptsentries.scan.write-behind.batch-flags:200}") int batchFlags,
+                          @Value("${scriptsentries.scan.write-behind.max-delay:250ms}") Duration maxDelay) {
+        this.scanCheckpointService = scanCheckpointService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchPages = batchPages;
+        this.batchFlags = batchFlags;
+        this.maxDelay = maxDelay;
+        this.writer = Thread.ofPlatform().name("risk-flag-writer").daemon().start(this::run);
+    }
+
+    /**
+     * Queues a finished page; blocks while {@code queue-capacity} pages are already waiting.
+     * {@code degraded} pages were analyzed without the model and stay re-runnable.
+     */
+    void write(Script script, int pageNumber, List<RiskFlag> flags, boolean degraded, Callback callback) {
+        put(new Entry(new ScanCheckpointService.CompletedPage(script, pageNumber, flags, degraded), callback, null));
+    }
+
+    /** Completes once every page queued before this call has been written or reported failed. */
+    CompletableFuture<Void> flushed() {
+        CompletableFuture<Void> barrier = new CompletableFuture<>();
+        put(new Entry(null, null, barrier));
+        return barrier;
+    }
+
+    private void put(Entry entry) {
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted queueing page results", e);
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                fill(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // only interrupted on shutdown; the loop drains what is left
+            } catch (RuntimeException e) {
+                log.error("Write-behind batch lost: {}", e.getMessage(), e);
+                batch.stream().filter(b -> b.barrier() != null).forEach(this::release);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Adds entries until the batch is full, a barrier arrives, or {@code max-delay} passes. */
+    private void fill(List<Entry> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelay.toNanos();
+        int flags = flagCount(batch.get(0));
+        int pages = batch.get(0).barrier() == null ? 1 : 0;
+        while (pages < batchPages && flags < batchFlags && batch.get(batch.size() - 1).barrier() == null) {
+            Entry next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) break;
+            batch.add(next);
+            if (next.barrier() == null) pages++;
+            flags += flagCount(next);
+        }
+    }
+
+    private void flush(List<Entry> batch) {
+        pendingCallbacks.removeIf(CompletableFuture::isDone);
+        List<Entry> pages = batch.stream().filter(e -> e.barrier() == null).toList();
+        if (!pages.isEmpty()) {
+            long start = System.nanoTime();
+            try {
+                scanCheckpointService.completePages(pages.stream().map(Entry::page).toList());
+                pages.forEach(this::notifySaved);
+                log.debug("Write-behind: {} pages, {} flags in {} ms", pages.size(),
+                        pages.stream().mapToInt(RiskFlagWriter::flagCount).sum(), (System.nanoTime() - start) / 1_000_000);
+            } catch (RuntimeException e) {
+                log.warn("Write-behind batch of {} pages failed, writing them one by one: {}", pages.size(), e.getMessage());
+                pages.forEach(this::flushOne);
+            }
+        }
+        batch.stream().filter(e -> e.barrier() != null).forEach(this::release);
+    }
+
+    /** Completes a barrier once the callbacks of everything queued before it have run. */
+    private void release(Entry barrier) {
+        CompletableFuture.allOf(pendingCallbacks.toArray(CompletableFuture[]::new))
+                .whenComplete((ignored, e) -> barrier.barrier().complete(null));
+    }
+
+    private void flushOne(Entry entry) {
+        try {
+            // Ids assigned by the failed batch were rolled back with it
+            entry.page().flags().forEach(f -> f.setId(null));
+            scanCheckpointService.completePages(List.of(entry.page()));
+            notifySaved(entry);
+        } catch (RuntimeException e) {
+            log.error("Could not save results of page {} (script {}): {}", entry.page().pageNumber(),
+                    entry.page().script().getId(), e.getMessage());
+            notify(entry, () -> entry.callback().onFailed(e));
+        }
+    }
+
+    private void notifySaved(Entry entry) {
+        notify(entry, () -> entry.callback().onSaved(entry.page().flags()));
+    }
+
+    private void notify(Entry entry, Runnable callback) {
+        pendingCallbacks.add(CompletableFuture.runAsync(() -> {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                log.warn("Write-behind callback for page {} threw: {}", entry.page().pageNumber(), e.getMessage());
+            }
+        }, callbacks));
+    }
+
+    private static int flagCount(Entry entry) {
+        return entry.page() != null ? entry.page().flags().size() : 0;
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(Duration.ofSeconds(10));
+        if (writer.isAlive()) {
+            log.warn("Write-behind stopped with {} entries still queued", queue.size());
+        }
+        callbacks.shutdown();
+    }
+}
@@ -0,0 +1,312 @@
+package com.scriptsentries.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.scriptsentries.dto.AiPageAnalysisResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Incremental, tolerant parser for the {@code {"risks": [ {...}, ... ]}} response, fed
+ * chunk by chunk as the model streams (or in one go via {@link #parse}). Each item is
+ * handed to the consumer the moment its object closes; only the text of the item being
+ * read is buffered.
+ *
+ * Model output is often not quite JSON, so the parser salvages what it can instead of
+ * rejecting the whole answer:
+ *  - anything before the opening brace (a Markdown fence, a preamble) and keys other
+ *    than {@code risks} are ignored, as are {@code //} and {@code /* *}{@code /} comments;
+ *  - a bare top-level array of items, without the wrapping object, is read as the
+ *    risks array (a {@code [} in a preamble is not, unless an object or {@code ]} follows);
+ *  - trailing commas, comments and raw control characters inside an item are accepted;
+ *    an item that still does not parse is dropped and counted;
+ *  - a response cut off inside an item (max-tokens) has that item closed and kept when
+ *    it still names a category and an entity; a value cut mid-string is dropped.
+ *
+ * {@link #finish} reports how clean the response was.
+ */
+final class RiskItemStreamParser {
+
+    /** How much of the response had to be salvaged. */
+    enum Outcome {
+        /** Well-formed. */
+        CLEAN,
+        /** Truncated after the last complete item, or malformed items dropped. */
+        SALVAGED,
+        /** A truncated item was closed and kept. */
+        REPAIRED,
+        /** Nothing could be recovered; the request should be retried. */
+        UNUSABLE
+    }
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+            .enable(JsonReadFeature.ALLOW_JAVA_COMMENTS)
+            .enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .enable(JsonReadFeature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .build();
+
+    private static final int CODE = 0;
+    private static final int SLASH = 1;          // saw '/' outside a string
+    private static final int LINE_COMMENT = 2;
+    private static final int BLOCK_COMMENT = 3;
+    private static final int BLOCK_STAR = 4;     // saw '*' inside a block comment
+
+    private final Consumer<AiPageAnalysisResult.AiRiskItem> consumer;
+    private final StringBuilder item = new StringBuilder();
+    private final StringBuilder key = new StringBuilder();
+
+    private int mode = CODE;
+    private int depth;              // open objects and arrays
+    private int arrayDepth = -1;    // depth inside the risks array, -1 until it opens
+    private boolean inString;
+    private boolean escaped;
+    private boolean capturing;      // inside one item object
+    private boolean readingKey;     // inside a string at depth 1, i.e. a top-level key
+    private String lastKey;
+    private boolean rootClosed;     // a complete top-level object was seen
+    private boolean bareArray;      // a top-level '[' just opened; the risks array if an item follows
+    private boolean closed;         // risks array fully read
+    private int items;
+    private int dropped;
+
+    RiskItemStreamParser(Consumer<AiPageAnalysisResult.AiRiskItem> consumer) {
+        this.consumer = consumer;
+    }
+
+    /** Parses a complete response. */
+    static Result parse(String response) {
+        List<AiPageAnalysisResult.AiRiskItem> items = new ArrayList<>();
+        RiskItemStreamParser parser = new RiskItemStreamParser(items::add);
+        if (response != null) parser.feed(response);
+        Outcome outcome = parser.finish();
+        return new Result(items, outcome, parser.truncated());
+    }
+
+    record Result(List<AiPageAnalysisResult.AiRiskItem> items, Outcome outcome, boolean truncated) {}
+
+    void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            accept(chunk.charAt(i));
+        }
+    }
+
+    /** Call once the response has ended; a truncated trailing item is repaired here. */
+    Outcome finish() {
+        boolean repaired = false;
+        if (capturing) {
+            AiPageAnalysisResult.AiRiskItem tail = repair(item.toString(), inString);
+            capturing = false;
+            item.setLength(0);
+            if (tail != null) {
+                items++;
+                consumer.accept(tail);
+                repaired = true;
+            } else {
+                dropped++;
+            }
+        }
+
+        if (arrayDepth < 0) return rootClosed ? Outcome.CLEAN : Outcome.UNUSABLE;
+        if (items == 0 && (!closed || dropped > 0)) return Outcome.UNUSABLE;
+        if (repaired) return Outcome.REPAIRED;
+        return closed && dropped == 0 ? Outcome.CLEAN : Outcome.SALVAGED;
+    }
+
+    int items() {
+        return items;
+    }
+
+    /** The response ended inside the risks array, so risks after the last item may be missing. */
+    boolean truncated() {
+        return arrayDepth >= 0 && !closed;
+    }
+
+    private void accept(char c) {
+        if (!inString && skipComment(c)) return;
+        if (capturing) item.append(c);
+
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+                if (readingKey) {
+                    readingKey = false;
+                    lastKey = key.toString();
+                }
+            } else if (readingKey) {
+                key.append(c);
+            }
+            return;
+        }
+
+        if (bareArray && !Character.isWhitespace(c)) {
+            bareArray = false;
+            if (c == '{' || c == ']') arrayDepth = 1;
+        }
+
+        switch (c) {
+            case '"' -> {
+                inString = true;
+                if (depth == 1 && arrayDepth < 0) {
+                    readingKey = true;
+                    key.setLength(0);
+                }
+            }
+            case '{' -> {
+                depth++;
+                if (depth == arrayDepth + 1 && arrayDepth >= 0 && !closed && !capturing) {
+                    capturing = true;
+                    item.setLength(0);
+                    item.append(c);
+                }
+            }
+            case '[' -> {
+                depth++;
+                if (depth == 2 && arrayDepth < 0 && "risks".equals(lastKey)) arrayDepth = depth;
+                else if (depth == 1 && arrayDepth < 0 && !rootClosed) bareArray = true;
+            }
+            case '}' -> {
+                if (capturing && depth == arrayDepth + 1) {
+                    capturing = false;
+                    emit();
+                }
+                if (depth == 1) rootClosed = true;
+                depth = Math.max(depth - 1, 0);
+            }
+            case ']' -> {
+                if (depth == arrayDepth && !closed) closed = true;
+                depth = Math.max(depth - 1, 0);
+            }
+            default -> { }
+        }
+    }
+
+    /** Comment state machine; true when {@code c} belongs to a comment (or may start one). */
+    private boolean skipComment(char c) {
+        switch (mode) {
+            case SLASH -> {
+                if (c == '/') { mode = LINE_COMMENT; return true; }
+                if (c == '*') { mode = BLOCK_COMMENT; return true; }
+                mode = CODE;
+                if (capturing) item.append('/');
+                return false;
+            }
+            case LINE_COMMENT -> {
+                if (c == '\n') mode = CODE;
+                return true;
+            }
+            case BLOCK_COMMENT -> {
+                if (c == '*') mode = BLOCK_STAR;
+                return true;
+            }
+            case BLOCK_STAR -> {
+                mode = c == '/' ? CODE : c == '*' ? BLOCK_STAR : BLOCK_COMMENT;
+                return true;
+            }
+            default -> {
+                if (c == '/') { mode = SLASH; return true; }
+                return false;
+            }
+        }
+    }
+
+    private void emit() {
+        AiPageAnalysisResult.AiRiskItem parsed = read(item.toString());
+        item.setLength(0);
+        if (parsed == null) {
+            dropped++;
+            return;
+        }
+        items++;
+        consumer.accept(parsed);
+    }
+
+    private static AiPageAnalysisResult.AiRiskItem read(String json) {
+        try {
+            return MAPPER.readValue(json, AiPageAnalysisResult.AiRiskItem.class);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Closes an item cut off mid-way. A value cut inside its string is never kept — a
+     * half entity name is worse than none — so the last field is dropped; otherwise the
+     * item is first tried as it stands. Kept only if it still says what and who the risk
+     * is about.
+     */
+    static AiPageAnalysisResult.AiRiskItem repair(String partial, boolean inString) {
+        AiPageAnalysisResult.AiRiskItem repaired = inString ? null : read(close(partial));
+        if (!usable(repaired)) {
+            int cut = lastFieldSeparator(partial);
+            repaired = cut > 0 ? read(close(partial.substring(0, cut))) : null;
+        }
+        return usable(repaired) ? repaired : null;
+    }
+
+    private static boolean usable(AiPageAnalysisResult.AiRiskItem item) {
+        return item != null && item.getCategory() != null && !item.getCategory().isBlank()
+                && item.getEntityName() != null && !item.getEntityName().isBlank();
+    }
+
+    /** Appends the closers for every container still open in {@code text}. */
+    private static String close(String text) {
+        StringBuilder open = new StringBuilder();
+        boolean str = false;
+        boolean esc = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (str) {
+                if (esc) esc = false;
+                else if (c == '\\') esc = true;
+                else if (c == '"') str = false;
+            } else if (c == '"') {
+                str = true;
+            } else if (c == '{' || c == '[') {
+                open.append(c);
+            } else if ((c == '}' || c == ']') && !open.isEmpty()) {
+                open.setLength(open.length() - 1);
+            }
+        }
+        StringBuilder closed = new StringBuilder(text.length() + open.length()).append(text);
+        for (int i = open.length() - 1; i >= 0; i--) {
+            closed.append(open.charAt(i) == '{' ? '}' : ']');
+        }
+        return closed.toString();
+    }
+
+    /** Index of the last comma directly inside the item object, or -1. */
+    private static int lastFieldSeparator(String text) {
+        int level = 0;
+        int last = -1;
+        boolean str = false;
+        boolean esc = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (str) {
+                if (esc) esc = false;
+                else if (c == '\\') esc = true;
+                else if (c == '"') str = false;
+            } else if (c == '"') {
+                str = true;
+            } else if (c == '{' || c == '[') {
+                level++;
+            } else if (c == '}' || c == ']') {
+                level--;
+            } else if (c == ',' && level == 1) {
+                last = i;
+            }
+        }
+        return last;
+    }
+}
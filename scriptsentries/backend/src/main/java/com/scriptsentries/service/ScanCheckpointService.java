@@ -0,0 +1,267 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.model.RiskFlag;
+import com.scriptsentries.model.ScanPage;
+import com.scriptsentries.model.Script;
+import com.scriptsentries.repository.RiskFlagRepository;
+import com.scriptsentries.repository.ScanPageRepository;
+import com.scriptsentries.repository.ScriptRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Per-page scan state, so a scan that crashed or lost pages to errors can be resumed
+ * without re-uploading the PDF or re-analyzing pages that already finished.
+ *
+ * Page text is held only as encrypted scratch ({@link ScratchCipher}) on pages that are
+ * not done yet, or done in degraded mode (local detectors only) and waiting to be re-run
+ * with the model. It is dropped page by page as pages finish, for the rest of the script
+ * when the scan completes, and by a sweeper once {@code scriptsentries.scan.scratch-ttl}
+ * passes.
+ *
+ * With distributed scanning the PENDING pages double as the work queue: {@link #claim}
+ * leases a few pages of one script to a node with {@code FOR UPDATE SKIP LOCKED}, so
+ * nodes never block on or double-claim each other's pages.
+ */
+@Service
+@Slf4j
+public class ScanCheckpointService {
+
+    private final ScanPageRepository scanPageRepository;
+    private final RiskFlagRepository riskFlagRepository;
+    private final ScriptRepository scriptRepository;
+    private final ScratchCipher scratchCipher;
+    private final Duration scratchTtl;
+
+    public ScanCheckpointService(ScanPageRepository scanPageRepository,
+                                 RiskFlagRepository riskFlagRepository,
+                                 ScriptRepository scriptRepository,
+                                 ScratchCipher scratchCipher,
+                                 @Value("${scriptsentries.scan.scratch-ttl:24h}") Duration scratchTtl) {
+        this.scanPageRepository = scanPageRepository;
+        this.riskFlagRepository = riskFlagRepository;
+        this.scriptRepository = scriptRepository;
+        this.scratchCipher = scratchCipher;
+        this.scratchTtl = scratchTtl;
+    }
+
+    /** A finished page and the flags to persist for it; {@code degraded} if the model never saw it. */
+    public record CompletedPage(Script script, int pageNumber, List<RiskFlag> flags, boolean degraded) {}
+
+    /** Records every page; pages for which {@code alreadyDone} holds start DONE, without scratch. */
+    @Transactional
+    public void start(Script script, List<String> pages, IntPredicate alreadyDone) {
+        append(script, pages, 1, pages.size(), alreadyDone);
+    }
+
+    /** Records pages {@code from}..{@code to} (1-based, inclusive) of a scan still being extracted. */
+    @Transactional
+    public void append(Script script, List<String> pages, int from, int to, IntPredicate alreadyDone) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(scratchTtl);
+        List<ScanPage> rows = new ArrayList<>(to - from + 1);
+        for (int pageNumber = from; pageNumber <= to; pageNumber++) {
+            boolean done = alreadyDone.test(pageNumber);
+            String text = pages.get(pageNumber - 1) != null ? pages.get(pageNumber - 1) : "";
+            rows.add(ScanPage.builder()
+                    .script(script)
+                    .pageNumber(pageNumber)
+                    .state(done ? ScanPage.State.DONE : ScanPage.State.PENDING)
+                    .scratch(done ? null : scratchCipher.encrypt(text))
+                    .scratchExpiresAt(done ? null : expiresAt)
+                    .build());
+        }
+        scanPageRepository.saveAll(rows);
+    }
+
+    /**
+     * Saves a batch of finished pages in one transaction: their flags, their DONE state
+     * and each script's running {@code riskCount}, so a crash can never leave a page both
+     * persisted and pending. Flags are assigned ids in place.
+     */
+    @Transactional
+    public void completePages(List<CompletedPage> pages) {
+        List<RiskFlag> flags = pages.stream().flatMap(p -> p.flags().stream()).toList();
+        if (!flags.isEmpty()) riskFlagRepository.saveAll(flags);
+
+        Map<Long, List<CompletedPage>> byScript = pages.stream()
+                .collect(Collectors.groupingBy(p -> p.script().getId(), LinkedHashMap::new, Collectors.toList()));
+        byScript.forEach((scriptId, scriptPages) -> {
+            List<Integer> done = scriptPages.stream().filter(p -> !p.degraded()).map(CompletedPage::pageNumber).toList();
+            List<Integer> degraded = scriptPages.stream().filter(CompletedPage::degraded).map(CompletedPage::pageNumber).toList();
+            if (!done.isEmpty()) scanPageRepository.markDone(scriptId, done);
+            if (!degraded.isEmpty()) scanPageRepository.markDegraded(scriptId, degraded);
+            int risks = scriptPages.stream().mapToInt(p -> p.flags().size()).sum();
+            if (risks > 0) scriptRepository.incrementRiskCount(scriptId, risks);
+        });
+    }
+
+    @Transactional
+    public void failPage(Script script, int pageNumber, String error) {
+        scanPageRepository.findByScriptAndPageNumber(script, pageNumber).ifPresent(page -> {
+            page.setState(ScanPage.State.FAILED);
+            page.setAttempts(page.getAttempts() + 1);
+            page.setLastError(error != null && error.length() > 500 ? error.substring(0, 500) : error);
+        });
+    }
+
+    /**
+     * Page texts to resume with: decrypted scratch for every page not yet DONE and for
+     * degraded pages whose scratch is still there, null for the other pages. Index 0 = page 1.
+     *
+     * @throws RuntimeException if the script has no checkpoints or the scratch of an
+     *                          unfinished page is gone (expired, or written under another key)
+     */
+    @Transactional(readOnly = true)
+    public List<String> pagesToResume(Script script) {
+        List<ScanPage> rows = scanPageRepository.findByScriptOrderByPageNumberAsc(script);
+        if (rows.isEmpty()) {
+            throw new RuntimeException("No scan checkpoints for script: " + script.getId());
+        }
+        if (rows.size() < script.getTotalPages()) {
+            throw new RuntimeException("Scan of script " + script.getId()
+                    + " was interrupted during extraction; upload the PDF again");
+        }
+
+        String[] texts = new String[rows.get(rows.size() - 1).getPageNumber()];
+        for (ScanPage page : rows) {
+            boolean degraded = Boolean.TRUE.equals(page.getDegraded());
+            if (page.getState() == ScanPage.State.DONE && !(degraded && page.getScratch() != null)) continue;
+            if (page.getScratch() == null) {
+                throw new RuntimeException("Scan scratch expired for script " + script.getId()
+                        + "; upload the PDF again");
+            }
+            try {
+                texts[page.getPageNumber() - 1] = scratchCipher.decrypt(page.getScratch());
+            } catch (IllegalStateException e) {
+                throw new RuntimeException("Scan scratch unreadable for script " + script.getId()
+                        + "; upload the PDF again");
+            }
+        }
+        return Arrays.asList(texts);
+    }
+
+    /** Pages leased to one node: their ids and decrypted texts by page number. */
+    public record Claim(Long scriptId, List<Long> pageIds, Map<Integer, String> pages) {}
+
+    /**
+     * Leases up to {@code limit} pending pages of one script to {@code node} until
+     * {@code lease} from now. Pages whose scratch cannot be decrypted (written under
+     * another key) are failed instead of handed out.
+     */
+    @Transactional
+    public Optional<Claim> claim(String node, int limit, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        Optional<Long> scriptId = scanPageRepository.findClaimableScriptId(now);
+        if (scriptId.isEmpty()) return Optional.empty();
+
+        List<ScanPage> rows = scanPageRepository.lockClaimable(scriptId.get(), now, limit);
+        List<Long> ids = new ArrayList<>(rows.size());
+        Map<Integer, String> pages = new LinkedHashMap<>();
+        for (ScanPage page : rows) {
+            try {
+                pages.put(page.getPageNumber(), scratchCipher.decrypt(page.getScratch()));
+            } catch (IllegalStateException e) {
+                page.setState(ScanPage.State.FAILED);
+                page.setLastError("Scan scratch unreadable on node " + node + "; check scriptsentries.scan.scratch-key");
+                continue;
+            }
+            page.setLeasedBy(node);
+            page.setLeaseExpiresAt(now.plus(lease));
+            ids.add(page.getId());
+        }
+        return ids.isEmpty() ? Optional.empty() : Optional.of(new Claim(scriptId.get(), ids, pages));
+    }
+
+    public void renewLeases(Collection<Long> pageIds, String node, Duration lease) {
+        if (!pageIds.isEmpty()) scanPageRepository.renewLease(pageIds, node, LocalDateTime.now().plus(lease));
+    }
+
+    /** Gives back what {@code node} still holds, so other nodes need not wait for the lease to run out. */
+    public void releaseLeases(Collection<Long> pageIds, String node) {
+        if (!pageIds.isEmpty()) scanPageRepository.releaseLease(pageIds, node);
+    }
+
+    /** Queues the failed and degraded pages of {@code script} again for any node's workers. */
+    public int requeue(Script script) {
+        return scanPageRepository.requeue(script);
+    }
+
+    public List<ScanPageRepository.PageState> pageStates(Script script) {
+        return scanPageRepository.findByScriptIdOrderByPageNumberAsc(script.getId());
+    }
+
+    @Transactional(readOnly = true)
+    public Map<Integer, List<RiskFlag>> flagsByPage(Script script, List<Integer> pageNumbers) {
+        if (pageNumbers.isEmpty()) return Map.of();
+        return riskFlagRepository.findByScriptIdAndPageNumberIn(script.getId(), pageNumbers).stream()
+                .collect(Collectors.groupingBy(RiskFlag::getPageNumber));
+    }
+
+    public long unfinishedPages(Script script) {
+        return scanPageRepository.countByScriptAndStateNot(script, ScanPage.State.DONE);
+    }
+
+    public long degradedPages(Script script) {
+        return scanPageRepository.countByScriptAndDegradedTrue(script);
+    }
+
+    public List<Long> scriptsWithRerunnablePages() {
+        return scanPageRepository.findScriptIdsWithRerunnablePages();
+    }
+
+    /** {@link #flagKey}s of the flags already saved on each of {@code pageNumbers}. */
+    @Transactional(readOnly = true)
+    public Map<Integer, Set<String>> existingFlagKeys(Script script, List<Integer> pageNumbers) {
+        if (pageNumbers.isEmpty()) return Map.of();
+        return riskFlagRepository.findByScriptIdAndPageNumberIn(script.getId(), pageNumbers).stream()
+                .collect(Collectors.groupingBy(RiskFlag::getPageNumber,
+                        Collectors.mapping(ScanCheckpointService::flagKey, Collectors.toSet())));
+    }
+
+    /** Identifies a finding on its page regardless of wording, for re-runs that must not duplicate it. */
+    static String flagKey(RiskFlag flag) {
+        String entity = flag.getEntityName() != null ? PreFilterEngine.key(flag.getEntityName()) : "";
+        return flag.getCategory() + "|" + flag.getSubCategory() + "|" + entity;
+    }
+
+    /** ZERO-RETENTION: called when a scan completes; degraded pages keep theirs until re-run or expiry. */
+    public void wipe(Script script) {
+        int wiped = scanPageRepository.wipeScratch(script);
+        log.info("ZERO-RETENTION: scan scratch wiped for script {} ({} pages)", script.getId(), wiped);
+    }
+
+    /**
+     * Without a configured scratch key, the scratch of earlier runs was written under a key
+     * that died with them. Wipes it, so resume reports "upload again" instead of a key error.
+     *
+     * @return whether scratch survives restarts, i.e. interrupted scans can be resumed
+     */
+    public boolean dropUnreadableScratch() {
+        if (scratchCipher.isDurable()) return true;
+        int wiped = scanPageRepository.wipeAllScratch();
+        if (wiped > 0) log.warn("ZERO-RETENTION: {} scan scratch pages from before the restart wiped (no scratch key)", wiped);
+        return false;
+    }
+
+    @Scheduled(fixedDelayString = "${scriptsentries.scan.scratch-sweep-interval:PT10M}")
+    public void wipeExpired() {
+        int wiped = scanPageRepository.wipeExpiredScratch(LocalDateTime.now());
+        if (wiped > 0) log.info("ZERO-RETENTION: {} expired scan scratch pages wiped", wiped);
+    }
+}
@@ -0,0 +1,145 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.dto.RiskFlagResponse;
+import com.scriptsentries.dto.ScanJobResponse;
+import com.scriptsentries.dto.ScanPageEvent;
+import com.scriptsentries.model.RiskFlag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-Sent Events for running scans.
+ *
+ * Each job has a channel that keeps the page events sent so far, so a client that
+ * subscribes after the 202 (or reconnects) first receives every finished page and then
+ * the live ones. Events:
+ *  - {@code progress} — {@link ScanJobResponse}, on subscribe and when the page count is known;
+ *  - {@code risk}     — {@link RiskFlagResponse} without id, as the model streams it (streaming
+ *                       mode only, not replayed; the page's {@code page} event supersedes it);
+ *  - {@code page}     — {@link ScanPageEvent}, one per finished page, flags with ids;
+ *  - {@code complete} / {@code failed} — final {@link ScanJobResponse}, then the stream closes.
+ */
+@Component
+@Slf4j
+public class ScanEventBroadcaster {
+
+    private final Duration emitterTimeout;
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    public ScanEventBroadcaster(@Value("${scriptsentries.scan.sse-timeout:30m}") Duration emitterTimeout) {
+        this.emitterTimeout = emitterTimeout;
+    }
+
+    public SseEmitter subscribe(ScanJob job) {
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        Channel channel = channel(job);
+        synchronized (channel) {
+            send(channel, emitter, "progress", ScanJobResponse.from(job));
+            for (ScanPageEvent page : channel.pages) {
+                send(channel, emitter, "page", page);
+            }
+            if (job.isFinished()) {
+                sendFinal(channel, emitter, job);
+                return emitter;
+            }
+            channel.emitters.add(emitter);
+        }
+        emitter.onCompletion(() -> remove(channel, emitter));
+        emitter.onTimeout(() -> remove(channel, emitter));
+        emitter.onError(e -> remove(channel, emitter));
+        return emitter;
+    }
+
+    void progress(ScanJob job) {
+        Channel channel = channel(job);
+        synchronized (channel) {
+            broadcast(channel, "progress", ScanJobResponse.from(job));
+        }
+    }
+
+    void riskFound(ScanJob job, RiskFlag flag) {
+        Channel channel = channel(job);
+        synchronized (channel) {
+            broadcast(channel, "risk", RiskFlagResponse.from(flag));
+        }
+    }
+
+    void pageCompleted(ScanJob job, int pageNumber, List<RiskFlag> flags) {
+        ScanPageEvent event = ScanPageEvent.builder()
+                .pageNumber(pageNumber)
+                .pagesDone(job.getPagesDone().get())
+                .pagesTotal(job.getPagesTotal())
+                .risks(flags.stream().map(RiskFlagResponse::from).toList())
+                .build();
+        Channel channel = channel(job);
+        synchronized (channel) {
+            channel.pages.add(event);
+            broadcast(channel, "page", event);
+        }
+    }
+
+    void finished(ScanJob job) {
+        Channel channel = channel(job);
+        synchronized (channel) {
+            for (SseEmitter emitter : List.copyOf(channel.emitters)) {
+                sendFinal(channel, emitter, job);
+            }
+            channel.emitters.clear();
+        }
+    }
+
+    /** Drops the replay history of a job that is no longer tracked. */
+    void evict(String jobId) {
+        channels.remove(jobId);
+    }
+
+    private Channel channel(ScanJob job) {
+        return channels.computeIfAbsent(job.getJobId(), id -> new Channel());
+    }
+
+    private void broadcast(Channel channel, String name, Object data) {
+        for (SseEmitter emitter : List.copyOf(channel.emitters)) {
+            send(channel, emitter, name, data);
+        }
+    }
+
+    private void sendFinal(Channel channel, SseEmitter emitter, ScanJob job) {
+        String name = job.getState() == ScanJob.State.COMPLETE ? "complete" : "failed";
+        if (send(channel, emitter, name, ScanJobResponse.from(job))) {
+            emitter.complete();
+        }
+    }
+
+    private boolean send(Channel channel, SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; the job carries on regardless
+            log.debug("Dropping SSE subscriber: {}", e.getMessage());
+            channel.emitters.remove(emitter);
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void remove(Channel channel, SseEmitter emitter) {
+        synchronized (channel) {
+            channel.emitters.remove(emitter);
+        }
+    }
+
+    private static final class Channel {
+        private final List<ScanPageEvent> pages = new ArrayList<>();
+        private final List<SseEmitter> emitters = new ArrayList<>();
+    }
+}
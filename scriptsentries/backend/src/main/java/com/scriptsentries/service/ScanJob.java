@@ -0,0 +1,95 @@
+package com.scriptsentries.service;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory progress record for one asynchronous scan.
+ * The durable outcome lives on the {@link com.scriptsentries.model.Script} row;
+ * this object only exists so clients can poll pages done / pages total.
+ */
+@Getter
+public class ScanJob {
+
+    public enum State { QUEUED, RUNNING, COMPLETE, FAILED }
+
+    private final String jobId = UUID.randomUUID().toString();
+    private final Long scriptId;
+    private final String filename;
+    private final String tenant;
+    private final boolean urgent;
+    private final Instant submittedAt = Instant.now();
+
+    private final AtomicInteger pagesDone = new AtomicInteger();
+    private final AtomicInteger riskCount = new AtomicInteger();
+    private final AtomicInteger pagesFailed = new AtomicInteger();
+    private final AtomicInteger pagesDegraded = new AtomicInteger();
+
+    private volatile State state = State.QUEUED;
+    private volatile int pagesTotal;
+    private volatile String error;
+    private volatile Instant finishedAt;
+
+    public ScanJob(Long scriptId, String filename) {
+        this(scriptId, filename, AnalysisExecutor.Tenancy.DEFAULT);
+    }
+
+    public ScanJob(Long scriptId, String filename, AnalysisExecutor.Tenancy tenancy) {
+        this.scriptId = scriptId;
+        this.filename = filename;
+        this.tenant = tenancy.tenant();
+        this.urgent = tenancy.urgent();
+    }
+
+    AnalysisExecutor.Tenancy tenancy() {
+        return new AnalysisExecutor.Tenancy(tenant, urgent);
+    }
+
+    void markRunning()              { state = State.RUNNING; }
+    void setPagesTotal(int total)   { pagesTotal = total; }
+
+    void pageCompleted(int risksOnPage) {
+        pagesDone.incrementAndGet();
+        riskCount.addAndGet(risksOnPage);
+    }
+
+    void pageFailed() {
+        pagesFailed.incrementAndGet();
+    }
+
+    void pageDegraded() {
+        pagesDegraded.incrementAndGet();
+    }
+
+    /** Starts a resumed job from what earlier runs already finished. */
+    void resumeFrom(int donePages, int risks) {
+        pagesDone.set(donePages);
+        riskCount.set(risks);
+    }
+
+    /** Counts read back from the database when other nodes analyze the pages. */
+    void sync(int donePages, int failedPages, int degradedPages, int risks) {
+        pagesDone.set(donePages);
+        pagesFailed.set(failedPages);
+        pagesDegraded.set(degradedPages);
+        riskCount.set(risks);
+    }
+
+    void complete() {
+        state = State.COMPLETE;
+        finishedAt = Instant.now();
+    }
+
+    void fail(String message) {
+        error = message;
+        state = State.FAILED;
+        finishedAt = Instant.now();
+    }
+
+    public boolean isFinished() {
+        return state == State.COMPLETE || state == State.FAILED;
+    }
+}
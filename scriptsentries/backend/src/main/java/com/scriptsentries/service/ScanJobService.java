@@ -0,0 +1,724 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.config.ScanConfig;
+import com.scriptsentries.model.RiskFlag;
+import com.scriptsentries.model.ScanRun;
+import com.scriptsentries.model.Script;
+import com.scriptsentries.repository.ScanPageRepository;
+import com.scriptsentries.repository.ScanRunRepository;
+import com.scriptsentries.repository.ScriptRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs PDF extraction + AI analysis off the request thread.
+ *
+ * The controller persists the Script in PROCESSING, writes the upload to a temp file
+ * and hands both to {@link #submit}. From that point this service owns the temp file
+ * and deletes it as soon as extraction ends, whatever the outcome (zero-retention).
+ *
+ * Extraction streams: pages are analyzed window by window while later pages are still
+ * being stripped, so the first model calls go out after the first window, not after the
+ * last page.
+ *
+ * Flags are handed page by page to the write-behind {@link RiskFlagWriter}, which commits
+ * them in small batches and keeps {@code Script.riskCount} current; once committed they
+ * are pushed to SSE subscribers through {@link ScanEventBroadcaster}, so reviewers can
+ * triage early pages while later ones are still being analyzed. Nothing accumulates
+ * per scan in memory.
+ *
+ * Every page is checkpointed ({@link ScanCheckpointService}). Pages that still fail after
+ * retries leave the script FAILED with its finished pages kept; {@link #resume} then
+ * re-runs only the missing pages from encrypted scratch, without the PDF.
+ *
+ * While the model is unavailable (circuit open, see {@link LlmEndpointPool}) pages are
+ * completed from the local detectors only and the script is marked {@code degraded}.
+ * Those pages are re-run automatically once an endpoint is back, or through {@link #resume}.
+ *
+ * Every job runs under its tenant (studio or project, see {@link AnalysisExecutor#tenancy}):
+ * queued jobs start by tenant turn, urgent first, and their page calls get the tenant's
+ * fair share of the analysis slots.
+ *
+ * With {@code scriptsentries.scan.distributed.enabled} the pages are not analyzed by the
+ * job itself: they wait in {@code scan_pages} for the {@link ScanPageWorker}s of every node,
+ * and the job only watches the table, reporting progress and page events until no page is
+ * pending, then finishes the script as usual. The coordinating node renews a lease on the
+ * script ({@code scripts.scan_lease_expires_at}); when it runs out, another node takes the
+ * scan over ({@link #adoptOrphanedScans}).
+ */
+@Service
+@Slf4j
+public class ScanJobService {
+
+    private final ScriptRepository scriptRepository;
+    private final PdfExtractionService pdfExtractionService;
+    private final ScriptAnalysisService scriptAnalysisService;
+    private final VersionDiffService versionDiffService;
+    private final ScanEventBroadcaster scanEventBroadcaster;
+    private final ScanCheckpointService scanCheckpointService;
+    private final RiskFlagWriter riskFlagWriter;
+    private final ScanRunRepository scanRunRepository;
+    private final LlmEndpointPool llmEndpointPool;
+    private final AnalysisExecutor analysisExecutor;
+    private final ScanPageWorker scanPageWorker;
+    private final TaskExecutor scanJobExecutor;
+    private final Duration jobRetention;
+    private final int windowPages;
+    private final int maxWindows;
+    private final ExecutorService windowExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Map<String, ScanJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong submissions = new AtomicLong();
+
+    public ScanJobService(ScriptRepository scriptRepository,
+                          PdfExtractionService pdfExtractionService,
+                          ScriptAnalysisService scriptAnalysisService,
+                          VersionDiffService versionDiffService,
+                          ScanEventBroadcaster scanEventBroadcaster,
+                          ScanCheckpointService scanCheckpointService,
+                          RiskFlagWriter riskFlagWriter,
+                          ScanRunRepository scanRunRepository,
+                          LlmEndpointPool llmEndpointPool,
+                          AnalysisExecutor analysisExecutor,
+                          ScanPageWorker scanPageWorker,
+                          @Qualifier("scanJobExecutor") TaskExecutor scanJobExecutor,
+                          @Value("${scriptsentries.scan.job-retention:1h}") Duration jobRetention,
+                          @Value("${scriptsentries.scan.streaming.window-pages:10}") int windowPages,
+                          @Value("${scriptsentries.scan.streaming.max-windows:3}") int maxWindows) {
+        this.scriptRepository = scriptRepository;
+        this.pdfExtractionService = pdfExtractionService;
+        this.scriptAnalysisService = scriptAnalysisService;
+        this.versionDiffService = versionDiffService;
+        this.scanEventBroadcaster = scanEventBroadcaster;
+        this.scanCheckpointService = scanCheckpointService;
+        this.riskFlagWriter = riskFlagWriter;
+        this.scanRunRepository = scanRunRepository;
+        this.llmEndpointPool = llmEndpointPool;
+        this.analysisExecutor = analysisExecutor;
+        this.scanPageWorker = scanPageWorker;
+        this.scanJobExecutor = scanJobExecutor;
+        this.jobRetention = jobRetention;
+        this.windowPages = Math.max(1, windowPages);
+        this.maxWindows = Math.max(1, maxWindows);
+    }
+
+    /**
+     * Queues a scan. Takes ownership of {@code pdfFile}: it is deleted once extraction
+     * finishes, or immediately if the job cannot be queued.
+     */
+    public ScanJob submit(Script script, File pdfFile) {
+        evictFinishedJobs();
+
+        ScanJob job = new ScanJob(script.getId(), script.getFilename(), tenancyOf(script));
+        int tenantRank = jobsOf(job.getTenant());
+        jobs.put(job.getJobId(), job);
+        scriptRepository.updateScanNode(script.getId(), scanPageWorker.nodeId(), scanLeaseUntil());
+
+        try {
+            scanJobExecutor.execute(queued(job, tenantRank, () -> run(job, script, pdfFile)));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getJobId());
+            script.setStatus(Script.ScriptStatus.FAILED);
+            scriptRepository.save(script);
+            deleteTempFile(pdfFile);
+            throw e;
+        }
+
+        log.info("Scan job {} queued for '{}' (script {}, tenant {}{})", job.getJobId(), script.getFilename(),
+                script.getId(), job.getTenant(), job.isUrgent() ? ", urgent" : "");
+        return job;
+    }
+
+    /**
+     * Re-runs, from checkpoint scratch, the pages of a FAILED scan that never finished and
+     * the degraded pages of any scan. Degraded pages keep their local flags; the re-run
+     * adds what the model finds on top.
+     *
+     * @throws RuntimeException if the script is unknown, not resumable, already being
+     *                          scanned, or its scratch has expired
+     */
+    public ScanJob resume(Long scriptId) {
+        evictFinishedJobs();
+
+        Script script = scriptRepository.findById(scriptId)
+                .orElseThrow(() -> new RuntimeException("Script not found: " + scriptId));
+        Script.ScriptStatus previous = script.getStatus();
+        boolean degraded = previous == Script.ScriptStatus.COMPLETE && Boolean.TRUE.equals(script.getDegraded());
+        if (previous != Script.ScriptStatus.FAILED && !degraded) {
+            throw new RuntimeException("Only failed or degraded scans can be resumed; script " + scriptId + " is " + previous);
+        }
+        boolean running = jobs.values().stream().anyMatch(j -> scriptId.equals(j.getScriptId()) && !j.isFinished());
+        if (running) {
+            throw new RuntimeException("Scan already running for script: " + scriptId);
+        }
+
+        List<String> pages = scanCheckpointService.pagesToResume(script);
+        long missing = pages.stream().filter(Objects::nonNull).count();
+        if (missing == 0) {
+            throw new RuntimeException("Nothing left to re-run for script: " + scriptId);
+        }
+
+        ScanJob job = new ScanJob(script.getId(), script.getFilename(), tenancyOf(script));
+        job.setPagesTotal(pages.size());
+        job.resumeFrom((int) (pages.size() - missing), script.getRiskCount());
+        int tenantRank = jobsOf(job.getTenant());
+
+        // Conditional, so two nodes sweeping the same degraded script cannot both resume it
+        if (scriptRepository.claimScan(scriptId, previous, Script.ScriptStatus.PROCESSING,
+                scanPageWorker.nodeId(), scanLeaseUntil()) == 0) {
+            throw new RuntimeException("Scan already running for script: " + scriptId);
+        }
+        jobs.put(job.getJobId(), job);
+        try {
+            scanJobExecutor.execute(queued(job, tenantRank, () -> runResume(job, script, pages)));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getJobId());
+            scriptRepository.updateStatus(scriptId, previous);
+            throw e;
+        }
+
+        log.info("Scan job {} resuming '{}' (script {}): {} of {} pages left",
+                job.getJobId(), script.getFilename(), scriptId, missing, pages.size());
+        return job;
+    }
+
+    public Optional<ScanJob> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * A scan that was PROCESSING when the application stopped has no job any more; mark
+     * it FAILED so it shows up as resumable instead of spinning forever. Without a scratch
+     * key it cannot be resumed and must be uploaded again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void markInterruptedScans() {
+        boolean resumable = scanCheckpointService.dropUnreadableScratch();
+        for (Script script : scriptRepository.findByStatus(Script.ScriptStatus.PROCESSING)) {
+            // Other nodes' scans are still being coordinated by them
+            if (scanPageWorker.isEnabled() && script.getScanNode() != null
+                    && !script.getScanNode().equals(scanPageWorker.nodeId())) {
+                continue;
+            }
+            script.setStatus(Script.ScriptStatus.FAILED);
+            scriptRepository.save(script);
+            if (resumable) {
+                log.warn("Scan of '{}' (script {}) was interrupted by a restart; resume it with POST /api/scripts/{}/resume",
+                        script.getFilename(), script.getId(), script.getId());
+            } else {
+                log.warn("Scan of '{}' (script {}) was interrupted by a restart; upload it again (no scratch key)",
+                        script.getFilename(), script.getId());
+            }
+        }
+    }
+
+    /** Keeps the scans this node coordinates, queued or running, from being taken over. */
+    @Scheduled(fixedDelayString = "${scriptsentries.scan.distributed.lease-renew-interval:PT30S}")
+    public void renewScanLeases() {
+        if (!scanPageWorker.isEnabled()) return;
+        List<Long> scriptIds = jobs.values().stream().filter(j -> !j.isFinished()).map(ScanJob::getScriptId).toList();
+        if (scriptIds.isEmpty()) return;
+        try {
+            scriptRepository.renewScanLeases(scriptIds, scanPageWorker.nodeId(), scanLeaseUntil());
+        } catch (RuntimeException e) {
+            log.warn("Could not renew the leases of {} scans: {}", scriptIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Takes over distributed scans whose coordinating node stopped renewing its lease, so
+     * a node that dies (or comes back under another id) does not leave them PROCESSING.
+     * A scan whose pages were all checkpointed is coordinated from here on: finished once
+     * no page is pending. One cut off during extraction is FAILED; its missing pages were
+     * never queued, so it has to be uploaded again.
+     */
+    @Scheduled(fixedDelayString = "${scriptsentries.scan.distributed.lease-renew-interval:PT30S}")
+    public void adoptOrphanedScans() {
+        if (!scanPageWorker.isEnabled()) return;
+        LocalDateTime now = LocalDateTime.now();
+        for (Long scriptId : scriptRepository.findOrphanedScanIds(now)) {
+            if (scriptRepository.takeOverScan(scriptId, scanPageWorker.nodeId(), now, scanLeaseUntil()) == 0) continue;
+            Script script = scriptRepository.findById(scriptId).orElse(null);
+            if (script == null) continue;
+            try {
+                adopt(script);
+            } catch (RuntimeException e) {
+                scriptRepository.updateStatus(scriptId, Script.ScriptStatus.FAILED);
+                log.warn("Could not take over the scan of script {}: {}", scriptId, e.getMessage());
+            }
+        }
+    }
+
+    private void adopt(Script script) {
+        int checkpointed = scanCheckpointService.pageStates(script).size();
+        if (script.getTotalPages() == 0 || checkpointed < script.getTotalPages()) {
+            scriptRepository.updateStatus(script.getId(), Script.ScriptStatus.FAILED);
+            log.warn("Coordinator of '{}' (script {}) was lost during extraction; upload it again",
+                    script.getFilename(), script.getId());
+            return;
+        }
+        ScanJob job = new ScanJob(script.getId(), script.getFilename(), tenancyOf(script));
+        job.setPagesTotal(script.getTotalPages());
+        int tenantRank = jobsOf(job.getTenant());
+        jobs.put(job.getJobId(), job);
+        try {
+            scanJobExecutor.execute(queued(job, tenantRank, () -> {
+                job.markRunning();
+                try {
+                    awaitWorkers(job, script, new HashSet<>());
+                } catch (Exception e) {
+                    fail(job, script, e);
+                }
+            }));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getJobId());
+            throw e;
+        }
+        log.warn("Took over the scan of '{}' (script {}) from a node that stopped renewing its lease; job {}",
+                script.getFilename(), script.getId(), job.getJobId());
+    }
+
+    private LocalDateTime scanLeaseUntil() {
+        return LocalDateTime.now().plus(scanPageWorker.lease());
+    }
+
+    private void run(ScanJob job, Script script, File pdfFile) {
+        job.markRunning();
+        StreamingScan scan = new StreamingScan(job, script);
+
+        try {
+            try {
+                int pages = pdfExtractionService.extractPages(pdfFile, scan);
+                log.info("Extracted {} pages from '{}'", pages, script.getFilename());
+            } finally {
+                // Every page is in memory or encrypted scratch by now; the PDF is not needed
+                deleteTempFile(pdfFile);
+            }
+            scan.endOfDocument();
+
+            if (scanPageWorker.isEnabled()) {
+                awaitWorkers(job, scan.saved, scan.carried);
+            } else {
+                scan.recordRouting();
+                finish(job, scan.saved);
+            }
+        } catch (Exception e) {
+            scan.awaitWindows();
+            fail(job, script, e);
+        }
+    }
+
+    /**
+     * Extraction side of a scan. Pages are collected into windows of
+     * {@code streaming.window-pages}; each full window is planned against earlier versions
+     * (unchanged pages keep their flags and attorney decisions), checkpointed, and — unless
+     * other nodes do the analysis — analyzed while the next window is being extracted. At
+     * most {@code streaming.max-windows} windows are in flight, so a fast extractor waits
+     * for the model instead of holding every page of the script in memory.
+     */
+    private final class StreamingScan implements PdfExtractionService.PageConsumer {
+        private final ScanJob job;
+        private final Script script;
+        private final Semaphore windows = new Semaphore(maxWindows);
+        private final List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+        private final Set<Integer> carried = new HashSet<>();
+        private final List<String> current = new ArrayList<>();
+        private Script saved;
+        private VersionDiffService.Planner planner;
+        private AnalysisExecutor.ScanSlots scanSlots;
+        private ScanRouting routing;
+        private int windowStart = 1;
+
+        StreamingScan(ScanJob job, Script script) {
+            this.job = job;
+            this.script = script;
+        }
+
+        @Override
+        public void onStart(int totalPages) {
+            job.setPagesTotal(totalPages);
+            script.setTotalPages(totalPages);
+            saved = scriptRepository.save(script);
+            scanEventBroadcaster.progress(job);
+            planner = versionDiffService.planner(saved);
+            // One per-scan cap for all windows, so windows in flight do not multiply it
+            scanSlots = analysisExecutor.newScan(job.tenancy());
+        }
+
+        @Override
+        public void onPage(int pageNumber, String text) throws IOException {
+            current.add(text);
+            if (current.size() >= windowPages) submitWindow();
+        }
+
+        void endOfDocument() throws IOException {
+            if (saved == null) throw new IOException("PDF has no pages");
+            if (!current.isEmpty()) submitWindow();
+            planner.logSummary();
+            CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).join();
+        }
+
+        /** After a failure: lets windows already analyzing finish before the job is failed. */
+        void awaitWindows() {
+            inFlight.forEach(window -> window.exceptionally(e -> null).join());
+        }
+
+        private void submitWindow() throws IOException {
+            int from = windowStart;
+            int to = from + current.size() - 1;
+            // Sparse: only this window's pages are set, so earlier windows can be collected
+            List<String> pages = Arrays.asList(new String[to]);
+            for (int i = 0; i < current.size(); i++) pages.set(from - 1 + i, current.get(i));
+            current.clear();
+            windowStart = to + 1;
+
+            VersionDiffService.RescanPlan plan = planner.plan(pages, from, to);
+            scanCheckpointService.append(saved, pages, from, to, plan::isUnchanged);
+            plan.unchangedPages().keySet().stream().sorted()
+                    .forEach(pageNumber -> pageDone(job, saved, pageNumber, plan.carriedFlagsFor(pageNumber), false));
+            carried.addAll(plan.unchangedPages().keySet());
+            if (scanPageWorker.isEnabled()) return;   // the checkpoint rows are the other nodes' queue
+
+            try {
+                windows.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for an analysis window");
+            }
+            inFlight.add(CompletableFuture.runAsync(() -> {
+                try {
+                    scriptAnalysisService.analyzeScript(pages, saved, scanSlots,
+                            pageNumber -> pageNumber >= from && !plan.isUnchanged(pageNumber),
+                            inheriting(plan, listener(job, saved, Map.of(), this::addRouting)));
+                } finally {
+                    windows.release();
+                }
+            }, windowExecutor));
+        }
+
+        private synchronized void addRouting(ScanRouting window) {
+            if (routing == null) routing = window;
+            else routing.add(window);
+        }
+
+        synchronized void recordRouting() {
+            if (routing == null) return;
+            log.info("Routing for '{}' (all windows): {}", saved.getFilename(), routing);
+            recordRun(saved, routing);
+        }
+    }
+
+    /**
+     * Once an endpoint is reachable again, re-runs the degraded pages of completed scans.
+     * A scan that degrades again simply waits for the next sweep.
+     */
+    @Scheduled(fixedDelayString = "${scriptsentries.scan.degraded-rerun-interval:PT5M}")
+    public void rerunDegradedScans() {
+        if (llmEndpointPool.isOpen()) return;
+        for (Long scriptId : scanCheckpointService.scriptsWithRerunnablePages()) {
+            Script script = scriptRepository.findById(scriptId).orElse(null);
+            if (script == null || script.isDeleted() || script.getStatus() != Script.ScriptStatus.COMPLETE
+                    || jobs.values().stream().anyMatch(j -> scriptId.equals(j.getScriptId()) && !j.isFinished())) {
+                continue;
+            }
+            try {
+                resume(scriptId);
+            } catch (RuntimeException e) {
+                log.warn("Could not re-run degraded pages of script {}: {}", scriptId, e.getMessage());
+            }
+        }
+    }
+
+    private void runResume(ScanJob job, Script script, List<String> pages) {
+        job.markRunning();
+        scanEventBroadcaster.progress(job);
+        try {
+            if (scanPageWorker.isEnabled()) {
+                scanCheckpointService.requeue(script);
+                awaitWorkers(job, script, IntStream.rangeClosed(1, pages.size())
+                        .filter(pageNumber -> pages.get(pageNumber - 1) == null).boxed()
+                        .collect(Collectors.toCollection(HashSet::new)));
+                return;
+            }
+            // Degraded pages already hold their local flags; the re-run only adds to them
+            List<Integer> rerun = IntStream.rangeClosed(1, pages.size())
+                    .filter(pageNumber -> pages.get(pageNumber - 1) != null).boxed().toList();
+            Map<Integer, Set<String>> existing = scanCheckpointService.existingFlagKeys(script, rerun);
+            analyze(job, script, pages, pageNumber -> pages.get(pageNumber - 1) != null, existing);
+        } catch (Exception e) {
+            fail(job, script, e);
+        }
+    }
+
+    private void analyze(ScanJob job, Script script, List<String> pages, IntPredicate needsAnalysis) {
+        analyze(job, script, pages, needsAnalysis, Map.of());
+    }
+
+    /** {@code existing}: flag keys already saved per page, not to be saved again. */
+    private void analyze(ScanJob job, Script script, List<String> pages, IntPredicate needsAnalysis,
+                         Map<Integer, Set<String>> existing) {
+        scriptAnalysisService.analyzeScript(pages, script, analysisExecutor.newScan(job.tenancy()), needsAnalysis,
+                listener(job, script, existing, routing -> recordRun(script, routing)));
+        finish(job, script);
+    }
+
+    /** Saves and broadcasts what the analysis reports; {@code existing} flags are not saved again. */
+    private PageResultListener listener(ScanJob job, Script script, Map<Integer, Set<String>> existing,
+                                        Consumer<ScanRouting> onRouting) {
+        return new PageResultListener() {
+            @Override
+            public void onPageComplete(int pageNumber, List<RiskFlag> flags) {
+                pageDone(job, script, pageNumber, newFlags(existing, pageNumber, flags), false);
+            }
+
+            @Override
+            public void onPageDegraded(int pageNumber, List<RiskFlag> flags) {
+                job.pageDegraded();
+                pageDone(job, script, pageNumber, newFlags(existing, pageNumber, flags), true);
+            }
+
+            @Override
+            public void onRiskFound(int pageNumber, RiskFlag flag) {
+                scanEventBroadcaster.riskFound(job, flag);
+            }
+
+            @Override
+            public void onPageFailed(int pageNumber, String error) {
+                pageFailed(job, script, pageNumber, error);
+            }
+
+            @Override
+            public void onRouting(ScanRouting routing) {
+                onRouting.accept(routing);
+            }
+        };
+    }
+
+    /**
+     * Distributed scan: waits until no page of {@code script} is pending, relaying pages
+     * finished by any node to the job and its SSE subscribers, then finishes the script.
+     * {@code reported}: pages the job has already reported, i.e. that were never queued.
+     */
+    private void awaitWorkers(ScanJob job, Script script, Set<Integer> reported) throws InterruptedException {
+        while (true) {
+            List<ScanPageRepository.PageState> states = scanCheckpointService.pageStates(script);
+            List<Integer> newlyDone = new ArrayList<>();
+            int done = 0, failed = 0, degraded = 0, pending = 0;
+            for (ScanPageRepository.PageState page : states) {
+                switch (page.getState()) {
+                    case DONE -> {
+                        done++;
+                        if (Boolean.TRUE.equals(page.getDegraded())) degraded++;
+                        if (reported.add(page.getPageNumber())) newlyDone.add(page.getPageNumber());
+                    }
+                    case FAILED -> failed++;
+                    case PENDING -> pending++;
+                }
+            }
+            job.sync(done, failed, degraded, scriptRepository.findRiskCount(script.getId()));
+            Map<Integer, List<RiskFlag>> flags = scanCheckpointService.flagsByPage(script, newlyDone);
+            newlyDone.forEach(pageNumber ->
+                    scanEventBroadcaster.pageCompleted(job, pageNumber, flags.getOrDefault(pageNumber, List.of())));
+            scanEventBroadcaster.progress(job);
+
+            if (pending == 0) break;
+            Thread.sleep(scanPageWorker.pollInterval().toMillis());
+        }
+        finish(job, script);
+    }
+
+    private void finish(ScanJob job, Script script) {
+        riskFlagWriter.flushed().join();
+
+        // Status only: riskCount was maintained by the writer and the entity here is stale
+        long unfinished = scanCheckpointService.unfinishedPages(script);
+        long degraded = scanCheckpointService.degradedPages(script);
+        scriptRepository.updateDegraded(script.getId(), degraded > 0);
+        if (unfinished > 0) {
+            scriptRepository.updateStatus(script.getId(), Script.ScriptStatus.FAILED);
+            job.fail(unfinished + " page(s) failed after retries; resume the scan to retry them");
+            log.warn("Analysis of '{}' incomplete: {} pages failed, {} risks saved",
+                    script.getFilename(), unfinished, job.getRiskCount().get());
+        } else {
+            scriptRepository.updateStatus(script.getId(), Script.ScriptStatus.COMPLETE);
+            scanCheckpointService.wipe(script);
+            job.complete();
+            if (degraded > 0) {
+                log.warn("Analysis of '{}' complete in degraded mode: {} pages by local detectors only, "
+                        + "re-run once the model is back", script.getFilename(), degraded);
+            } else {
+                log.info("Analysis complete for '{}': {} risks found", script.getFilename(), job.getRiskCount().get());
+            }
+        }
+        scanEventBroadcaster.finished(job);
+    }
+
+    /** Tenant of the script's project; the project is loaded here, the entity's may be a detached proxy. */
+    private AnalysisExecutor.Tenancy tenancyOf(Script script) {
+        return analysisExecutor.tenancy(scriptRepository.findProjectOf(script.getId()).orElse(null),
+                Boolean.TRUE.equals(script.getUrgent()));
+    }
+
+    /** Unfinished jobs of {@code tenant}: how far back in the job queue its next job goes. */
+    private int jobsOf(String tenant) {
+        return (int) jobs.values().stream().filter(j -> tenant.equals(j.getTenant()) && !j.isFinished()).count();
+    }
+
+    private Runnable queued(ScanJob job, int tenantRank, Runnable task) {
+        return new ScanConfig.PrioritizedTask(task, job.isUrgent(), tenantRank, submissions.incrementAndGet());
+    }
+
+    private void fail(ScanJob job, Script script, Exception e) {
+        riskFlagWriter.flushed().join();
+        scriptRepository.updateStatus(script.getId(), Script.ScriptStatus.FAILED);
+        job.fail(e.getMessage());
+        scanEventBroadcaster.finished(job);
+        log.error("Analysis failed for '{}': {}", script.getFilename(), e.getMessage(), e);
+    }
+
+    /** Keeps the run's routing and per-tier cost; losing it must not fail the scan. */
+    private void recordRun(Script script, ScanRouting routing) {
+        try {
+            scanRunRepository.save(ScanRun.builder()
+                    .script(script)
+                    .pagesRequested(routing.pagesRequested())
+                    .pagesRuleCleared(routing.pagesRuleCleared())
+                    .pagesFromCache(routing.pagesFromCache())
+                    .pagesScreened(routing.pagesScreened())
+                    .pagesScreenCleared(routing.pagesScreenCleared())
+                    .pagesLargeModel(routing.pagesLargeModel())
+                    .pagesDegraded(routing.pagesDegraded())
+                    .screeningCalls(routing.screeningCalls())
+                    .screeningTokens(routing.screeningTokens())
+                    .screeningCostUsd(routing.screeningCost())
+                    .largeModelCalls(routing.largeModelCalls())
+                    .largeModelTokens(routing.largeModelTokens())
+                    .largeModelCostUsd(routing.largeModelCost())
+                    .build());
+        } catch (RuntimeException e) {
+            log.warn("Could not record routing of '{}': {}", script.getFilename(), e.getMessage());
+        }
+    }
+
+    /** Shifted pages of {@code plan} keep the attorney's decisions on findings reported again. */
+    private static PageResultListener inheriting(VersionDiffService.RescanPlan plan, PageResultListener listener) {
+        if (plan.alignedFlags().isEmpty()) return listener;
+        return new PageResultListener() {
+            @Override
+            public void onPageComplete(int pageNumber, List<RiskFlag> flags) {
+                listener.onPageComplete(pageNumber, plan.inheritDecisions(pageNumber, flags));
+            }
+
+            @Override
+            public void onPageDegraded(int pageNumber, List<RiskFlag> flags) {
+                listener.onPageDegraded(pageNumber, plan.inheritDecisions(pageNumber, flags));
+            }
+
+            @Override
+            public void onRiskFound(int pageNumber, RiskFlag flag) {
+                listener.onRiskFound(pageNumber, flag);
+            }
+
+            @Override
+            public void onPageFailed(int pageNumber, String error) {
+                listener.onPageFailed(pageNumber, error);
+            }
+
+            @Override
+            public void onRouting(ScanRouting routing) {
+                listener.onRouting(routing);
+            }
+        };
+    }
+
+    static List<RiskFlag> newFlags(Map<Integer, Set<String>> existing, int pageNumber, List<RiskFlag> flags) {
+        Set<String> saved = existing.get(pageNumber);
+        if (saved == null) return flags;
+        return flags.stream().filter(f -> !saved.contains(ScanCheckpointService.flagKey(f))).toList();
+    }
+
+    /** Queues one finished page for the writer; it is reported once committed (flags then carry ids). */
+    private void pageDone(ScanJob job, Script script, int pageNumber, List<RiskFlag> pageFlags, boolean degraded) {
+        riskFlagWriter.write(script, pageNumber, pageFlags, degraded, new RiskFlagWriter.Callback() {
+            @Override
+            public void onSaved(List<RiskFlag> saved) {
+                job.pageCompleted(saved.size());
+                scanEventBroadcaster.pageCompleted(job, pageNumber, saved);
+            }
+
+            @Override
+            public void onFailed(RuntimeException e) {
+                pageFailed(job, script, pageNumber, e.getMessage());
+            }
+        });
+    }
+
+    private void pageFailed(ScanJob job, Script script, int pageNumber, String error) {
+        scanCheckpointService.failPage(script, pageNumber, error);
+        job.pageFailed();
+        scanEventBroadcaster.progress(job);
+    }
+
+    private void evictFinishedJobs() {
+        Instant cutoff = Instant.now().minus(jobRetention);
+        jobs.values().removeIf(j -> {
+            boolean expired = j.isFinished() && j.getFinishedAt().isBefore(cutoff);
+            if (expired) scanEventBroadcaster.evict(j.getJobId());
+            return expired;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        windowExecutor.shutdownNow();
+    }
+
+    // ZERO-RETENTION: CRITICAL — delete temp PDF regardless of outcome
+    static void deleteTempFile(File tempFile) {
+        boolean deleted = tempFile.delete();
+        if (deleted) {
+            log.info("ZERO-RETENTION: Temp PDF '{}' securely deleted", tempFile.getName());
+        } else {
+            log.error("ZERO-RETENTION VIOLATION: Failed to delete temp file '{}'! Manual cleanup required.", tempFile.getAbsolutePath());
+            try {
+                Files.deleteIfExists(tempFile.toPath());
+            } catch (IOException ex) {
+                log.error("NIO fallback delete also failed: {}", ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.model.RiskFlag;
+import com.scriptsentries.model.Script;
+import com.scriptsentries.repository.ScriptRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Analyzes pages from the shared {@code scan_pages} queue, so every backend node works
+ * on every scan ({@code scriptsentries.scan.distributed.enabled}).
+ *
+ * Each of {@code distributed.workers} loops claims up to {@code claim-size} pending pages
+ * of one script ({@link ScanCheckpointService#claim}), runs them through the normal
+ * pipeline and saves the results through the write-behind {@link RiskFlagWriter}. While
+ * a claim is being worked on its lease is renewed; if the node dies, the lease runs out
+ * and another node claims the pages again. Pages saved before the crash are DONE in the
+ * same transaction as their flags, so nothing is analyzed twice, and flags already on a
+ * re-claimed page are not saved again.
+ *
+ * Scratch written on one node is decrypted on another, so all nodes need the same
+ * {@code scriptsentries.scan.scratch-key}. The node that took the upload coordinates the
+ * scan: it reports progress and finishes the script ({@link ScanJobService}). It holds a
+ * lease on the script too, and if it dies another node takes the scan over.
+ */
+@Component
+@Slf4j
+public class ScanPageWorker {
+
+    private final ScanCheckpointService scanCheckpointService;
+    private final ScriptAnalysisService scriptAnalysisService;
+    private final RiskFlagWriter riskFlagWriter;
+    private final ScriptRepository scriptRepository;
+    private final AnalysisExecutor analysisExecutor;
+    private final boolean enabled;
+    private final String nodeId;
+    private final int workers;
+    private final int claimSize;
+    private final Duration lease;
+    private final Duration pollInterval;
+
+    private final Set<ScanCheckpointService.Claim> active = ConcurrentHashMap.newKeySet();
+    private final List<Thread> threads = new ArrayList<>();
+
+    public ScanPageWorker(ScanCheckpointService scanCheckpointService,
+                          ScriptAnalysisService scriptAnalysisService,
+                          RiskFlagWriter riskFlagWriter,
+                          ScriptRepository scriptRepository,
+                          AnalysisExecutor analysisExecutor,
+                          @Value("${scriptsentries.scan.distributed.enabled:false}") boolean enabled,
+                          @Value("${scriptsentries.scan.distributed.node-id:}") String nodeId,
+                          @Value("${scriptsentries.scan.distributed.workers:4}") int workers,
+                          @Value("${scriptsentries.scan.distributed.claim-size:5}") int claimSize,
+                          @Value("${scriptsentries.scan.distributed.lease:2m}") Duration lease,
+                          @Value("${scriptsentries.scan.distributed.poll-interval:1s}") Duration pollInterval,
+                          @Value("${scriptsentries.scan.scratch-key:}") String scratchKey) {
+        if (enabled && scratchKey.isBlank()) {
+            throw new IllegalStateException(
+                    "scriptsentries.scan.distributed.enabled needs the same scriptsentries.scan.scratch-key on every node");
+        }
+        this.scanCheckpointService = scanCheckpointService;
+        this.scriptAnalysisService = scriptAnalysisService;
+        this.riskFlagWriter = riskFlagWriter;
+        this.scriptRepository = scriptRepository;
+        this.analysisExecutor = analysisExecutor;
+        this.enabled = enabled;
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+        this.workers = workers;
+        this.claimSize = claimSize;
+        this.lease = lease;
+        this.pollInterval = pollInterval;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** This node's name in {@code scan_pages.leased_by} and {@code scripts.scan_node}. */
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /** How long a page claim, and a coordinator's hold on a scan, lasts without renewal. */
+    Duration lease() {
+        return lease;
+    }
+
+    Duration pollInterval() {
+        return pollInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        for (int i = 0; i < workers; i++) {
+            threads.add(Thread.ofVirtual().name("scan-page-worker-" + i).start(this::work));
+        }
+        log.info("Distributed scanning: node {}, {} workers claiming {} pages per lease of {} s",
+                nodeId, workers, claimSize, lease.toSeconds());
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                var claim = scanCheckpointService.claim(nodeId, claimSize, lease);
+                if (claim.isPresent()) {
+                    process(claim.get());
+                } else {
+                    Thread.sleep(pollInterval.toMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("Scan page worker error: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(pollInterval.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void process(ScanCheckpointService.Claim claim) {
+        active.add(claim);
+        try {
+            Script script = scriptRepository.findById(claim.scriptId()).orElse(null);
+            if (script == null) return;
+            if (script.isDeleted()) {
+                claim.pages().keySet().forEach(pageNumber -> scanCheckpointService.failPage(
+                        script, pageNumber, "Script deleted"));
+                return;
+            }
+
+            String[] texts = new String[Collections.max(claim.pages().keySet())];
+            claim.pages().forEach((pageNumber, text) -> texts[pageNumber - 1] = text);
+            List<String> pages = Arrays.asList(texts);
+            Map<Integer, Set<String>> existing =
+                    scanCheckpointService.existingFlagKeys(script, new ArrayList<>(claim.pages().keySet()));
+            AnalysisExecutor.Tenancy tenancy = analysisExecutor.tenancy(
+                    scriptRepository.findProjectOf(script.getId()).orElse(null), Boolean.TRUE.equals(script.getUrgent()));
+
+            log.debug("Node {} analyzing pages {} of script {}", nodeId, claim.pages().keySet(), script.getId());
+            scriptAnalysisService.analyzeScript(pages, script, analysisExecutor.newScan(tenancy), claim.pages()::containsKey, new PageResultListener() {
+                @Override
+                public void onPageComplete(int pageNumber, List<RiskFlag> flags) {
+                    write(script, pageNumber, ScanJobService.newFlags(existing, pageNumber, flags), false);
+                }
+
+                @Override
+                public void onPageDegraded(int pageNumber, List<RiskFlag> flags) {
+                    write(script, pageNumber, ScanJobService.newFlags(existing, pageNumber, flags), true);
+                }
+
+                @Override
+                public void onPageFailed(int pageNumber, String error) {
+                    scanCheckpointService.failPage(script, pageNumber, error);
+                }
+            });
+            // The lease must outlive the write: a page is only DONE once its flags are committed
+            riskFlagWriter.flushed().join();
+        } finally {
+            active.remove(claim);
+            scanCheckpointService.releaseLeases(claim.pageIds(), nodeId);
+        }
+    }
+
+    private void write(Script script, int pageNumber, List<RiskFlag> flags, boolean degraded) {
+        riskFlagWriter.write(script, pageNumber, flags, degraded, new RiskFlagWriter.Callback() {
+            @Override
+            public void onSaved(List<RiskFlag> saved) {
+            }
+
+            @Override
+            public void onFailed(RuntimeException e) {
+                scanCheckpointService.failPage(script, pageNumber, e.getMessage());
+            }
+        });
+    }
+
+    /** Keeps the pages this node is working on leased. */
+    @Scheduled(fixedDelayString = "${scriptsentries.scan.distributed.lease-renew-interval:PT30S}")
+    public void renewLeases() {
+        if (active.isEmpty()) return;
+        List<Long> ids = active.stream().flatMap(c -> c.pageIds().stream()).toList();
+        try {
+            scanCheckpointService.renewLeases(ids, nodeId, lease);
+        } catch (RuntimeException e) {
+            log.warn("Could not renew leases of {} pages: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    /** Pages still being analyzed keep their lease; other nodes claim them once it runs out. */
+    @PreDestroy
+    void shutdown() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    private static String defaultNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.scriptsentries.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the pages of one analysis run went — cleared by the local rules, answered from
+ * the cache, cleared by the screening model, or sent to the large model — and what each
+ * model tier cost. Updated concurrently by the analysis threads.
+ *
+ * Costs are estimates from the configured per-million-token prices; tokens are the
+ * provider's usage figures where it reports them, else the request estimate.
+ */
+public final class ScanRouting {
+
+    private final double screeningPricePerMTok;
+    private final double largeModelPricePerMTok;
+
+    private final AtomicInteger pagesRequested = new AtomicInteger();
+    private final AtomicInteger pagesRuleCleared = new AtomicInteger();
+    private final AtomicInteger pagesFromCache = new AtomicInteger();
+    private final AtomicInteger pagesScreened = new AtomicInteger();
+    private final AtomicInteger pagesScreenCleared = new AtomicInteger();
+    private final AtomicInteger pagesLargeModel = new AtomicInteger();
+    private final AtomicInteger pagesDegraded = new AtomicInteger();
+    private final AtomicInteger screeningCalls = new AtomicInteger();
+    private final AtomicLong screeningTokens = new AtomicLong();
+    private final AtomicInteger largeModelCalls = new AtomicInteger();
+    private final AtomicLong largeModelTokens = new AtomicLong();
+
+    ScanRouting(double screeningPricePerMTok, double largeModelPricePerMTok) {
+        this.screeningPricePerMTok = screeningPricePerMTok;
+        this.largeModelPricePerMTok = largeModelPricePerMTok;
+    }
+
+    void pagesRequested(int pages) {
+        pagesRequested.addAndGet(pages);
+    }
+
+    void ruleCleared(int pages) {
+        pagesRuleCleared.addAndGet(pages);
+    }
+
+    void fromCache(int pages) {
+        pagesFromCache.addAndGet(pages);
+    }
+
+    void screened(int pages, int cleared) {
+        pagesScreened.addAndGet(pages);
+        pagesScreenCleared.addAndGet(cleared);
+    }
+
+    void sentToLargeModel(int pages) {
+        pagesLargeModel.addAndGet(pages);
+    }
+
+    void degraded(int pages) {
+        pagesDegraded.addAndGet(pages);
+    }
+
+    void screeningCall(long tokens) {
+        screeningCalls.incrementAndGet();
+        screeningTokens.addAndGet(tokens);
+    }
+
+    void largeModelCall(long tokens) {
+        largeModelCalls.incrementAndGet();
+        largeModelTokens.addAndGet(tokens);
+    }
+
+    /** Adds another run's figures, e.g. one window of a streamed scan, to this one. */
+    void add(ScanRouting other) {
+        pagesRequested.addAndGet(other.pagesRequested());
+        pagesRuleCleared.addAndGet(other.pagesRuleCleared());
+        pagesFromCache.addAndGet(other.pagesFromCache());
+        pagesScreened.addAndGet(other.pagesScreened());
+        pagesScreenCleared.addAndGet(other.pagesScreenCleared());
+        pagesLargeModel.addAndGet(other.pagesLargeModel());
+        pagesDegraded.addAndGet(other.pagesDegraded());
+        screeningCalls.addAndGet(other.screeningCalls());
+        screeningTokens.addAndGet(other.screeningTokens());
+        largeModelCalls.addAndGet(other.largeModelCalls());
+        largeModelTokens.addAndGet(other.largeModelTokens());
+    }
+
+    public int pagesRequested() {
+        return pagesRequested.get();
+    }
+
+    public int pagesRuleCleared() {
+        return pagesRuleCleared.get();
+    }
+
+    public int pagesFromCache() {
+        return pagesFromCache.get();
+    }
+
+    public int pagesScreened() {
+        return pagesScreened.get();
+    }
+
+    public int pagesScreenCleared() {
+        return pagesScreenCleared.get();
+    }
+
+    public int pagesLargeModel() {
+        return pagesLargeModel.get();
+    }
+
+    /** Pages the large model could not be reached for; they carry local findings only. */
+    public int pagesDegraded() {
+        return pagesDegraded.get();
+    }
+
+    public int screeningCalls() {
+        return screeningCalls.get();
+    }
+
+    public long screeningTokens() {
+        return screeningTokens.get();
+    }
+
+    public int largeModelCalls() {
+        return largeModelCalls.get();
+    }
+
+    public long largeModelTokens() {
+        return largeModelTokens.get();
+    }
+
+    public double screeningCost() {
+        return screeningTokens.get() * screeningPricePerMTok / 1_000_000;
+    }
+
+    public double largeModelCost() {
+        return largeModelTokens.get() * largeModelPricePerMTok / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d pages: %d cleared by rules, %d from cache, %d of %d screened out, %d to large model "
+                        + "(%d degraded); screening %d calls / %d tokens (~$%.4f), large model %d calls / %d tokens (~$%.4f)",
+                pagesRequested(), pagesRuleCleared(), pagesFromCache(), pagesScreenCleared(), pagesScreened(),
+                pagesLargeModel(), pagesDegraded(), screeningCalls(), screeningTokens(), screeningCost(),
+                largeModelCalls(), largeModelTokens(), largeModelCost());
+    }
+}
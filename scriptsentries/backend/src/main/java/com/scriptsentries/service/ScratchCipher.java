@@ -0,0 +1,84 @@
+package com.scriptsentries.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * AES-256-GCM for scan scratch (page text kept only so a scan can resume).
+ *
+ * The key comes from {@code scriptsentries.scan.scratch-key} (base64, 32 bytes). Without
+ * one a random key is generated per process and the cipher is not {@link #isDurable
+ * durable}: scratch written before a restart can no longer be read, so it is wiped at
+ * startup and scans cut off by the restart must be uploaded again. Distributed scanning
+ * refuses to start without a key.
+ */
+@Component
+@Slf4j
+public class ScratchCipher {
+
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKey key;
+    private final boolean durable;
+    private final SecureRandom random = new SecureRandom();
+
+    public ScratchCipher(@Value("${scriptsentries.scan.scratch-key:}") String base64Key) throws GeneralSecurityException {
+        if (base64Key == null || base64Key.isBlank()) {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            this.key = generator.generateKey();
+            this.durable = false;
+            log.error("No scriptsentries.scan.scratch-key (SCRATCH_KEY) configured: scans interrupted by a restart "
+                    + "cannot be resumed and must be uploaded again. Set a base64 32-byte key in production.");
+        } else {
+            byte[] raw = Base64.getDecoder().decode(base64Key.trim());
+            if (raw.length != 32) {
+                throw new IllegalStateException("scriptsentries.scan.scratch-key must be 32 bytes (base64)");
+            }
+            this.key = new SecretKeySpec(raw, "AES");
+            this.durable = true;
+        }
+    }
+
+    /** Whether scratch written now can still be read after a restart (a key is configured). */
+    public boolean isDurable() {
+        return durable;
+    }
+
+    public byte[] encrypt(String plaintext) {
+        try {
+            byte[] iv = new byte[IV_BYTES];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.allocate(IV_BYTES + ciphertext.length).put(iv).put(ciphertext).array();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Scratch encryption failed", e);
+        }
+    }
+
+    /** @throws IllegalStateException if the data was written under another key or tampered with */
+    public String decrypt(byte[] data) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, data, 0, IV_BYTES));
+            return new String(cipher.doFinal(data, IV_BYTES, data.length - IV_BYTES), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Scratch cannot be decrypted", e);
+        }
+    }
+}
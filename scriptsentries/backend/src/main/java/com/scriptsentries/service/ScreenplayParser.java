@@ -0,0 +1,241 @@
+package com.scriptsentries.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Recovers screenplay structure from extracted page text: scenes (opened by an
+ * {@code INT.}/{@code EXT.} slugline), character cues, dialogue, parentheticals, action
+ * and transitions, each located by page and character offset.
+ *
+ * PDF text has lost its indentation, so elements are told apart by their shape: a
+ * character cue is a short upper-case line, not ending in a period, after a blank line
+ * with text right below it, and everything up to the next blank line is that
+ * character's dialogue. Page numbers,
+ * {@code (MORE)} and {@code CONTINUED} lines are skipped, so a speech or a scene cut by
+ * a page break continues on the next page. Text before the first slugline (title page,
+ * {@code FADE IN:}) forms scene 0 without a heading.
+ *
+ * One pass over the lines; the slugline pattern only runs on lines that start like one.
+ * Stateless and thread-safe.
+ */
+@Component
+public class ScreenplayParser {
+
+    private static final Pattern SLUGLINE = Pattern.compile(
+            "^(?:\\d+[A-Z]?\\s+)?(?:INT\\.?/EXT|EXT\\.?/INT|I/E|INT|EXT|EST)[./\\s].*");
+    private static final Pattern PAGE_NUMBER = Pattern.compile("^\\d{1,3}[A-Z]?\\.?$");
+    private static final Pattern CUE_EXTENSION = Pattern.compile("\\s*\\([^)]*\\)");
+    private static final int MAX_CUE_LENGTH = 40;
+
+    public enum BlockKind { ACTION, CHARACTER, PARENTHETICAL, DIALOGUE, TRANSITION }
+
+    /** Consecutive lines of one kind on one page: {@code [start, end)} in the page text. */
+    public record Block(BlockKind kind, int page, int start, int end, String character) {}
+
+    /** Where a scene's text lies on one of its pages: {@code [start, end)} in the page text. */
+    public record Segment(int page, int start, int end) {}
+
+    /**
+     * One scene; {@code heading} is its slugline (null for scene 0), {@code characters}
+     * the speaking characters in order of first cue.
+     */
+    public record Scene(int number, String heading, int startPage, int endPage,
+                        Set<String> characters, List<Segment> segments, List<Block> blocks) {
+
+        public int dialogueBlocks() {
+            return (int) blocks.stream().filter(b -> b.kind() == BlockKind.DIALOGUE).count();
+        }
+
+        public int actionBlocks() {
+            return (int) blocks.stream().filter(b -> b.kind() == BlockKind.ACTION).count();
+        }
+    }
+
+    /** The scenes of a run of pages, in order. Empty when the text has no slugline at all. */
+    public record Index(List<Scene> scenes) {
+
+        /** Scenes that open with a slugline, i.e. without scene 0. */
+        public long headedScenes() {
+            return scenes.stream().filter(s -> s.heading() != null).count();
+        }
+    }
+
+    /**
+     * Indexes {@code pages} (index 0 = page 1). Null entries are pages outside the run
+     * being analyzed; scenes continue across them, without segments there.
+     */
+    public Index parse(List<String> pages) {
+        Builder builder = new Builder();
+        for (int i = 0; i < pages.size(); i++) {
+            String text = pages.get(i);
+            if (text != null && !text.isEmpty()) builder.page(i + 1, text);
+        }
+        return builder.build();
+    }
+
+    private static final class Builder {
+        private final List<Scene> scenes = new ArrayList<>();
+        private boolean sawSlugline;
+        private int number;
+        private String heading;
+        private int startPage;
+        private int endPage;
+        private Set<String> characters = new LinkedHashSet<>();
+        private List<Segment> segments = new ArrayList<>();
+        private List<Block> blocks = new ArrayList<>();
+        private int segmentStart = -1;
+
+        private BlockKind kind;
+        private int blockStart;
+        private int blockEnd;
+        private String speaker;
+
+        private boolean previousBlank = true;
+
+        void page(int page, String text) {
+            if (startPage == 0) startPage = page;
+            segmentStart = 0;
+            endPage = page;
+            // A cue may open the page: "MAYA (CONT'D)" after a speech cut by the break
+            previousBlank = true;
+            int lineStart = 0;
+            while (lineStart <= text.length()) {
+                int lineEnd = text.indexOf('\n', lineStart);
+                if (lineEnd < 0) lineEnd = text.length();
+                line(page, text, lineStart, lineEnd);
+                lineStart = lineEnd + 1;
+            }
+            closeBlock(page);
+            closeSegment(page, text.length());
+        }
+
+        private void line(int page, String text, int start, int end) {
+            String line = text.substring(start, end).strip();
+            if (line.isEmpty()) {
+                closeBlock(page);
+                speaker = null;
+                previousBlank = true;
+                return;
+            }
+            // Pagination furniture: leaves the open speech or action untouched
+            if (PAGE_NUMBER.matcher(line).matches() || isContinuation(line)) return;
+
+            if (isSlugline(line)) {
+                closeBlock(page);
+                closeSegment(page, start);
+                closeScene();
+                sawSlugline = true;
+                number++;
+                heading = line;
+                startPage = page;
+                endPage = page;
+                segmentStart = start;
+                speaker = null;
+                previousBlank = true;
+                return;
+            }
+
+            BlockKind lineKind;
+            if (speaker == null && isTransition(line)) {
+                lineKind = BlockKind.TRANSITION;
+            } else if (previousBlank && isCue(line) && hasTextBelow(text, end)) {
+                closeBlock(page);
+                speaker = CUE_EXTENSION.matcher(line).replaceAll("").strip();
+                characters.add(speaker);
+                lineKind = BlockKind.CHARACTER;
+            } else if (speaker != null) {
+                lineKind = line.startsWith("(") ? BlockKind.PARENTHETICAL : BlockKind.DIALOGUE;
+            } else {
+                lineKind = BlockKind.ACTION;
+            }
+            if (lineKind != kind) {
+                closeBlock(page);
+                kind = lineKind;
+                blockStart = start;
+            }
+            blockEnd = end;
+            previousBlank = false;
+        }
+
+        private void closeBlock(int page) {
+            if (kind != null) blocks.add(new Block(kind, page, blockStart, blockEnd, speaker));
+            kind = null;
+        }
+
+        private void closeSegment(int page, int end) {
+            if (segmentStart >= 0 && end > segmentStart) segments.add(new Segment(page, segmentStart, end));
+            segmentStart = -1;
+        }
+
+        private void closeScene() {
+            if (!segments.isEmpty() || heading != null) {
+                scenes.add(new Scene(number, heading, startPage, endPage,
+                        Collections.unmodifiableSet(characters), List.copyOf(segments), List.copyOf(blocks)));
+            }
+            characters = new LinkedHashSet<>();
+            segments = new ArrayList<>();
+            blocks = new ArrayList<>();
+        }
+
+        Index build() {
+            closeScene();
+            return new Index(sawSlugline ? List.copyOf(scenes) : List.of());
+        }
+    }
+
+    private static boolean isSlugline(String line) {
+        char first = line.charAt(0);
+        return (first == 'I' || first == 'E' || Character.isDigit(first))
+                && !hasLowerCase(line) && SLUGLINE.matcher(line).matches();
+    }
+
+    private static boolean isTransition(String line) {
+        return !hasLowerCase(line) && (line.endsWith(" TO:") || line.startsWith("FADE ")
+                || line.equals("CUT TO BLACK.") || line.equals("DISSOLVE:"));
+    }
+
+    private static boolean isContinuation(String line) {
+        return line.equals("(MORE)") || line.equals("(CONTINUED)") || line.equals("CONTINUED:")
+                || (line.startsWith("CONTINUED: (") && line.endsWith(")"));
+    }
+
+    /**
+     * Upper case, short, not a sentence: "MAYA", "DR. HOLT (V.O.)", "MAYA (CONT'D)" — but
+     * not "THE DOOR BURSTS OPEN.", an all-caps action line that happens to sit like a cue.
+     */
+    private static boolean isCue(String line) {
+        if (line.length() > MAX_CUE_LENGTH || hasLowerCase(line) || line.endsWith(":") || line.endsWith(".")) {
+            return false;
+        }
+        boolean letter = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isLetter(c)) letter = true;
+            else if (c == '!' || c == '?' || c == ',') return false;
+        }
+        return letter;
+    }
+
+    private static boolean hasTextBelow(String text, int lineEnd) {
+        for (int i = lineEnd + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') return false;
+            if (!Character.isWhitespace(c)) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasLowerCase(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (Character.isLowerCase(line.charAt(i))) return true;
+        }
+        return false;
+    }
+}
@@ -6,29 +6,124 @@ import com.scriptsentries.model.enums.ClearanceStatus;
 import com.scriptsentries.model.enums.RiskCategory;
 import com.scriptsentries.model.enums.RiskSeverity;
 import com.scriptsentries.model.enums.RiskSubCategory;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ScriptAnalysisService {
 
-    private final org.springframework.ai.chat.model.ChatModel chatModel;
+    private final LlmHedger llmHedger;
+    private final PageAnalysisCache pageAnalysisCache;
+    private final AnalysisExecutor analysisExecutor;
+    private final PreFilterEngine preFilterEngine;
+    private final DictionaryMatcher dictionaryMatcher;
+    private final PageScreener pageScreener;
+    private final ScreenplayParser screenplayParser;
+    private final boolean preFilterEnabled;
+    private final boolean skipPagesWithoutCandidates;
+    private final boolean packingEnabled;
+    private final int packingTokenBudget;
+    private final int packingMaxPages;
+    private final boolean sceneUnits;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final boolean streamingEnabled;
+    private final Duration streamStallTimeout;
+    private final Map<RiskItemStreamParser.Outcome, Counter> responseOutcomes = new EnumMap<>(RiskItemStreamParser.Outcome.class);
+    private final Counter retries;
 
+    public ScriptAnalysisService(LlmHedger llmHedger,
+                                 PageAnalysisCache pageAnalysisCache,
+                                 AnalysisExecutor analysisExecutor,
+                                 PreFilterEngine preFilterEngine,
+                                 DictionaryMatcher dictionaryMatcher,
+                                 PageScreener pageScreener,
+                                 ScreenplayParser screenplayParser,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${scriptsentries.analysis.prefilter.enabled:true}") boolean preFilterEnabled,
+                                 @Value("${scriptsentries.analysis.prefilter.skip-pages-without-candidates:false}") boolean skipPagesWithoutCandidates,
+                                 @Value("${scriptsentries.analysis.packing.enabled:true}") boolean packingEnabled,
+                                 @Value("${scriptsentries.analysis.packing.token-budget:2500}") int packingTokenBudget,
+                                 @Value("${scriptsentries.analysis.packing.max-pages:5}") int packingMaxPages,
+                                 @Value("${scriptsentries.analysis.scenes.enabled:false}") boolean sceneUnits,
+                                 @Value("${scriptsentries.analysis.retry.max-attempts:3}") int maxAttempts,
+                                 @Value("${scriptsentries.analysis.retry.backoff:2s}") Duration retryBackoff,
+                                 @Value("${scriptsentries.analysis.streaming.enabled:false}") boolean streamingEnabled,
+                                 @Value("${scriptsentries.analysis.streaming.stall-timeout:30s}") Duration streamStallTimeout) {
+        this.llmHedger = llmHedger;
+        this.pageAnalysisCache = pageAnalysisCache;
+        this.analysisExecutor = analysisExecutor;
+        this.preFilterEngine = preFilterEngine;
+        this.dictionaryMatcher = dictionaryMatcher;
+        this.pageScreener = pageScreener;
+        this.screenplayParser = screenplayParser;
+        this.preFilterEnabled = preFilterEnabled;
+        this.skipPagesWithoutCandidates = skipPagesWithoutCandidates;
+        this.packingEnabled = packingEnabled;
+        this.packingTokenBudget = packingTokenBudget;
+        this.packingMaxPages = packingMaxPages;
+        this.sceneUnits = sceneUnits;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.streamingEnabled = streamingEnabled;
+        this.streamStallTimeout = streamStallTimeout;
+        for (RiskItemStreamParser.Outcome outcome : RiskItemStreamParser.Outcome.values()) {
+            responseOutcomes.put(outcome, Counter.builder("scriptsentries.llm.responses")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .description("Model responses by how much had to be salvaged or repaired")
+                    .register(meterRegistry));
+        }
+        this.retries = Counter.builder("scriptsentries.analysis.retries")
+                .description("Page requests re-sent after an error, an unusable or a cut-off response")
+                .register(meterRegistry);
+    }
 
     record AiPageResponse(List<AiPageAnalysisResult.AiRiskItem> risks) {}
 
+    /**
+     * A page waiting for the model; {@code cacheKey} is where its result will be cached,
+     * {@code ruleFlags} are the pre-filter's findings and {@code hints} the dictionary hits
+     * shown to the model, both merged in when it answers. In scene units, {@code text} may
+     * be only the part of the page that belongs to the unit's scenes ({@code scenePart}).
+     */
+    record PageInput(int pageNumber, String text, String cacheKey,
+                     List<RiskFlag> ruleFlags, List<DictionaryMatcher.DictionaryHit> hints, boolean scenePart) {
+
+        PageInput(int pageNumber, String text, String cacheKey,
+                  List<RiskFlag> ruleFlags, List<DictionaryMatcher.DictionaryHit> hints) {
+            this(pageNumber, text, cacheKey, ruleFlags, hints, false);
+        }
+    }
+
+    /** Part of the page cache key — bump whenever the prompt or the response schema changes. */
+    static final String PROMPT_VERSION = "page-v4";
+
     private static final String SYSTEM_PROMPT_TEMPLATE = """
             You are a Senior Media Law Attorney specializing in Hollywood production clearances.
             Analyze the provided script page for all legal and IP risks.
@@ -75,49 +170,761 @@ public class ScriptAnalysisService {
                GOVERNMENT_AGENCIES_SEALS, MUSIC, PLAYBACK, PRODUCT_MISUSE, REFERENCES, VEHICLES, WARDROBE]
             - If no specific subCategory fits perfectly, you MUST use 'REFERENCES' as the default. Never return null.
 
-            RESPONSE FORMAT:
+            {packing}RESPONSE FORMAT:
             You must return a valid JSON object strictly adhering to this schema:
             {format}
             """;
 
+    /** Spliced into the system prompt only when several pages share one request. */
+    private static final String PACKED_PAGES_RULES = """
+            MULTI-PAGE INPUT:
+            - The input contains several script pages, each starting with a "PAGE <n>:" header.
+            - Analyze every page; report each risk once, on the page where it appears.
+            - You MUST set 'pageNumber' on every risk to the <n> of the page it was found on.
+            - List risks in page order: every risk of a page before any risk of a later page.
+
+            """;
+
+    /** Spliced into the system prompt when the input was cut along scene lines. */
+    private static final String SCENE_UNITS_RULES = """
+            SCENE INPUT:
+            - The input holds whole scenes, cut at their sluglines (INT./EXT.), not at page breaks.
+            - A scene may run on across a "PAGE <n>:" header: read its action and dialogue as one
+              continuous scene, but still set 'pageNumber' to the page the risk appears on.
+
+            """;
+
+    /** Collects every flag of the script in memory; for small inputs only — scans use a listener. */
     public List<RiskFlag> analyzeScript(List<String> pages, Script script) {
-        log.info("Analyzing {} pages...", pages.size());
+        List<RiskFlag> flags = Collections.synchronizedList(new ArrayList<>());
+        analyzeScript(pages, script, (pageNumber, pageFlags) -> flags.addAll(pageFlags));
+        return flags;
+    }
+
+    /**
+     * Same as {@link #analyzeScript(List, Script)} but reports every finished page to
+     * {@code listener} so callers can track progress while the scan runs.
+     */
+    public int analyzeScript(List<String> pages, Script script, PageResultListener listener) {
+        return analyzeScript(pages, script, page -> true, listener);
+    }
+
+    /**
+     * Analyzes only the pages for which {@code needsAnalysis} is true (1-based page
+     * numbers); the rest are neither sent to the model nor reported to {@code listener}.
+     *
+     * The deterministic pre-filter runs first: its phone/URL/address/plate flags are kept
+     * as-is, and pages it finds no candidate entity on skip the model entirely. Dictionary
+     * hits are passed to the model as hints and kept as LOW flags where the model does not
+     * report the entity itself; under {@link Script.ScanProfile#FAST} only pages with a
+     * dictionary or rule hit reach the model. Cached
+     * pages are answered locally. Pages left without a dictionary hit are then screened
+     * by a small model ({@link PageScreener}); only its candidates go to the large model,
+     * the rest keep their rule flags. With packing enabled, the remaining pages are
+     * grouped in order into requests of up to {@code packing.token-budget} page tokens,
+     * so the long system prompt and schema are paid once per group instead of per page.
+     * With {@code scenes.enabled}, the remaining text is cut along scene lines instead
+     * ({@link #sceneUnits}), so the model reads a conversation whole, not split at a page break.
+     *
+     * Flags are only handed to {@code listener}, never collected here, so memory per scan
+     * does not grow with the page count. Where the pages went and what each model tier
+     * cost is reported once at the end through {@link PageResultListener#onRouting}.
+     *
+     * @return number of flags reported
+     */
+    public int analyzeScript(List<String> pages, Script script,
+                             IntPredicate needsAnalysis, PageResultListener listener) {
+        return analyzeScript(pages, script, analysisExecutor.newScan(AnalysisExecutor.Tenancy.DEFAULT),
+                needsAnalysis, listener);
+    }
+
+    /**
+     * Same as {@link #analyzeScript(List, Script, IntPredicate, PageResultListener)}, with the
+     * model calls queued under {@code scanSlots}: its tenant's fair share of the analysis
+     * slots and its per-scan cap, which calls for several parts of one scan share.
+     */
+    public int analyzeScript(List<String> pages, Script script, AnalysisExecutor.ScanSlots scanSlots,
+                             IntPredicate needsAnalysis, PageResultListener listener) {
         var outputConverter = new BeanOutputConverter<>(new ParameterizedTypeReference<AiPageResponse>() {});
 
-        return IntStream.range(0, pages.size())
-                .parallel()
-                .mapToObj(i -> analyzeSinglePage(i + 1, pages.get(i), script, outputConverter))
-                .flatMap(List::stream)
+        int flagCount = 0;
+        List<PageInput> pending = new ArrayList<>();
+        int requested = 0;
+        int fromCache = 0;
+        int skipped = 0;
+        int ruleFlagCount = 0;
+        long preFilterNanos = 0;
+        boolean fast = script.getScanProfile() == Script.ScanProfile.FAST;
+        String promptVersion = PROMPT_VERSION + "/" + dictionaryMatcher.version();
+        ScanRouting routing = pageScreener.newRouting();
+
+        for (int i = 0; i < pages.size(); i++) {
+            int pageNumber = i + 1;
+            if (!needsAnalysis.test(pageNumber)) continue;
+            requested++;
+
+            String pageText = pages.get(i);
+            if (pageText == null || pageText.isBlank()) {
+                listener.onPageComplete(pageNumber, List.of());
+                continue;
+            }
+
+            // Pattern-matchable risks and known entities never need the model to be found
+            List<RiskFlag> ruleFlags = List.of();
+            List<DictionaryMatcher.DictionaryHit> hints = List.of();
+            if (preFilterEnabled) {
+                long start = System.nanoTime();
+                PreFilterEngine.PageScan scan = preFilterEngine.scan(pageText);
+                hints = dictionaryMatcher.scan(pageText);
+                preFilterNanos += System.nanoTime() - start;
+                ruleFlags = scan.matches().stream().map(m -> toRiskFlag(m, pageNumber, script)).toList();
+                ruleFlagCount += ruleFlags.size();
+
+                boolean needsModel = fast
+                        ? !hints.isEmpty() || !ruleFlags.isEmpty()
+                        : scan.hasCandidates() || !hints.isEmpty() || !skipPagesWithoutCandidates;
+                if (!needsModel) {
+                    List<RiskFlag> pageFlags = merge(ruleFlags, hints, List.of(), pageNumber, script);
+                    listener.onPageComplete(pageNumber, pageFlags);
+                    flagCount += pageFlags.size();
+                    skipped++;
+                    continue;
+                }
+            }
+
+            // Unchanged page from an earlier upload? Reuse its structured result.
+            String cacheKey = pageAnalysisCache.key(promptVersion, pageText);
+            Optional<List<AiPageAnalysisResult.AiRiskItem>> cached = pageAnalysisCache.get(cacheKey);
+            if (cached.isPresent()) {
+                List<RiskFlag> pageFlags = merge(ruleFlags, hints, toRiskFlags(cached.get(), pageNumber, script),
+                        pageNumber, script);
+                listener.onPageComplete(pageNumber, pageFlags);
+                flagCount += pageFlags.size();
+                fromCache++;
+                continue;
+            }
+            pending.add(new PageInput(pageNumber, pageText, cacheKey, ruleFlags, hints));
+        }
+
+        if (preFilterEnabled) {
+            log.info("Pre-filter ({} profile): {} rule flags, {} pages need no model call ({} ms)",
+                    script.getScanProfile(), ruleFlagCount, skipped, preFilterNanos / 1_000_000);
+        }
+
+        routing.pagesRequested(requested);
+        routing.ruleCleared(skipped);
+        routing.fromCache(fromCache);
+
+        // Cascade: pages the screening model clears never reach the large model
+        Set<Integer> candidates = pageScreener.candidates(pending, routing);
+        for (PageInput page : pending) {
+            if (candidates.contains(page.pageNumber())) continue;
+            List<RiskFlag> pageFlags = merge(page.ruleFlags(), page.hints(), List.of(), page.pageNumber(), script);
+            listener.onPageComplete(page.pageNumber(), pageFlags);
+            flagCount += pageFlags.size();
+        }
+        pending.removeIf(page -> !candidates.contains(page.pageNumber()));
+        routing.sentToLargeModel(pending.size());
+
+        ScreenplayParser.Index index = sceneUnits && !pending.isEmpty() ? screenplayParser.parse(pages) : null;
+        List<List<PageInput>> units;
+        PageOutcomes outcomes = reportPages(script, routing, listener);
+        if (index != null && !index.scenes().isEmpty()) {
+            units = sceneUnits(pending, index);
+            outcomes = new ScenePages(pending, units, outcomes);
+            log.info("Scene units: {} scenes on pages {}-{}", index.headedScenes(),
+                    index.scenes().get(0).startPage(), index.scenes().get(index.scenes().size() - 1).endPage());
+        } else {
+            units = packingEnabled ? pack(pending) : pending.stream().map(List::of).toList();
+        }
+        log.info("Analyzing {} of {} pages: {} from cache, {} screened out, {} in {} model requests",
+                requested, pages.size(), fromCache, routing.pagesScreenCleared(), pending.size(), units.size());
+
+        // Model calls run on the dedicated virtual-thread executor, bounded by the
+        // per-scan cap and the tenant's fair share of the global slots, not by core count.
+        PageOutcomes unitOutcomes = outcomes;
+        List<CompletableFuture<Integer>> futures = units.stream()
+                .map(unit -> analysisExecutor.submit(scanSlots,
+                        () -> analyzeUnit(unit, script, outputConverter, routing, listener, unitOutcomes)))
                 .toList();
+
+        for (CompletableFuture<Integer> future : futures) {
+            flagCount += future.join();
+        }
+        log.info("Routing for '{}': {}", script.getFilename(), routing);
+        listener.onRouting(routing);
+        return flagCount;
     }
 
-    private List<RiskFlag> analyzeSinglePage(int pageNumber, String pageText, Script script, BeanOutputConverter<AiPageResponse> converter) {
-        if (pageText == null || pageText.isBlank()) return List.of();
+    /** Greedy, order-preserving grouping of pages into requests under the token budget. */
+    private List<List<PageInput>> pack(List<PageInput> pages) {
+        List<List<PageInput>> units = new ArrayList<>();
+        List<PageInput> current = new ArrayList<>();
+        int tokens = 0;
+
+        for (PageInput page : pages) {
+            int pageTokens = LlmGateway.approxTokens(page.text());
+            if (!current.isEmpty() && (tokens + pageTokens > packingTokenBudget || current.size() >= packingMaxPages)) {
+                units.add(current);
+                current = new ArrayList<>();
+                tokens = 0;
+            }
+            current.add(page);
+            tokens += pageTokens;
+        }
+        if (!current.isEmpty()) units.add(current);
+        return units;
+    }
+
+    /**
+     * Cuts the pending pages along scene lines: each unit is one scene or, with packing,
+     * consecutive scenes under the same token and page limits as {@link #pack}. A scene
+     * over the limits alone is cut at its page breaks. A page holding the end of one
+     * scene and the start of the next can therefore be split between two units; each
+     * unit gets only its part of the text and the dictionary hints in that part.
+     */
+    private List<List<PageInput>> sceneUnits(List<PageInput> pending, ScreenplayParser.Index index) {
+        Map<Integer, PageInput> byNumber = new HashMap<>();
+        pending.forEach(page -> byNumber.put(page.pageNumber(), page));
+
+        ScenePacker packer = new ScenePacker();
+        Set<Integer> covered = new HashSet<>();
+        for (ScreenplayParser.Scene scene : index.scenes()) {
+            List<ScenePacker.Slice> slices = new ArrayList<>();
+            for (ScreenplayParser.Segment segment : scene.segments()) {
+                PageInput page = byNumber.get(segment.page());
+                if (page == null) continue;
+                covered.add(page.pageNumber());
+                int tokens = LlmGateway.approxTokens(page.text().substring(segment.start(), segment.end()));
+                slices.add(new ScenePacker.Slice(page, segment.start(), segment.end(), tokens));
+            }
+            if (slices.isEmpty()) continue;
+            if (!packingEnabled || !packer.fits(slices)) packer.flush();
+            if (packer.fits(slices)) {
+                packer.add(slices);
+            } else {
+                for (ScenePacker.Slice slice : slices) {
+                    if (!packer.fits(List.of(slice))) packer.flush();
+                    packer.add(List.of(slice));
+                }
+            }
+        }
+        packer.flush();
+        // Every pending page must be in some unit, or it would never be reported
+        for (PageInput page : pending) {
+            if (covered.contains(page.pageNumber())) continue;
+            packer.add(List.of(new ScenePacker.Slice(page, 0, page.text().length(), LlmGateway.approxTokens(page.text()))));
+            packer.flush();
+        }
+        return packer.units.stream().map(ScriptAnalysisService::toParts).toList();
+    }
+
+    /** Joins a unit's slices of the same page (always adjacent) into one part of that page. */
+    private static List<PageInput> toParts(List<ScenePacker.Slice> slices) {
+        List<PageInput> parts = new ArrayList<>();
+        int i = 0;
+        while (i < slices.size()) {
+            PageInput page = slices.get(i).page();
+            int start = slices.get(i).start();
+            int end = slices.get(i).end();
+            while (++i < slices.size() && slices.get(i).page() == page) end = slices.get(i).end();
+            int from = start;
+            int to = end;
+            List<DictionaryMatcher.DictionaryHit> hints = page.hints().stream()
+                    .filter(hit -> hit.start() >= from && hit.start() < to).toList();
+            parts.add(new PageInput(page.pageNumber(), page.text().substring(start, end).strip(), page.cacheKey(),
+                    page.ruleFlags(), hints, true));
+        }
+        return parts;
+    }
+
+    /** Greedy grouping of scene slices into units under the packing limits. */
+    private final class ScenePacker {
+        record Slice(PageInput page, int start, int end, int tokens) {}
+
+        private final List<List<Slice>> units = new ArrayList<>();
+        private List<Slice> current = new ArrayList<>();
+        private final Set<Integer> pages = new HashSet<>();
+        private int tokens;
+
+        boolean fits(List<Slice> slices) {
+            if (current.isEmpty() && slices.size() == 1) return true;
+            Set<Integer> touched = new HashSet<>(pages);
+            int more = 0;
+            for (Slice slice : slices) {
+                touched.add(slice.page().pageNumber());
+                more += slice.tokens();
+            }
+            return tokens + more <= packingTokenBudget && touched.size() <= packingMaxPages;
+        }
+
+        void add(List<Slice> slices) {
+            for (Slice slice : slices) {
+                current.add(slice);
+                pages.add(slice.page().pageNumber());
+                tokens += slice.tokens();
+            }
+        }
+
+        void flush() {
+            if (current.isEmpty()) return;
+            units.add(current);
+            current = new ArrayList<>();
+            pages.clear();
+            tokens = 0;
+        }
+    }
+
+    /**
+     * Sends one request for {@code unit} and reports each of its pages to {@code listener}.
+     * Only pages without a usable answer are re-requested — after an error, an unusable
+     * response, or a response cut off before reaching them — with exponential backoff;
+     * a packed unit that still has several such pages is split so one bad page cannot
+     * sink its neighbours. Pages that fail on their own are reported through
+     * {@link PageResultListener#onPageFailed}, never as empty results. If the model is
+     * unavailable altogether (every endpoint's circuit open), the remaining pages are not
+     * retried but completed from the local detectors alone and reported through
+     * {@link PageResultListener#onPageDegraded}. Pages are reported through {@code outcomes}.
+     *
+     * @return number of flags reported
+     */
+    private int analyzeUnit(List<PageInput> unit, Script script, BeanOutputConverter<AiPageResponse> converter,
+                            ScanRouting routing, PageResultListener listener, PageOutcomes outcomes) {
+        List<PageInput> remaining = new ArrayList<>(unit);
+        int[] flagCount = {0};
+        String error = null;
+        boolean circuitOpen = false;
+        for (int attempt = 1; attempt <= maxAttempts && !remaining.isEmpty() && !circuitOpen; attempt++) {
+            if (attempt > 1) {
+                retries.increment();
+                if (!sleep(retryBackoff.multipliedBy(1L << (attempt - 2)))) break;
+            }
+            Set<Integer> completed = new HashSet<>();
+            Set<Integer> cutOff = new HashSet<>();
+            BiConsumer<PageInput, List<AiPageAnalysisResult.AiRiskItem>> pageDone = (page, items) -> {
+                flagCount[0] += outcomes.done(page, items, !cutOff.contains(page.pageNumber()));
+                completed.add(page.pageNumber());
+            };
+            try {
+                Map<Integer, List<AiPageAnalysisResult.AiRiskItem>> settled = streamingEnabled
+                        ? streamRisks(remaining, converter, script, routing, listener, pageDone, cutOff)
+                        : requestRisks(remaining, converter, routing, cutOff);
+                for (PageInput page : remaining) {
+                    List<AiPageAnalysisResult.AiRiskItem> items = settled.get(page.pageNumber());
+                    if (items != null && !completed.contains(page.pageNumber())) pageDone.accept(page, items);
+                }
+                if (completed.size() < remaining.size()) {
+                    error = "Model response cut off";
+                    log.warn("Response for page(s) {} cut off, {} page(s) left (attempt {}/{})",
+                            pageNumbers(remaining), remaining.size() - completed.size(), attempt, maxAttempts);
+                }
+            } catch (LlmEndpointPool.CircuitOpenException e) {
+                circuitOpen = true;
+            } catch (Exception e) {
+                error = e.getMessage();
+                log.warn("Error analyzing page(s) {} (attempt {}/{}): {}", pageNumbers(remaining), attempt, maxAttempts, error);
+            } finally {
+                remaining.removeIf(page -> completed.contains(page.pageNumber()));
+            }
+        }
+
+        if (circuitOpen) {
+            // Fail fast: local findings now, the model's once the page is re-run
+            log.warn("Model unavailable, page(s) {} analyzed by local detectors only", pageNumbers(remaining));
+            for (PageInput page : remaining) {
+                flagCount[0] += outcomes.degraded(page);
+            }
+        } else if (remaining.size() > 1) {
+            for (PageInput page : remaining) {
+                flagCount[0] += analyzeUnit(List.of(page), script, converter, routing, listener, outcomes);
+            }
+        } else if (remaining.size() == 1) {
+            log.error("Giving up on page {}: {}", remaining.get(0).pageNumber(), error);
+            outcomes.failed(remaining.get(0), error);
+        }
+        return flagCount[0];
+    }
+
+    /** How the pages of a unit are reported once the model has answered for them, or not. */
+    private interface PageOutcomes {
+        /**
+         * {@code complete} is false for a page whose answer was cut off: its items stand for
+         * this scan but are not cached. @return number of flags reported
+         */
+        int done(PageInput page, List<AiPageAnalysisResult.AiRiskItem> items, boolean complete);
+
+        /** The model is unavailable; @return number of flags reported */
+        int degraded(PageInput page);
+
+        void failed(PageInput page, String error);
+    }
+
+    /** Reports each page to {@code listener} as it is settled. */
+    private PageOutcomes reportPages(Script script, ScanRouting routing, PageResultListener listener) {
+        return new PageOutcomes() {
+            @Override
+            public int done(PageInput page, List<AiPageAnalysisResult.AiRiskItem> items, boolean complete) {
+                return completePage(page, items, complete, script, listener);
+            }
+
+            @Override
+            public int degraded(PageInput page) {
+                List<RiskFlag> pageFlags = merge(page.ruleFlags(), page.hints(), List.of(), page.pageNumber(), script);
+                listener.onPageDegraded(page.pageNumber(), pageFlags);
+                routing.degraded(1);
+                return pageFlags.size();
+            }
+
+            @Override
+            public void failed(PageInput page, String error) {
+                listener.onPageFailed(page.pageNumber(), error);
+            }
+        };
+    }
+
+    /**
+     * Reassembles pages split between scene units: a page is reported once every unit
+     * holding a part of it has settled, with the model's items of all parts — failed if
+     * any part failed, degraded (local findings only) if any part was.
+     */
+    private static final class ScenePages implements PageOutcomes {
+        private final PageOutcomes report;
+        private final Map<Integer, Assembly> pages = new HashMap<>();
+
+        private static final class Assembly {
+            private final PageInput whole;
+            private int open;
+            private final List<AiPageAnalysisResult.AiRiskItem> items = new ArrayList<>();
+            private boolean degraded;
+            private boolean complete = true;
+            private String error;
 
+            Assembly(PageInput whole) {
+                this.whole = whole;
+            }
+        }
+
+        /** {@code pending}: the whole pages, reported once their parts in {@code units} settle. */
+        ScenePages(List<PageInput> pending, List<List<PageInput>> units, PageOutcomes report) {
+            this.report = report;
+            pending.forEach(page -> pages.put(page.pageNumber(), new Assembly(page)));
+            units.forEach(unit -> unit.forEach(part -> pages.get(part.pageNumber()).open++));
+        }
+
+        @Override
+        public int done(PageInput part, List<AiPageAnalysisResult.AiRiskItem> items, boolean complete) {
+            Assembly assembly;
+            synchronized (this) {
+                assembly = pages.get(part.pageNumber());
+                assembly.items.addAll(items);
+                assembly.complete &= complete;
+                if (--assembly.open > 0) return 0;
+            }
+            return finish(assembly);
+        }
+
+        @Override
+        public int degraded(PageInput part) {
+            Assembly assembly;
+            synchronized (this) {
+                assembly = pages.get(part.pageNumber());
+                assembly.degraded = true;
+                if (--assembly.open > 0) return 0;
+            }
+            return finish(assembly);
+        }
+
+        @Override
+        public void failed(PageInput part, String error) {
+            Assembly assembly;
+            synchronized (this) {
+                assembly = pages.get(part.pageNumber());
+                assembly.error = error;
+                if (--assembly.open > 0) return;
+            }
+            finish(assembly);
+        }
+
+        private int finish(Assembly assembly) {
+            if (assembly.error != null) {
+                report.failed(assembly.whole, assembly.error);
+                return 0;
+            }
+            // A degraded page is re-run whole later; partial model items are not kept
+            return assembly.degraded
+                    ? report.degraded(assembly.whole)
+                    : report.done(assembly.whole, assembly.items, assembly.complete);
+        }
+    }
+
+    /**
+     * Caches a page's model result, merges in its local flags and reports it. A page whose
+     * answer was cut off is not cached, so the next scan asks for it again in full.
+     */
+    private int completePage(PageInput page, List<AiPageAnalysisResult.AiRiskItem> items, boolean complete,
+                             Script script, PageResultListener listener) {
+        if (complete) pageAnalysisCache.put(page.cacheKey(), items);
+        List<RiskFlag> pageFlags = merge(page.ruleFlags(), page.hints(),
+                toRiskFlags(items, page.pageNumber(), script), page.pageNumber(), script);
+        listener.onPageComplete(page.pageNumber(), pageFlags);
+        return pageFlags.size();
+    }
+
+    private Map<Integer, List<AiPageAnalysisResult.AiRiskItem>> requestRisks(List<PageInput> unit,
+                                                                              BeanOutputConverter<AiPageResponse> converter,
+                                                                              ScanRouting routing,
+                                                                              Set<Integer> cutOff) {
+        Prompt prompt = prompt(unit, converter);
+
+        // 2. Call the model through the gateway (paced to RPM/TPM, 429s retried, not dropped),
+        //    hedged when slow and bounded by the per-request deadline
+        // We still handle the string content ourselves to avoid "Error while extracting response"
+        int estimated = estimateTokens(prompt);
+        var response = llmHedger.call(prompt, estimated);
+        long used = LlmGateway.totalTokens(response);
+        routing.largeModelCall(used > 0 ? used : estimated);
+        String rawJson = response.getResult().getOutput().getContent();
+
+        // 3. Parse tolerantly: fences, comments and truncation cost only what is actually lost
+        RiskItemStreamParser.Result parsed = RiskItemStreamParser.parse(rawJson);
+        checkUsable(parsed.outcome(), unit);
+        Map<Integer, List<AiPageAnalysisResult.AiRiskItem>> byPage = splitByPage(parsed.items(), unit);
+        if (parsed.truncated()) {
+            // The cut page keeps what was recovered; pages after it were never reached
+            int lastReached = parsed.items().stream().mapToInt(item -> pageFor(item, unit)).max().orElse(0);
+            cutOff.add(lastReached);
+            unit.stream().filter(p -> p.pageNumber() > lastReached).forEach(p -> byPage.remove(p.pageNumber()));
+            unit.stream().filter(p -> p.pageNumber() <= lastReached).forEach(p -> byPage.putIfAbsent(p.pageNumber(), List.of()));
+        } else {
+            unit.forEach(p -> byPage.putIfAbsent(p.pageNumber(), List.of()));
+        }
+        return byPage;
+    }
+
+    /** Counts the parse outcome; an unusable response fails the attempt so it is retried. */
+    private void checkUsable(RiskItemStreamParser.Outcome outcome, List<PageInput> unit) {
+        responseOutcomes.get(outcome).increment();
+        if (outcome == RiskItemStreamParser.Outcome.UNUSABLE) {
+            throw new IllegalStateException("No risks recoverable from model response for page(s) " + pageNumbers(unit));
+        }
+        if (outcome != RiskItemStreamParser.Outcome.CLEAN) {
+            log.debug("Model response for page(s) {} {}", pageNumbers(unit), outcome.name().toLowerCase());
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #requestRisks}: each risk is parsed as soon as its JSON
+     * object closes and previewed through {@link PageResultListener#onRiskFound}. Since
+     * the model lists risks in page order, a risk on page n completes every earlier page
+     * of the unit right away through {@code pageDone}, without waiting for the end of the
+     * response. Returns the items of the pages still open when the stream ends; if it
+     * was cut off, only the page it was cut on, which is added to {@code cutOff}.
+     */
+    private Map<Integer, List<AiPageAnalysisResult.AiRiskItem>> streamRisks(
+            List<PageInput> unit, BeanOutputConverter<AiPageResponse> converter, Script script,
+            ScanRouting routing, PageResultListener listener, BiConsumer<PageInput, List<AiPageAnalysisResult.AiRiskItem>> pageDone,
+            Set<Integer> cutOff) {
+        Map<Integer, List<AiPageAnalysisResult.AiRiskItem>> open = new LinkedHashMap<>();
+        unit.forEach(page -> open.put(page.pageNumber(), new ArrayList<>()));
+        int[] next = {0};   // index in unit of the first page still open
+
+        RiskItemStreamParser parser = new RiskItemStreamParser(item -> {
+            int pageNumber = pageFor(item, unit);
+            if (!open.containsKey(pageNumber)) pageNumber = unit.get(next[0]).pageNumber();
+            while (unit.get(next[0]).pageNumber() < pageNumber) {
+                PageInput done = unit.get(next[0]++);
+                pageDone.accept(done, open.remove(done.pageNumber()));
+            }
+            open.get(pageNumber).add(item);
+            listener.onRiskFound(pageNumber, mapToRiskFlag(item, pageNumber, script));
+        });
+
+        Prompt prompt = prompt(unit, converter);
+        int estimated = estimateTokens(prompt);
+        llmHedger.stream(prompt, estimated, streamStallTimeout, parser::feed);
+        routing.largeModelCall(estimated);
+        checkUsable(parser.finish(), unit);
+        if (parser.truncated()) {
+            int cutOn = unit.get(next[0]).pageNumber();
+            cutOff.add(cutOn);
+            open.keySet().removeIf(pageNumber -> pageNumber > cutOn);
+        }
+        return open;
+    }
+
+    private static int estimateTokens(Prompt prompt) {
+        return LlmGateway.estimateTokens(prompt.getContents());
+    }
+
+    private Prompt prompt(List<PageInput> unit, BeanOutputConverter<AiPageResponse> converter) {
+        // 1. Manually prepare the text with the schema
+        // We use .replace to avoid the Template Engine brace error
+        String systemText = SYSTEM_PROMPT_TEMPLATE
+                .replace("{packing}", (unit.size() > 1 ? PACKED_PAGES_RULES : "")
+                        + (unit.get(0).scenePart() ? SCENE_UNITS_RULES : ""))
+                .replace("{format}", converter.getFormat());
+
+        String userText = unit.stream()
+                .map(page -> "PAGE " + page.pageNumber() + ":\n\n" + page.text() + hintsBlock(page.hints()))
+                .collect(Collectors.joining("\n\n"));
+
+        SystemMessage systemMessage = new SystemMessage(systemText);
+        UserMessage userMessage = new UserMessage(userText);
+
+        return new Prompt(List.of(systemMessage, userMessage));
+    }
+
+    /**
+     * Routes each item to its page. Items the model left without a valid pageNumber are
+     * placed on the page whose text contains their snippet or entity, else the first page.
+     */
+    private Map<Integer, List<AiPageAnalysisResult.AiRiskItem>> splitByPage(List<AiPageAnalysisResult.AiRiskItem> items,
+                                                                           List<PageInput> unit) {
+        Map<Integer, List<AiPageAnalysisResult.AiRiskItem>> byPage = new HashMap<>();
+        if (unit.size() == 1) {
+            byPage.put(unit.get(0).pageNumber(), items);
+            return byPage;
+        }
+
+        for (AiPageAnalysisResult.AiRiskItem item : items) {
+            byPage.computeIfAbsent(pageFor(item, unit), p -> new ArrayList<>()).add(item);
+        }
+        return byPage;
+    }
+
+    private int pageFor(AiPageAnalysisResult.AiRiskItem item, List<PageInput> unit) {
+        if (unit.size() == 1) return unit.get(0).pageNumber();
+        Integer claimed = item.getPageNumber();
+        return claimed != null && unit.stream().anyMatch(p -> p.pageNumber() == claimed)
+                ? claimed
+                : locatePage(item, unit);
+    }
+
+    private int locatePage(AiPageAnalysisResult.AiRiskItem item, List<PageInput> unit) {
+        for (String needle : new String[]{item.getSnippet(), item.getEntityName()}) {
+            if (needle == null || needle.isBlank()) continue;
+            for (PageInput page : unit) {
+                if (page.text().contains(needle)) return page.pageNumber();
+            }
+        }
+        return unit.get(0).pageNumber();
+    }
+
+    private static boolean sleep(Duration duration) {
         try {
-            // 1. Manually prepare the text with the schema
-            // We use .replace to avoid the Template Engine brace error
-            String systemText = SYSTEM_PROMPT_TEMPLATE.replace("{format}", converter.getFormat());
+            Thread.sleep(duration);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-            SystemMessage systemMessage = new SystemMessage(systemText);
-            UserMessage userMessage = new UserMessage("PAGE " + pageNumber + ":\n\n" + pageText);
+    private static String pageNumbers(List<PageInput> unit) {
+        return unit.stream().map(p -> String.valueOf(p.pageNumber())).collect(Collectors.joining(","));
+    }
+
+    private List<RiskFlag> toRiskFlags(List<AiPageAnalysisResult.AiRiskItem> items, int pageNumber, Script script) {
+        return items.stream().map(item -> mapToRiskFlag(item, pageNumber, script)).toList();
+    }
 
-            // 2. Call the ChatModel directly (This is the most stable method)
-            // This avoids the "Error while extracting response" because we handle the string content ourselves
-            var response = chatModel.call(new Prompt(List.of(systemMessage, userMessage)));
-            String rawJson = response.getResult().getOutput().getContent();
+    /** Dictionary hits appended under a page so the model checks them in context. */
+    private static String hintsBlock(List<DictionaryMatcher.DictionaryHit> hints) {
+        if (hints.isEmpty()) return "";
+        return hints.stream()
+                .map(h -> h.name() + " (" + h.kind().name().toLowerCase().replace('_', ' ') + ")")
+                .collect(Collectors.joining(", ", "\n\nKNOWN ENTITIES ON THIS PAGE (verify in context): ", ""));
+    }
 
-            // 3. Use the converter to turn raw JSON string into your Record
-            AiPageResponse aiResponse = converter.convert(rawJson);
+    /**
+     * Rule flags, then the model's flags minus those restating a rule hit (same
+     * number/URL/address, possibly formatted differently), then a LOW flag for every
+     * dictionary hit the model did not report itself.
+     */
+    private List<RiskFlag> merge(List<RiskFlag> ruleFlags, List<DictionaryMatcher.DictionaryHit> hints,
+                                 List<RiskFlag> aiFlags, int pageNumber, Script script) {
+        if (ruleFlags.isEmpty() && hints.isEmpty()) return aiFlags;
+        List<String> ruleKeys = ruleFlags.stream().map(f -> PreFilterEngine.key(f.getEntityName())).toList();
 
-            return (aiResponse != null && aiResponse.risks() != null)
-                    ? aiResponse.risks().stream().map(item -> mapToRiskFlag(item, pageNumber, script)).toList()
-                    : List.of();
+        List<RiskFlag> merged = new ArrayList<>(ruleFlags);
+        List<String> aiKeys = new ArrayList<>();
+        for (RiskFlag flag : aiFlags) {
+            String key = PreFilterEngine.key(flag.getEntityName());
+            boolean duplicate = flag.getCategory() == RiskCategory.NAMES_NUMBERS
+                    && ruleKeys.stream().anyMatch(key::contains);
+            if (!duplicate) {
+                merged.add(flag);
+                aiKeys.add(key);
+            }
+        }
+        for (DictionaryMatcher.DictionaryHit hit : hints) {
+            String key = PreFilterEngine.key(hit.name());
+            if (aiKeys.stream().noneMatch(k -> k.contains(key) || (!k.isEmpty() && key.contains(k)))) {
+                merged.add(toRiskFlag(hit, pageNumber, script));
+            }
+        }
+        return merged;
+    }
 
-        } catch (Exception e) {
-            log.error("Error analyzing page {}: {}", pageNumber, e.getMessage());
-            return List.of();
+    /**
+     * The enum has no BRAND_NAME_PRODUCTS / REFERENCES sub-categories (those are prompt
+     * vocabulary), so dictionary hits use the closest existing ones.
+     */
+    private RiskFlag toRiskFlag(DictionaryMatcher.DictionaryHit hit, int pageNumber, Script script) {
+        RiskCategory category;
+        RiskSubCategory subCategory;
+        String reason;
+        switch (hit.kind()) {
+            case BRAND -> {
+                category = RiskCategory.PROPS_SET_DRESSING;
+                subCategory = RiskSubCategory.BRANDED_PROP;
+                reason = "Brand or product name appears on the page.";
+            }
+            case PUBLIC_FIGURE -> {
+                category = RiskCategory.REFERENCES;
+                subCategory = RiskSubCategory.CULTURAL_REFERENCE;
+                reason = "Living public figure is named on the page.";
+            }
+            case SONG -> {
+                category = RiskCategory.REFERENCES;
+                subCategory = RiskSubCategory.COPYRIGHTED_REFERENCE;
+                reason = "Song title is referenced on the page.";
+            }
+            default -> {
+                category = RiskCategory.LOCATIONS;
+                subCategory = RiskSubCategory.LANDMARK;
+                reason = "Named landmark appears on the page.";
+            }
         }
+        return RiskFlag.builder()
+                .category(category)
+                .subCategory(subCategory)
+                .severity(RiskSeverity.LOW)
+                .status(ClearanceStatus.PENDING)
+                .entityName(hit.name())
+                .snippet(truncate(hit.snippet(), 500))
+                .reason(reason + " Matched from the clearance dictionary; confirm the context.")
+                .suggestion("Review usage; clear or replace if the depiction is negative or prominent.")
+                .pageNumber(pageNumber)
+                .isRedacted(false)
+                .script(script)
+                .build();
+    }
+
+    private RiskFlag toRiskFlag(PreFilterEngine.RuleMatch match, int pageNumber, Script script) {
+        return RiskFlag.builder()
+                .category(match.category())
+                .subCategory(match.subCategory())
+                .severity(match.severity())
+                .status(ClearanceStatus.PENDING)
+                .entityName(match.entityName())
+                .snippet(truncate(match.snippet(), 500))
+                .reason(match.reason())
+                .suggestion(match.suggestion())
+                .pageNumber(pageNumber)
+                .isRedacted(false)
+                .script(script)
+                .build();
     }
 
     private RiskFlag mapToRiskFlag(AiPageAnalysisResult.AiRiskItem item, int pageNumber, Script script) {
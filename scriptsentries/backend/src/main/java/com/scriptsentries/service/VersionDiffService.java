@@ -0,0 +1,332 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.model.PageFingerprint;
+import com.scriptsentries.model.RiskFlag;
+import com.scriptsentries.model.Script;
+import com.scriptsentries.repository.PageFingerprintRepository;
+import com.scriptsentries.repository.RiskFlagRepository;
+import com.scriptsentries.repository.ScriptRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out which pages of a new draft actually changed against earlier analyzed
+ * versions in the same project.
+ *
+ * Two passes:
+ *  1. exact — pages whose content hash matches a page of the latest completed version
+ *     are unchanged: they skip the LLM, and their flags are copied forward together with
+ *     the attorney's decisions (status, comments, restrictions, redaction);
+ *  2. shift-tolerant — remaining pages are looked up in an LSH index of MinHash
+ *     signatures from every earlier version and aligned with the prior page(s) holding
+ *     almost all of their shingles (a scene insertion pushes text across page breaks).
+ *     An estimate cannot prove that nothing was added, so aligned pages are analyzed
+ *     again; findings the model reports again inherit the attorney's decisions on the
+ *     aligned prior flags ({@link RescanPlan#inheritDecisions}).
+ *
+ * Streaming scans plan each window of pages as it is extracted ({@link #planner}).
+ */
+@Service
+@Slf4j
+public class VersionDiffService {
+
+    private final ScriptRepository          scriptRepository;
+    private final PageFingerprintRepository fingerprintRepository;
+    private final RiskFlagRepository        riskFlagRepository;
+    private final boolean                   similarityEnabled;
+    private final double                    containmentThreshold;
+
+    public VersionDiffService(ScriptRepository scriptRepository,
+                              PageFingerprintRepository fingerprintRepository,
+                              RiskFlagRepository riskFlagRepository,
+                              @Value("${scriptsentries.analysis.similarity.enabled:true}") boolean similarityEnabled,
+                              @Value("${scriptsentries.analysis.similarity.containment-threshold:0.95}") double containmentThreshold) {
+        this.scriptRepository = scriptRepository;
+        this.fingerprintRepository = fingerprintRepository;
+        this.riskFlagRepository = riskFlagRepository;
+        this.similarityEnabled = similarityEnabled;
+        this.containmentThreshold = containmentThreshold;
+    }
+
+    /**
+     * Outcome of comparing a new draft with its predecessors; {@code alignedFlags} are
+     * the prior flags of the pages a shifted page was aligned with.
+     */
+    public record RescanPlan(Script previousVersion,
+                             Map<Integer, Integer> unchangedPages,
+                             Map<Integer, List<RiskFlag>> carriedFlags,
+                             Map<Integer, List<RiskFlag>> alignedFlags) {
+
+        static RescanPlan fullScan() {
+            return new RescanPlan(null, Map.of(), Map.of(), Map.of());
+        }
+
+        /**
+         * Gives the fresh {@code flags} of a shifted page the status, comments, restrictions
+         * and redaction of the aligned prior flag for the same entity, if there is one.
+         */
+        public List<RiskFlag> inheritDecisions(int pageNumber, List<RiskFlag> flags) {
+            List<RiskFlag> prior = alignedFlags.get(pageNumber);
+            if (prior == null || prior.isEmpty()) return flags;
+            Map<String, RiskFlag> byKey = new HashMap<>();
+            prior.forEach(f -> byKey.putIfAbsent(decisionKey(f), f));
+            for (RiskFlag flag : flags) {
+                RiskFlag match = byKey.get(decisionKey(flag));
+                if (match == null) continue;
+                flag.setStatus(match.getStatus());
+                flag.setComments(match.getComments());
+                flag.setRestrictions(match.getRestrictions());
+                flag.setRedacted(match.isRedacted());
+            }
+            return flags;
+        }
+
+        public boolean isUnchanged(int pageNumber) {
+            return unchangedPages.containsKey(pageNumber);
+        }
+
+        public List<RiskFlag> carriedFlagsFor(int pageNumber) {
+            return carriedFlags.getOrDefault(pageNumber, List.of());
+        }
+    }
+
+    /**
+     * Fingerprints {@code pages} for {@code script} and matches them against the
+     * earlier completed versions of the same project.
+     *
+     * @param pages extracted page text, index 0 = page 1
+     */
+    public RescanPlan plan(Script script, List<String> pages) {
+        Planner planner = planner(script);
+        RescanPlan plan = planner.plan(pages, 1, pages.size());
+        planner.logSummary();
+        return plan;
+    }
+
+    /**
+     * Plans a draft window by window while it is still being extracted. The previous
+     * version and the similarity index are loaded once. Windows must be planned in page
+     * order, since repeated identical pages match the prior ones in order.
+     */
+    public Planner planner(Script script) {
+        return new Planner(script);
+    }
+
+    public final class Planner {
+        private final Script script;
+        private final Script previous;
+        private final Map<String, Deque<Integer>> priorPagesByHash = new HashMap<>();
+        private PageSimilarityIndex index;
+        private int pageCount;
+        private int exactCount;
+        private int nearCount;
+        private int carriedCount;
+
+        private Planner(Script script) {
+            this.script = script;
+            this.previous = findPreviousVersion(script);
+            if (previous != null) {
+                // hash → prior page numbers (a draft can repeat identical pages, e.g. act breaks)
+                for (PageFingerprint fp : fingerprintRepository.findByScriptOrderByPageNumberAsc(previous)) {
+                    priorPagesByHash.computeIfAbsent(fp.getContentHash(), h -> new ArrayDeque<>()).add(fp.getPageNumber());
+                }
+            }
+        }
+
+        /**
+         * Fingerprints pages {@code from}..{@code to} (1-based, inclusive) of {@code pages}
+         * and matches them; entries outside the range may be null.
+         */
+        public RescanPlan plan(List<String> pages, int from, int to) {
+            List<String> hashes = new ArrayList<>(to - from + 1);
+            List<MinHash.Signature> signatures = new ArrayList<>(to - from + 1);
+            for (int pageNumber = from; pageNumber <= to; pageNumber++) {
+                String text = pages.get(pageNumber - 1);
+                hashes.add(PageText.sha256(PageText.normalize(text)));
+                signatures.add(MinHash.of(text));
+            }
+            recordFingerprints(script, from, hashes, signatures);
+            pageCount += to - from + 1;
+
+            if (previous == null) return RescanPlan.fullScan();
+
+            Map<Integer, Integer> unchanged = new HashMap<>();
+            Map<Integer, List<RiskFlag>> carried = new HashMap<>();
+
+            // 1. Exact matches against the latest version carry every flag on the page
+            Map<Integer, Integer> exact = exactMatches(pages, from, hashes);
+            unchanged.putAll(exact);
+            carried.putAll(carryForward(previous, exact, script));
+
+            // 2. Shifted / near-duplicate pages against all earlier versions: re-analyzed,
+            //    but aligned so the attorney's decisions follow the findings
+            Map<Integer, PageSimilarityIndex.Match> near = Map.of();
+            Map<Integer, List<RiskFlag>> aligned = Map.of();
+            if (similarityEnabled) {
+                near = nearDuplicates(pages, from, signatures, unchanged.keySet());
+                aligned = alignedFlags(near);
+            }
+
+            exactCount += exact.size();
+            nearCount += near.size();
+            carriedCount += carried.values().stream().mapToInt(List::size).sum();
+            return new RescanPlan(previous, unchanged, carried, aligned);
+        }
+
+        public void logSummary() {
+            if (previous == null) return;
+            log.info("Incremental scan of '{}': {}/{} pages unchanged vs '{}' ({} flags carried forward), "
+                            + "{} shifted pages re-analyzed with prior decisions",
+                    script.getFilename(), exactCount, pageCount, versionLabel(previous), carriedCount, nearCount);
+        }
+
+        private Map<Integer, Integer> exactMatches(List<String> pages, int from, List<String> hashes) {
+            Map<Integer, Integer> matches = new HashMap<>();
+            for (int i = 0; i < hashes.size(); i++) {
+                String text = pages.get(from - 1 + i);
+                if (text == null || text.isBlank()) continue;
+                Deque<Integer> candidates = priorPagesByHash.get(hashes.get(i));
+                if (candidates != null && !candidates.isEmpty()) {
+                    matches.put(from + i, candidates.poll());
+                }
+            }
+            return matches;
+        }
+
+        private Map<Integer, PageSimilarityIndex.Match> nearDuplicates(List<String> pages, int from,
+                                                                       List<MinHash.Signature> signatures,
+                                                                       Set<Integer> alreadyMatched) {
+            if (index == null) index = similarityIndex(script);
+            if (index.isEmpty()) return Map.of();
+
+            Map<Integer, PageSimilarityIndex.Match> matches = new HashMap<>();
+            for (int i = 0; i < signatures.size(); i++) {
+                int pageNumber = from + i;
+                String text = pages.get(pageNumber - 1);
+                if (alreadyMatched.contains(pageNumber) || text == null || text.isBlank()) continue;
+                PageSimilarityIndex.Match match = index.bestMatch(signatures.get(i), containmentThreshold);
+                if (match != null) matches.put(pageNumber, match);
+            }
+            return matches;
+        }
+    }
+
+    private PageSimilarityIndex similarityIndex(Script script) {
+        PageSimilarityIndex index = new PageSimilarityIndex();
+        Map<Long, Integer> rankByScript = new HashMap<>();
+        for (PageFingerprint fp : fingerprintRepository.findSignedByProjectExcluding(script.getProject(), script)) {
+            long scriptId = fp.getScript().getId();
+            int rank = rankByScript.computeIfAbsent(scriptId, id -> rankByScript.size());
+            index.add(new PageSimilarityIndex.Entry(scriptId, rank, fp.getPageNumber(),
+                    new MinHash.Signature(MinHash.fromBytes(fp.getMinhash()), fp.getShingleCount())));
+        }
+        return index;
+    }
+
+    /** The prior flags of the page(s) each shifted page was aligned with. */
+    private Map<Integer, List<RiskFlag>> alignedFlags(Map<Integer, PageSimilarityIndex.Match> near) {
+        if (near.isEmpty()) return Map.of();
+
+        Map<Long, Set<Integer>> wanted = new HashMap<>();
+        near.values().forEach(m -> m.pages().forEach(e ->
+                wanted.computeIfAbsent(e.scriptId(), id -> new HashSet<>()).add(e.pageNumber())));
+
+        Map<Long, List<RiskFlag>> flagsByPage = new HashMap<>();
+        wanted.forEach((scriptId, pageNumbers) -> riskFlagRepository
+                .findByScriptIdAndPageNumberIn(scriptId, pageNumbers)
+                .forEach(f -> flagsByPage.computeIfAbsent(pageKey(scriptId, f.getPageNumber()), k -> new ArrayList<>()).add(f)));
+
+        Map<Integer, List<RiskFlag>> aligned = new HashMap<>();
+        near.forEach((pageNumber, match) -> {
+            for (PageSimilarityIndex.Entry entry : match.pages()) {
+                aligned.computeIfAbsent(pageNumber, p -> new ArrayList<>())
+                        .addAll(flagsByPage.getOrDefault(pageKey(entry.scriptId(), entry.pageNumber()), List.of()));
+            }
+        });
+        return aligned;
+    }
+
+    private static String decisionKey(RiskFlag flag) {
+        String entity = flag.getEntityName() != null ? flag.getEntityName().toLowerCase(Locale.ROOT).strip() : "";
+        return flag.getCategory() + "|" + flag.getSubCategory() + "|" + entity;
+    }
+
+    private void recordFingerprints(Script script, int firstPage, List<String> hashes, List<MinHash.Signature> signatures) {
+        List<PageFingerprint> fingerprints = new ArrayList<>(hashes.size());
+        for (int i = 0; i < hashes.size(); i++) {
+            fingerprints.add(PageFingerprint.builder()
+                    .script(script).pageNumber(firstPage + i).contentHash(hashes.get(i))
+                    .minhash(MinHash.toBytes(signatures.get(i).values()))
+                    .shingleCount(signatures.get(i).shingleCount())
+                    .build());
+        }
+        fingerprintRepository.saveAll(fingerprints);
+    }
+
+    /**
+     * The latest completed version; a degraded one does not count, since its pages were
+     * checked by the local rules only and must not be carried forward as analyzed.
+     */
+    private Script findPreviousVersion(Script script) {
+        if (script.getProject() == null) return null;
+        return scriptRepository.findActiveByProjectOrderByUploadedAtDesc(script.getProject()).stream()
+                .filter(s -> !s.getId().equals(script.getId()))
+                .filter(s -> s.getStatus() == Script.ScriptStatus.COMPLETE)
+                .filter(s -> !Boolean.TRUE.equals(s.getDegraded()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /** Copies the prior version's flags onto the matching pages of the new draft. */
+    private Map<Integer, List<RiskFlag>> carryForward(Script previous, Map<Integer, Integer> unchanged, Script target) {
+        Map<Integer, Integer> newPageByPriorPage = new HashMap<>();
+        unchanged.forEach((newPage, priorPage) -> newPageByPriorPage.put(priorPage, newPage));
+
+        Map<Integer, List<RiskFlag>> carried = new HashMap<>();
+        if (previous.getRisks() == null) return carried;
+
+        for (RiskFlag prior : previous.getRisks()) {
+            Integer newPage = newPageByPriorPage.get(prior.getPageNumber());
+            if (newPage == null) continue;
+            carried.computeIfAbsent(newPage, p -> new ArrayList<>()).add(copyTo(prior, newPage, target));
+        }
+        return carried;
+    }
+
+    private RiskFlag copyTo(RiskFlag prior, int pageNumber, Script target) {
+        return RiskFlag.builder()
+                .category(prior.getCategory())
+                .subCategory(prior.getSubCategory())
+                .severity(prior.getSeverity())
+                .status(prior.getStatus())
+                .entityName(prior.getEntityName())
+                .snippet(prior.getSnippet())
+                .reason(prior.getReason())
+                .suggestion(prior.getSuggestion())
+                .comments(prior.getComments())
+                .restrictions(prior.getRestrictions())
+                .isRedacted(prior.isRedacted())
+                .pageNumber(pageNumber)
+                .script(target)
+                .build();
+    }
+
+    private static long pageKey(long scriptId, int pageNumber) {
+        return (scriptId << 20) ^ pageNumber;
+    }
+
+    private static String versionLabel(Script s) {
+        return s.getVersionName() != null ? s.getVersionName() : s.getFilename();
+    }
+}
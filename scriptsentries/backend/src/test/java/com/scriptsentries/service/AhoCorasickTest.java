@@ -0,0 +1,75 @@
+package com.scriptsentries.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AhoCorasickTest {
+
+    /** Builds an automaton whose value for each pattern is its index, then lists the hits as "pattern@start-end". */
+    private static List<String> hits(String text, String... patterns) {
+        String[] folded = new String[patterns.length];
+        int[] values = new int[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            folded[i] = AhoCorasick.fold(patterns[i]);
+            values[i] = i;
+        }
+        List<String> hits = new ArrayList<>();
+        AhoCorasick.build(folded, values).scan(text,
+                (value, start, end) -> hits.add(patterns[value] + "@" + start + "-" + end));
+        return hits;
+    }
+
+    @Test
+    void findsEachOfOverlappingPatternsAsWholeWords() {
+        assertThat(hits("he said she hers", "he", "she", "hers"))
+                .containsExactly("he@0-2", "she@8-11", "hers@12-16");
+    }
+
+    @Test
+    void reportsPatternsEndingInsideOthersThroughDictionaryLinks() {
+        // "new york city" fails over to "york city", whose dictionary link is "city"
+        assertThat(hits("New York City", "new york", "york city", "city", "new york city"))
+                .containsExactly("new york@0-8", "new york city@0-13", "york city@4-13", "city@9-13");
+    }
+
+    @Test
+    void keepsPatternsWithSharedPrefixesApart() {
+        assertThat(hits("Star Wars fans at Starbucks, one star.", "star", "starbucks", "star wars"))
+                .containsExactly("star@0-4", "star wars@0-9", "starbucks@18-27", "star@33-37");
+    }
+
+    @Test
+    void matchesWholeWordsOnly() {
+        assertThat(hits("Applesauce, pineapple and 7Up7", "apple", "7up")).isEmpty();
+        assertThat(hits("(Apple) 7Up.", "apple", "7up")).containsExactly("apple@1-6", "7up@8-11");
+    }
+
+    @Test
+    void collapsesWhitespaceRunsInTheText() {
+        assertThat(hits("at the Empire  State\n   Building.", "empire state building"))
+                .containsExactly("empire state building@7-32");
+    }
+
+    @Test
+    void foldsCaseAndCurlyApostrophes() {
+        assertThat(hits("MACY’S and Macy‘s", "Macy's")).containsExactly("Macy's@0-6", "Macy's@11-17");
+        assertThat(AhoCorasick.fold("  Dr.\tPepper  ")).isEqualTo("dr. pepper");
+    }
+
+    @Test
+    void emptyDictionaryFindsNothing() {
+        assertThat(hits("Anything at all")).isEmpty();
+    }
+
+    @Test
+    void sharesNodesBetweenPrefixes() {
+        AhoCorasick automaton = AhoCorasick.build(new String[]{"star", "starbucks", "stars"}, new int[]{0, 1, 2});
+        // root + s-t-a-r + b-u-c-k-s + s
+        assertThat(automaton.nodeCount()).isEqualTo(1 + 4 + 5 + 1);
+        assertThat(automaton.patternCount()).isEqualTo(3);
+    }
+}
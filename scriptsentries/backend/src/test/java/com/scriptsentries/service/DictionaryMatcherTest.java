@@ -0,0 +1,87 @@
+package com.scriptsentries.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class DictionaryMatcherTest {
+
+    @TempDir
+    Path dir;
+
+    private DictionaryMatcher matcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        matcher = new DictionaryMatcher(new DefaultResourceLoader(),
+                new String[]{dictionary("brands.txt", "# brands\nCoca-Cola|Coke|Diet Coke\nApple\nEmpire\nTV|Television")},
+                new String[]{dictionary("figures.txt", "Taylor Swift")},
+                new String[]{dictionary("songs.txt", "Yesterday")},
+                new String[]{dictionary("landmarks.txt", "Empire State Building"), "file:" + dir.resolve("missing.txt")},
+                3);
+    }
+
+    private String dictionary(String name, String content) throws IOException {
+        Path file = dir.resolve(name);
+        Files.writeString(file, content);
+        return "file:" + file;
+    }
+
+    @Test
+    void mapsAliasesToTheCanonicalName() {
+        assertThat(matcher.scan("She orders a Diet Coke, then a Coke."))
+                .extracting(DictionaryMatcher.DictionaryHit::kind, DictionaryMatcher.DictionaryHit::name)
+                .containsExactly(tuple(DictionaryMatcher.EntityKind.BRAND, "Coca-Cola"));
+    }
+
+    @Test
+    void requiresACapitalForWordsThatAreAlsoCommonNouns() {
+        assertThat(matcher.scan("He eats an apple.")).isEmpty();
+        assertThat(matcher.scan("He opens his Apple laptop."))
+                .extracting(DictionaryMatcher.DictionaryHit::name).containsExactly("Apple");
+    }
+
+    @Test
+    void dropsHitsNestedInALongerHit() {
+        assertThat(matcher.scan("They climb the Empire State Building."))
+                .extracting(DictionaryMatcher.DictionaryHit::name).containsExactly("Empire State Building");
+        assertThat(matcher.scan("They climb the Empire State Building. The Empire falls."))
+                .extracting(DictionaryMatcher.DictionaryHit::kind, DictionaryMatcher.DictionaryHit::name)
+                .containsExactly(
+                        tuple(DictionaryMatcher.EntityKind.LANDMARK, "Empire State Building"),
+                        tuple(DictionaryMatcher.EntityKind.BRAND, "Empire"));
+    }
+
+    @Test
+    void reportsPositionsAndSnippetInTheOriginalText() {
+        String page = "On the radio:\n  Taylor   Swift sings Yesterday.";
+        DictionaryMatcher.DictionaryHit hit = matcher.scan(page).get(0);
+        assertThat(page.substring(hit.start(), hit.end())).isEqualTo("Taylor   Swift");
+        assertThat(hit.snippet()).isEqualTo("On the radio: Taylor Swift sings Yesterday.");
+        assertThat(matcher.scan(page)).extracting(DictionaryMatcher.DictionaryHit::name)
+                .containsExactly("Taylor Swift", "Yesterday");
+    }
+
+    @Test
+    void skipsVariantsShorterThanTheMinimumLength() {
+        assertThat(matcher.scan("The TV is on.")).isEmpty();
+        assertThat(matcher.scan("A Television hums.")).extracting(DictionaryMatcher.DictionaryHit::name)
+                .containsExactly("TV");
+    }
+
+    @Test
+    void versionChangesWithTheEntries() throws IOException {
+        DictionaryMatcher other = new DictionaryMatcher(new DefaultResourceLoader(),
+                new String[]{dictionary("other.txt", "Pepsi")}, new String[0], new String[0], new String[0], 3);
+        assertThat(other.version()).isNotEqualTo(matcher.version());
+        assertThat(matcher.scan(null)).isEmpty();
+    }
+}
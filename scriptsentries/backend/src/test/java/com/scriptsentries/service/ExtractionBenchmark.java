@@ -0,0 +1,138 @@
+package com.scriptsentries.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares sequential and parallel text extraction on synthetic screenplays of 50, 150
+ * and 400 pages and logs pages per second for each. Not part of the regular build (the
+ * name does not match Surefire's test patterns); run it explicitly:
+ * {@code mvn test -Dtest=ExtractionBenchmark}.
+ *
+ * Each size is extracted {@code benchmark.warmup} times unmeasured (JIT, font caches),
+ * then the best of {@code benchmark.runs} is reported, so one GC pause does not decide
+ * the result. The parallel run uses {@code benchmark.threads} workers, by default one
+ * per core. Both runs must deliver every page, in order.
+ */
+@Slf4j
+class ExtractionBenchmark {
+
+    private static final float FONT_SIZE = 12;
+    private static final float LEADING = 14;
+    private static final float MARGIN = 72;
+
+    private final int threads = Integer.getInteger("benchmark.threads", Runtime.getRuntime().availableProcessors());
+    private final int warmup = Integer.getInteger("benchmark.warmup", 2);
+    private final int runs = Math.max(1, Integer.getInteger("benchmark.runs", 5));
+
+    private PdfExtractionService pdfExtractionService;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        pdfExtractionService = new PdfExtractionService(false, DataSize.ofMegabytes(8), threads, 40, 10,
+                DataSize.ofBytes(0), 0.75, 1.0, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        pdfExtractionService.shutdown();
+    }
+
+    @ParameterizedTest(name = "{0} pages")
+    @ValueSource(ints = {50, 150, 400})
+    void sequentialVersusParallel(int pages) throws IOException {
+        File pdf = tempDir.resolve("script-" + pages + ".pdf").toFile();
+        writeScript(pdf, pages);
+        long sequential = bestOf(pdf, 1, pages);
+        long parallel = bestOf(pdf, threads, pages);
+        log.info("{} pages: sequential {} ms ({} pages/s), {} threads {} ms ({} pages/s), {}x",
+                pages, sequential / 1_000_000, rate(pages, sequential),
+                threads, parallel / 1_000_000, rate(pages, parallel),
+                String.format("%.2f", (double) sequential / parallel));
+    }
+
+    /** Fastest of {@code runs} timed extractions, in nanoseconds. */
+    private long bestOf(File pdf, int threads, int expectedPages) throws IOException {
+        for (int i = 0; i < warmup; i++) extract(pdf, threads, expectedPages);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            extract(pdf, threads, expectedPages);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private void extract(File pdf, int threads, int expectedPages) throws IOException {
+        AtomicInteger next = new AtomicInteger(1);
+        pdfExtractionService.extractPages(pdf, (pageNumber, text) -> {
+            // Parallel extraction must still deliver every page, in order
+            if (pageNumber != next.getAndIncrement() || text.isEmpty()) {
+                throw new IllegalStateException("Page " + pageNumber + " delivered out of order or empty");
+            }
+        }, threads);
+        if (next.get() != expectedPages + 1) {
+            throw new IllegalStateException("Extracted " + (next.get() - 1) + " of " + expectedPages + " pages");
+        }
+    }
+
+    private static long rate(int pages, long nanos) {
+        return Math.round(pages / (nanos / 1e9));
+    }
+
+    /** Letter-size pages of Courier 12 screenplay text: sluglines, action, dialogue. */
+    private static void writeScript(File file, int pages) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font courier = new PDType1Font(Standard14Fonts.FontName.COURIER);
+            int linesPerPage = (int) ((PDRectangle.LETTER.getHeight() - 2 * MARGIN) / LEADING);
+            for (int p = 1; p <= pages; p++) {
+                PDPage page = new PDPage(PDRectangle.LETTER);
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(courier, FONT_SIZE);
+                    content.setLeading(LEADING);
+                    content.newLineAtOffset(MARGIN, PDRectangle.LETTER.getHeight() - MARGIN);
+                    for (int line = 0; line < linesPerPage; line++) {
+                        content.showText(line(p, line));
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(file);
+        }
+    }
+
+    private static String line(int page, int line) {
+        return switch (line % 12) {
+            case 0 -> (page % 2 == 0 ? "INT. " : "EXT. ") + "WAREHOUSE " + page + " - NIGHT";
+            case 2, 3 -> "Rain hammers the roof. MAYA (30s) crosses to the loading dock, scene " + page + ".";
+            case 5 -> "                    MAYA";
+            case 6 -> "          We open the doors at midnight, not before.";
+            case 8 -> "                    DETECTIVE HOLT";
+            case 9 -> "          Then we wait for the Riverside Bank truck.";
+            default -> "";
+        };
+    }
+}
@@ -0,0 +1,266 @@
+package com.scriptsentries.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the scheduler with one slot and tasks that hold it until the test lets them go,
+ * so the order in which tenants are granted the slot is fully under the test's control.
+ */
+class FairShareSchedulerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BlockingQueue<Task> started = new LinkedBlockingQueue<>();
+    private final List<Task> tasks = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        tasks.forEach(Task::finish);
+        for (Task task : tasks) {
+            task.thread.join(5_000);
+            assertThat(task.failure).as(task.name).isNull();
+        }
+    }
+
+    private FairShareScheduler scheduler(int slots, Map<String, Integer> weights) {
+        return new FairShareScheduler(slots, tenant -> weights.getOrDefault(tenant, 1), Duration.ofHours(1), registry);
+    }
+
+    /** A page task that records when it gets its slot and holds it until {@link #finish}. */
+    private final class Task {
+        private final String name;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final Thread thread;
+        private volatile Throwable failure;
+
+        Task(FairShareScheduler scheduler, String tenant, String name, boolean urgent) {
+            this.name = name;
+            this.thread = new Thread(() -> {
+                try {
+                    scheduler.run(tenant, urgent, () -> {
+                        started.add(this);
+                        done.await();
+                        return null;
+                    });
+                } catch (Throwable e) {
+                    failure = e;
+                }
+            }, name);
+            tasks.add(this);
+            thread.start();
+        }
+
+        void finish() {
+            done.countDown();
+        }
+    }
+
+    private Task submit(FairShareScheduler scheduler, String tenant, String name, boolean urgent) {
+        return new Task(scheduler, tenant, name, urgent);
+    }
+
+    /** Submits a task and waits until it is queued, so tasks queue in the order they are submitted. */
+    private void queue(FairShareScheduler scheduler, String tenant, String name, boolean urgent)
+            throws InterruptedException {
+        int before = queued();
+        submit(scheduler, tenant, name, urgent);
+        awaitQueued(before + 1);
+    }
+
+    /** Waits until {@code count} tasks are queued for a slot across all tenants. */
+    private void awaitQueued(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queued() != count) {
+            assertThat(System.nanoTime() - deadline).as("%d tasks queued", count).isLessThan(0L);
+            Thread.sleep(1);
+        }
+    }
+
+    private int queued() {
+        return (int) registry.find("scriptsentries.analysis.queue.depth").gauges().stream()
+                .mapToDouble(Gauge::value).sum();
+    }
+
+    /** The next task to get the slot; finishes it so the slot passes on. */
+    private String next() throws InterruptedException {
+        Task task = started.poll(5, TimeUnit.SECONDS);
+        assertThat(task).as("a task got the slot").isNotNull();
+        task.finish();
+        return task.name;
+    }
+
+    private Task holdSlot(FairShareScheduler scheduler) throws InterruptedException {
+        Task blocker = submit(scheduler, "blocker", "blocker", false);
+        assertThat(started.poll(5, TimeUnit.SECONDS)).isSameAs(blocker);
+        return blocker;
+    }
+
+    @Test
+    void grantsSlotsInProportionToWeight() throws InterruptedException {
+        FairShareScheduler scheduler = scheduler(1, Map.of("heavy", 2, "light", 1));
+        Task blocker = holdSlot(scheduler);
+        for (int i = 0; i < 6; i++) queue(scheduler, "heavy", "H", false);
+        for (int i = 0; i < 6; i++) queue(scheduler, "light", "L", false);
+        blocker.finish();
+
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 12; i++) order.append(next());
+        // Two heavy for every light one while both have work, interleaved; then the rest of light's queue
+        assertThat(order.toString()).isEqualTo("HLHHLHHLHLLL");
+    }
+
+    @Test
+    void servesUrgentTasksBeforeNormalOnes() throws InterruptedException {
+        FairShareScheduler scheduler = scheduler(1, Map.of());
+        Task blocker = holdSlot(scheduler);
+        queue(scheduler, "a", "a1", false);
+        queue(scheduler, "a", "a2", false);
+        queue(scheduler, "b", "b-urgent", true);
+        blocker.finish();
+
+        assertThat(List.of(next(), next(), next())).containsExactly("b-urgent", "a1", "a2");
+        assertThat(registry.find("scriptsentries.analysis.queue.wait")
+                .tag("tenant", "b").tag("priority", "urgent").timer().count()).isEqualTo(1L);
+    }
+
+    @Test
+    void tenantReturningFromIdleStartsWithoutDebt() throws InterruptedException {
+        FairShareScheduler scheduler = scheduler(1, Map.of("a", 3, "b", 2));
+        Task blocker = holdSlot(scheduler);
+        queue(scheduler, "a", "a1", false);
+        queue(scheduler, "b", "b1", false);
+        queue(scheduler, "b", "b2", false);
+        blocker.finish();
+
+        Task a1 = started.poll(5, TimeUnit.SECONDS);
+        assertThat(a1.name).isEqualTo("a1");
+        // a went idle when a1 got the slot, so the credit a1 spent is not held against its next burst
+        queue(scheduler, "a", "a2", false);
+        queue(scheduler, "a", "a3", false);
+        a1.finish();
+
+        assertThat(List.of(next(), next(), next(), next())).containsExactly("b1", "a2", "a3", "b2");
+    }
+
+    @Test
+    void interruptedWaiterLeavesTheQueue() throws Exception {
+        FairShareScheduler scheduler = scheduler(1, Map.of());
+        Task blocker = holdSlot(scheduler);
+        Thread waiter = new Thread(() -> {
+            try {
+                scheduler.run("a", false, () -> null);
+            } catch (Exception ignored) {
+                // Interrupted while waiting
+            }
+        });
+        waiter.start();
+        awaitQueued(1);
+        waiter.interrupt();
+        waiter.join(5_000);
+
+        assertThat(queued()).isZero();
+        blocker.finish();
+        blocker.thread.join(5_000);
+        assertThat(scheduler.busy(1)).isZero();
+    }
+
+    @Test
+    void slotGrantedToAnInterruptedWaiterIsPassedOn() throws Exception {
+        // Registering the "gate" tenant holds the scheduler lock until the test opens the gate
+        CountDownLatch gateEntered = new CountDownLatch(1);
+        CountDownLatch gateOpen = new CountDownLatch(1);
+        FairShareScheduler scheduler = new FairShareScheduler(1, tenant -> {
+            if (!tenant.equals("gate")) return 1;
+            gateEntered.countDown();
+            try {
+                gateOpen.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return 0;
+        }, Duration.ofHours(1), registry);
+        Task blocker = holdSlot(scheduler);
+
+        AtomicReference<Object> waited = new AtomicReference<>();
+        AtomicReference<Object> gated = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                waited.set(scheduler.run("a", false, () -> "ran"));
+            } catch (Exception e) {
+                waited.set(e);
+            }
+        });
+        waiter.start();
+        awaitQueued(1);
+        Thread gate = new Thread(() -> {
+            try {
+                gated.set(scheduler.run("gate", false, () -> "gate"));
+            } catch (Exception e) {
+                gated.set(e);
+            }
+        });
+        gate.start();
+        assertThat(gateEntered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Blocker frees its slot first, then the waiter is interrupted; both queue for the lock,
+        // so the slot is granted to the waiter before it gets to act on the interrupt
+        blocker.finish();
+        awaitBlockedOnLock(blocker.thread);
+        waiter.interrupt();
+        awaitBlockedOnLock(waiter);
+        gateOpen.countDown();
+        waiter.join(5_000);
+        gate.join(5_000);
+
+        assertThat(gate.isAlive()).as("next waiter got the slot").isFalse();
+        assertThat(waited.get()).isInstanceOf(InterruptedException.class);
+        assertThat(gated.get()).isEqualTo("gate");
+        assertThat(scheduler.busy(1)).isZero();
+    }
+
+    /** Waits until {@code thread} is parked acquiring a {@link ReentrantLock}, i.e. the scheduler lock. */
+    private static void awaitBlockedOnLock(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            Object blocker = LockSupport.getBlocker(thread);
+            if (blocker != null && blocker.getClass().getName().startsWith(ReentrantLock.class.getName())) return;
+            assertThat(System.nanoTime() - deadline).as("%s blocked on the lock", thread).isLessThan(0L);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void evictsIdleTenantsAndTheirMeters() throws Exception {
+        FairShareScheduler scheduler = new FairShareScheduler(2, tenant -> 1, Duration.ofMillis(50), registry);
+        scheduler.run("gone", false, () -> null);
+        Task busy = submit(scheduler, "busy", "busy", false);
+        assertThat(started.poll(5, TimeUnit.SECONDS)).isSameAs(busy);
+        assertThat(registry.find("scriptsentries.analysis.queue.depth").tag("tenant", "gone").gauges()).hasSize(1);
+
+        Thread.sleep(120);
+        scheduler.run("new", false, () -> null);
+
+        assertThat(registry.find("scriptsentries.analysis.queue.depth").tag("tenant", "gone").meters()).isEmpty();
+        assertThat(registry.find("scriptsentries.analysis.queue.wait").tag("tenant", "gone").meters()).isEmpty();
+        // A tenant still holding a slot is kept however long ago it arrived
+        assertThat(registry.find("scriptsentries.analysis.queue.running").tag("tenant", "busy").gauges())
+                .extracting(Gauge::value).containsExactly(1.0);
+        assertThat(registry.find("scriptsentries.analysis.queue.depth").tag("tenant", "new").gauges()).hasSize(1);
+    }
+}
@@ -0,0 +1,135 @@
+package com.scriptsentries.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeapBudgetTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BlockingQueue<String> charged = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join(5_000);
+        }
+    }
+
+    /** Acquires on another thread; reports {@code name=charge} once charged, {@code name=interrupted} if not. */
+    private Thread acquire(HeapBudget budget, String name, long full, long reduced) {
+        Thread thread = new Thread(() -> {
+            try {
+                charged.add(name + "=" + budget.acquire(full, reduced));
+            } catch (InterruptedException e) {
+                charged.add(name + "=interrupted");
+            }
+        }, name);
+        threads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    /** Waits until {@code count} documents are in line. */
+    private void awaitWaiting(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gauge("scriptsentries.pdf.heap.waiting") != count) {
+            assertThat(System.nanoTime() - deadline).as("%d waiting", count).isLessThan(0L);
+            Thread.sleep(1);
+        }
+    }
+
+    private double gauge(String name) {
+        return registry.find(name).gauge().value();
+    }
+
+    private String next() throws InterruptedException {
+        return charged.poll(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void chargesTheReducedCostAboveThePressureMark() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1_000, 0.5, registry);
+
+        assertThat(budget.acquire(400, 100)).isEqualTo(400L);
+        // 800 would pass the mark at 500: stream cache goes to temp files
+        assertThat(budget.acquire(400, 100)).isEqualTo(100L);
+        assertThat(gauge("scriptsentries.pdf.heap.used")).isEqualTo(500.0);
+
+        budget.release(400);
+        budget.release(100);
+        assertThat(gauge("scriptsentries.pdf.heap.used")).isZero();
+        assertThat(budget.acquire(400, 100)).isEqualTo(400L);
+    }
+
+    @Test
+    void admitsWaitersFirstComeFirstServed() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1_000, 1.0, registry);
+        long held = budget.acquire(800, 800);
+
+        acquire(budget, "large", 500, 500);
+        awaitWaiting(1);
+        // Would fit now, but must not overtake the document ahead of it
+        acquire(budget, "small", 100, 100);
+        awaitWaiting(2);
+        assertThat(charged.poll(50, TimeUnit.MILLISECONDS)).isNull();
+
+        budget.release(held);
+        assertThat(List.of(next(), next())).containsExactly("large=500", "small=100");
+        assertThat(gauge("scriptsentries.pdf.heap.used")).isEqualTo(600.0);
+        assertThat(registry.find("scriptsentries.pdf.heap.wait").timer().count()).isEqualTo(3L);
+    }
+
+    @Test
+    void interruptedWaiterLeavesTheLine() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1_000, 1.0, registry);
+        budget.acquire(800, 800);
+
+        Thread large = acquire(budget, "large", 500, 500);
+        awaitWaiting(1);
+        acquire(budget, "small", 100, 100);
+        awaitWaiting(2);
+
+        large.interrupt();
+        assertThat(List.of(next(), next())).containsExactlyInAnyOrder("large=interrupted", "small=100");
+        assertThat(gauge("scriptsentries.pdf.heap.waiting")).isZero();
+        assertThat(gauge("scriptsentries.pdf.heap.used")).isEqualTo(900.0);
+    }
+
+    @Test
+    void refundOfAFailedLoadLetsTheNextDocumentIn() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1_000, 1.0, registry);
+        // Charged, then the document fails to parse and the loader refunds the charge
+        long failed = budget.acquire(700, 700);
+        acquire(budget, "next", 600, 600);
+        awaitWaiting(1);
+
+        budget.release(failed);
+        assertThat(next()).isEqualTo("next=600");
+        assertThat(gauge("scriptsentries.pdf.heap.used")).isEqualTo(600.0);
+    }
+
+    @Test
+    void documentLargerThanTheBudgetLoadsAlone() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1_000, 0.5, registry);
+        long small = budget.acquire(100, 50);
+
+        acquire(budget, "huge", 5_000, 3_000);
+        awaitWaiting(1);
+        assertThat(charged.poll(50, TimeUnit.MILLISECONDS)).isNull();
+
+        budget.release(small);
+        assertThat(next()).isEqualTo("huge=1000");
+        assertThat(gauge("scriptsentries.pdf.heap.used")).isEqualTo(1000.0);
+    }
+}
@@ -0,0 +1,218 @@
+package com.scriptsentries.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Drives the pool through {@link LlmGateway} with stub models that fail on cue, on a
+ * clock the test steps, so ejection times can be checked to the second.
+ */
+class LlmEndpointPoolTest {
+
+    private static final String SERVER_ERROR = "503 - upstream unavailable";
+    private static final String RATE_LIMITED = "429 - rate_limit_exceeded: Please try again in 1ms";
+
+    private final Prompt prompt = new Prompt("page");
+    private volatile long now;
+
+    /** Answers "ok" unless told to fail; queued errors are thrown first, one per call. */
+    private static final class StubModel implements ChatModel {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+        private volatile String error;
+        private volatile CountDownLatch hold;
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            CountDownLatch latch = hold;
+            if (latch != null) {
+                try {
+                    // Bounded, so a second caller let through by mistake fails the test instead of hanging it
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            String message = errors.poll();
+            if (message == null) message = error;
+            if (message != null) throw new RuntimeException(message);
+            return new ChatResponse(List.of(new Generation("ok")));
+        }
+    }
+
+    private LlmEndpointPool.Endpoint endpoint(String name, StubModel model) {
+        return new LlmEndpointPool.Endpoint(name, "model", model, 1, new LlmRateLimiter(6_000, 10_000_000, 4, 4),
+                3, Duration.ofSeconds(30), Duration.ofMinutes(2), () -> now);
+    }
+
+    private LlmGateway gateway(LlmEndpointPool.Endpoint... endpoints) {
+        return new LlmGateway(new LlmEndpointPool(List.of(endpoints), () -> now), 6, Duration.ofMillis(1));
+    }
+
+    private void advance(long seconds) {
+        now += TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    private static void failsWith(LlmGateway gateway, Prompt prompt, String message) {
+        assertThatThrownBy(() -> gateway.call(prompt, 100)).hasMessage(message);
+    }
+
+    private void assertCircuitOpen(LlmGateway gateway) {
+        assertThatThrownBy(() -> gateway.call(prompt, 100)).isInstanceOf(LlmEndpointPool.CircuitOpenException.class);
+    }
+
+    @Test
+    void ejectsAnEndpointAfterConsecutiveServerErrors() {
+        StubModel model = new StubModel();
+        model.error = SERVER_ERROR;
+        LlmGateway gateway = gateway(endpoint("a", model));
+
+        failsWith(gateway, prompt, SERVER_ERROR);
+        failsWith(gateway, prompt, SERVER_ERROR);
+        failsWith(gateway, prompt, SERVER_ERROR);
+
+        assertCircuitOpen(gateway);
+        assertThat(model.calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        StubModel model = new StubModel();
+        LlmGateway gateway = gateway(endpoint("a", model));
+
+        model.errors.addAll(List.of(SERVER_ERROR, SERVER_ERROR));
+        failsWith(gateway, prompt, SERVER_ERROR);
+        failsWith(gateway, prompt, SERVER_ERROR);
+        assertThat(gateway.call(prompt, 100).getResult().getOutput().getContent()).isEqualTo("ok");
+        model.errors.addAll(List.of(SERVER_ERROR, SERVER_ERROR));
+        failsWith(gateway, prompt, SERVER_ERROR);
+        failsWith(gateway, prompt, SERVER_ERROR);
+
+        assertThat(gateway.call(prompt, 100)).isNotNull();
+    }
+
+    @Test
+    void rateLimitsAndBadRequestsDoNotCount() {
+        StubModel model = new StubModel();
+        LlmGateway gateway = gateway(endpoint("a", model));
+
+        model.errors.addAll(List.of(RATE_LIMITED, RATE_LIMITED, RATE_LIMITED, RATE_LIMITED, RATE_LIMITED));
+        assertThat(gateway.call(prompt, 100)).isNotNull();
+        assertThat(model.calls.get()).isEqualTo(6);
+
+        model.error = "400 - context_length_exceeded";
+        for (int i = 0; i < 4; i++) failsWith(gateway, prompt, "400 - context_length_exceeded");
+        model.error = null;
+        assertThat(gateway.call(prompt, 100)).isNotNull();
+    }
+
+    @Test
+    void failsOverToAHealthyEndpoint() {
+        StubModel broken = new StubModel();
+        broken.error = SERVER_ERROR;
+        StubModel healthy = new StubModel();
+        LlmGateway gateway = gateway(endpoint("a", broken), endpoint("b", healthy));
+
+        for (int i = 0; i < 7; i++) assertThat(gateway.call(prompt, 100)).isNotNull();
+
+        // Every other request tries "a" first until its third failure ejects it
+        assertThat(broken.calls.get()).isEqualTo(3);
+        assertThat(healthy.calls.get()).isEqualTo(7);
+    }
+
+    @Test
+    void ejectionTimeDoublesUpToTheMaximum() {
+        StubModel model = new StubModel();
+        model.error = SERVER_ERROR;
+        LlmGateway gateway = gateway(endpoint("a", model));
+        for (int i = 0; i < 3; i++) failsWith(gateway, prompt, SERVER_ERROR);
+
+        // 30 s, then 60 s, then 120 s twice: a failed probe reopens the breaker for twice as long
+        for (long seconds : new long[]{30, 60, 120, 120}) {
+            advance(seconds - 1);
+            assertCircuitOpen(gateway);
+            advance(1);
+            failsWith(gateway, prompt, SERVER_ERROR);
+        }
+        assertThat(model.calls.get()).isEqualTo(7);
+
+        // A successful probe closes it and forgets the ejections
+        advance(120);
+        model.error = null;
+        assertThat(gateway.call(prompt, 100)).isNotNull();
+        model.error = SERVER_ERROR;
+        for (int i = 0; i < 3; i++) failsWith(gateway, prompt, SERVER_ERROR);
+        advance(29);
+        assertCircuitOpen(gateway);
+        advance(1);
+        failsWith(gateway, prompt, SERVER_ERROR);
+    }
+
+    @Test
+    void letsASingleProbeThroughWhenHalfOpen() throws InterruptedException {
+        StubModel model = new StubModel();
+        model.error = SERVER_ERROR;
+        LlmGateway gateway = gateway(endpoint("a", model));
+        for (int i = 0; i < 3; i++) failsWith(gateway, prompt, SERVER_ERROR);
+        advance(30);
+
+        model.error = null;
+        model.hold = new CountDownLatch(1);
+        AtomicReference<Object> probed = new AtomicReference<>();
+        Thread probe = new Thread(() -> {
+            try {
+                probed.set(gateway.call(prompt, 100));
+            } catch (RuntimeException e) {
+                probed.set(e);
+            }
+        });
+        probe.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (model.calls.get() < 4) {
+            assertThat(System.nanoTime() - deadline).as("probe sent").isLessThan(0L);
+            Thread.sleep(1);
+        }
+
+        // While the probe is out, everyone else still fails fast
+        assertCircuitOpen(gateway);
+        assertCircuitOpen(gateway);
+
+        model.hold.countDown();
+        probe.join(5_000);
+        assertThat(probed.get()).isInstanceOf(ChatResponse.class);
+        model.hold = null;
+        assertThat(gateway.call(prompt, 100)).isNotNull();
+        assertThat(model.calls.get()).isEqualTo(5);
+    }
+
+    @Test
+    void rateLimitedProbeClosesTheBreaker() {
+        StubModel model = new StubModel();
+        model.error = SERVER_ERROR;
+        LlmGateway gateway = gateway(endpoint("a", model));
+        for (int i = 0; i < 3; i++) failsWith(gateway, prompt, SERVER_ERROR);
+        advance(30);
+
+        // The 429 proves the endpoint is up; the retry goes through without waiting out another ejection
+        model.error = null;
+        model.errors.add(RATE_LIMITED);
+        assertThat(gateway.call(prompt, 100)).isNotNull();
+        assertThat(model.calls.get()).isEqualTo(5);
+    }
+}
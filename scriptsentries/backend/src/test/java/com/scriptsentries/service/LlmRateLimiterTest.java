@@ -0,0 +1,158 @@
+package com.scriptsentries.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmRateLimiterTest {
+
+    private long now;
+
+    private LlmRateLimiter limiter(int requestsPerMinute, int tokensPerMinute, int initialConcurrency, int maxConcurrency) {
+        return new LlmRateLimiter(requestsPerMinute, tokensPerMinute, initialConcurrency, maxConcurrency, () -> now);
+    }
+
+    private void advance(long seconds) {
+        now += TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    @Test
+    void requestBucketRefillsContinuously() {
+        LlmRateLimiter limiter = limiter(2, 1_000_000, 10, 10);
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+
+        // Two a minute: one request's worth every 30 s
+        advance(29);
+        assertThat(limiter.tryAcquire(1)).isFalse();
+        advance(2);
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+    }
+
+    @Test
+    void tokenBucketRefillsUpToOneMinuteOfBudget() {
+        LlmRateLimiter limiter = limiter(1_000, 1_000, 10, 10);
+        assertThat(limiter.tryAcquire(600)).isTrue();
+        assertThat(limiter.tryAcquire(600)).isFalse();
+
+        advance(13);
+        assertThat(limiter.tryAcquire(600)).isTrue();
+
+        // An idle hour refills no more than the bucket holds
+        advance(3_600);
+        assertThat(limiter.tryAcquire(1_000)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+    }
+
+    @Test
+    void requestLargerThanTheBucketGoesThroughOnceItIsFull() {
+        LlmRateLimiter limiter = limiter(1_000, 1_000, 10, 10);
+        assertThat(limiter.tryAcquire(100)).isTrue();
+        assertThat(limiter.tryAcquire(5_000)).isFalse();
+
+        advance(7);
+        assertThat(limiter.tryAcquire(5_000)).isTrue();
+    }
+
+    @Test
+    void successCorrectsTheEstimateAndTakesTheProvidersRemainingBudget() {
+        LlmRateLimiter limiter = limiter(1_000, 1_000, 10, 10);
+        assertThat(limiter.tryAcquire(100)).isTrue();
+        // 700 tokens used, not 100: 300 left
+        limiter.onSuccess(100, 700, -1);
+        assertThat(limiter.tryAcquire(301)).isFalse();
+        assertThat(limiter.tryAcquire(300)).isTrue();
+
+        advance(60);
+        limiter.onSuccess(300, 0, 50);
+        assertThat(limiter.tryAcquire(51)).isFalse();
+        assertThat(limiter.tryAcquire(50)).isTrue();
+    }
+
+    @Test
+    void concurrencyLimitGrowsByAboutOneSlotPerRoundTrip() {
+        LlmRateLimiter limiter = limiter(1_000, 1_000_000, 2, 4);
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+
+        // 2 + 1/2 + 1/2.5 + 1/2.9: the third success opens a third slot
+        limiter.onSuccess(1, 0, -1);
+        limiter.onSuccess(1, 0, -1);
+        assertThat(limiter.concurrencyLimit()).isEqualTo(2);
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        limiter.onSuccess(1, 0, -1);
+        assertThat(limiter.concurrencyLimit()).isEqualTo(3);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(limiter.tryAcquire(1)).isTrue();
+            limiter.onSuccess(1, 0, -1);
+        }
+        assertThat(limiter.concurrencyLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void throttleHalvesTheLimitOncePerWindowAndPauses() {
+        LlmRateLimiter limiter = limiter(1_000, 1_000_000, 8, 8);
+        for (int i = 0; i < 3; i++) assertThat(limiter.tryAcquire(1)).isTrue();
+
+        limiter.onThrottled(Duration.ofSeconds(10));
+        assertThat(limiter.concurrencyLimit()).isEqualTo(4);
+        assertThat(limiter.paused()).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+
+        // The rest of the same burst does not halve it again
+        advance(1);
+        limiter.onThrottled(Duration.ofSeconds(10));
+        assertThat(limiter.concurrencyLimit()).isEqualTo(4);
+
+        advance(10);
+        assertThat(limiter.paused()).isFalse();
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        limiter.onThrottled(Duration.ofSeconds(10));
+        assertThat(limiter.concurrencyLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void limitNeverDropsBelowOneAndFailuresLeaveItAlone() {
+        LlmRateLimiter limiter = limiter(1_000, 1_000_000, 2, 8);
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire(1)).isTrue();
+            limiter.onThrottled(Duration.ofSeconds(1));
+            advance(2);
+        }
+        assertThat(limiter.concurrencyLimit()).isEqualTo(1);
+
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+        limiter.onFailure();
+        assertThat(limiter.concurrencyLimit()).isEqualTo(1);
+        assertThat(limiter.tryAcquire(1)).isTrue();
+    }
+
+    @Test
+    void acquireWaitsForAFreedSlot() throws InterruptedException {
+        LlmRateLimiter limiter = limiter(1_000, 1_000_000, 1, 1);
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire(1);
+            } catch (InterruptedException ignored) {
+                // Test timed out
+            }
+        });
+        waiter.start();
+        waiter.join(50);
+        assertThat(waiter.isAlive()).isTrue();
+
+        limiter.onSuccess(1, 0, -1);
+        waiter.join(5_000);
+        assertThat(waiter.isAlive()).isFalse();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+    }
+}
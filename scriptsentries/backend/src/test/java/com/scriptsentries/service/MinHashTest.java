@@ -0,0 +1,92 @@
+package com.scriptsentries.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class MinHashTest {
+
+    /** {@code count} words starting at {@code from} of a fixed pseudo-random word sequence. */
+    private static String words(int from, int count) {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < from + count; i++) {
+            String word = "w" + random.nextInt(1_000_000);
+            if (i >= from) sb.append(word).append(i % 12 == 11 ? ".\n" : " ");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void identicalPagesAgreeEverywhere() {
+        MinHash.Signature a = MinHash.of(words(0, 250));
+        MinHash.Signature b = MinHash.of(words(0, 250).toUpperCase().replace("\n", "  "));
+        assertThat(a.shingleCount()).isEqualTo(248);
+        assertThat(MinHash.jaccard(a.values(), b.values())).isEqualTo(1.0);
+        assertThat(MinHash.containment(a, b.values(), b.shingleCount())).isEqualTo(1.0);
+    }
+
+    @Test
+    void estimatesContainmentOfPartlyOverlappingPages() {
+        // 300 words, the last 150 of which open the other page: 148 of 298 shingles shared
+        MinHash.Signature a = MinHash.of(words(0, 300));
+        MinHash.Signature b = MinHash.of(words(150, 300));
+        assertThat(MinHash.containment(a, b.values(), b.shingleCount())).isCloseTo(148 / 298.0, within(0.1));
+    }
+
+    @Test
+    void pageInsideALongerOneIsFullyContained() {
+        MinHash.Signature half = MinHash.of(words(100, 150));
+        MinHash.Signature page = MinHash.of(words(0, 400));
+        assertThat(MinHash.containment(half, page.values(), page.shingleCount())).isGreaterThan(0.95);
+        // Only the other way round is it a small share
+        assertThat(MinHash.containment(page, half.values(), half.shingleCount())).isCloseTo(148 / 398.0, within(0.1));
+    }
+
+    @Test
+    void unrelatedPagesShareNothing() {
+        MinHash.Signature a = MinHash.of(words(0, 250));
+        MinHash.Signature b = MinHash.of(words(1_000, 250));
+        assertThat(MinHash.containment(a, b.values(), b.shingleCount())).isLessThan(0.05);
+        assertThat(MinHash.unionSize(a, b)).isCloseTo(496.0, within(25.0));
+    }
+
+    @Test
+    void unionOfConsecutivePagesContainsAPageStraddlingThem() {
+        MinHash.Signature first = MinHash.of(words(0, 250));
+        MinHash.Signature second = MinHash.of(words(250, 250));
+        MinHash.Signature straddling = MinHash.of(words(125, 250));
+
+        int[] union = MinHash.union(first.values(), second.values());
+        assertThat(MinHash.jaccard(union, MinHash.of(words(0, 500)).values())).isGreaterThan(0.95);
+        assertThat(MinHash.unionSize(first, second)).isCloseTo(496.0, within(25.0));
+        assertThat(MinHash.containment(straddling, union, MinHash.unionSize(first, second))).isGreaterThan(0.95);
+        assertThat(MinHash.containment(straddling, first.values(), first.shingleCount())).isLessThan(0.65);
+    }
+
+    @Test
+    void unionSizeOfAPageWithItselfIsItsSize() {
+        MinHash.Signature a = MinHash.of(words(0, 250));
+        assertThat(MinHash.unionSize(a, a)).isEqualTo(248.0);
+    }
+
+    @Test
+    void blankPageHasNoShinglesAndIsContainedNowhere() {
+        MinHash.Signature blank = MinHash.of(" \n -- ");
+        assertThat(blank.shingleCount()).isZero();
+        assertThat(MinHash.containment(blank, blank.values(), 0)).isZero();
+        assertThat(MinHash.of(null).shingleCount()).isZero();
+        assertThat(MinHash.of("FADE IN").shingleCount()).isEqualTo(1);
+    }
+
+    @Test
+    void signatureSurvivesTheByteRoundTrip() {
+        int[] values = MinHash.of(words(0, 100)).values();
+        byte[] bytes = MinHash.toBytes(values);
+        assertThat(bytes).hasSize(MinHash.SIZE * Integer.BYTES);
+        assertThat(MinHash.fromBytes(bytes)).containsExactly(values);
+    }
+}
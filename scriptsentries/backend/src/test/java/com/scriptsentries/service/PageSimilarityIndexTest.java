@@ -0,0 +1,113 @@
+package com.scriptsentries.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Indexes the pages of a draft, then queries with the pages of a revision that inserts
+ * half a page of new material after page 3, so every later page straddles two old ones.
+ */
+class PageSimilarityIndexTest {
+
+    private static final int PAGE_WORDS = 250;
+    /**
+     * Below the 0.95 default: a pair's containment is estimated from the Jaccard of the
+     * page with the pair's union, which is noisier than a single page's (±0.05 here).
+     */
+    private static final double THRESHOLD = 0.9;
+
+    private final Random random = new Random(11);
+
+    private List<String> words(int count) {
+        List<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) words.add("w" + random.nextInt(1_000_000));
+        return words;
+    }
+
+    private static List<String> paginate(List<String> words) {
+        List<String> pages = new ArrayList<>();
+        for (int from = 0; from < words.size(); from += PAGE_WORDS) {
+            pages.add(String.join(" ", words.subList(from, Math.min(words.size(), from + PAGE_WORDS))));
+        }
+        return pages;
+    }
+
+    private static PageSimilarityIndex index(long scriptId, int rank, List<String> pages) {
+        PageSimilarityIndex index = new PageSimilarityIndex();
+        add(index, scriptId, rank, pages);
+        return index;
+    }
+
+    private static void add(PageSimilarityIndex index, long scriptId, int rank, List<String> pages) {
+        for (int i = 0; i < pages.size(); i++) {
+            index.add(new PageSimilarityIndex.Entry(scriptId, rank, i + 1, MinHash.of(pages.get(i))));
+        }
+    }
+
+    private static List<Integer> matchedPages(PageSimilarityIndex index, String page) {
+        PageSimilarityIndex.Match match = index.bestMatch(MinHash.of(page), THRESHOLD);
+        if (match == null) return List.of();
+        return match.pages().stream().map(PageSimilarityIndex.Entry::pageNumber).toList();
+    }
+
+    @Test
+    void alignsShiftedPagesWithThePairTheyStraddle() {
+        List<String> draft = words(10 * PAGE_WORDS);
+        List<String> revised = new ArrayList<>(draft.subList(0, 3 * PAGE_WORDS + PAGE_WORDS / 2));
+        revised.addAll(words(PAGE_WORDS / 2));
+        revised.addAll(draft.subList(3 * PAGE_WORDS + PAGE_WORDS / 2, draft.size()));
+        PageSimilarityIndex index = index(1, 0, paginate(draft));
+        List<String> pages = paginate(revised);
+
+        // Before the insertion: the same single page
+        for (int p = 1; p <= 3; p++) assertThat(matchedPages(index, pages.get(p - 1))).containsExactly(p);
+        // Half old page 4, half new material: not explained by the draft
+        assertThat(matchedPages(index, pages.get(3))).isEmpty();
+        // After it: second half of old page p - 1 and first half of old page p
+        for (int p = 5; p <= 10; p++) {
+            assertThat(matchedPages(index, pages.get(p - 1))).as("page %d", p)
+                    .containsExactlyInAnyOrder(p - 1, p);
+        }
+        // Last half page: the rest of old page 10
+        assertThat(matchedPages(index, pages.get(10))).containsExactly(10);
+    }
+
+    @Test
+    void prefersTheSinglePageOverAPairThatIsNoBetter() {
+        List<String> pages = paginate(words(4 * PAGE_WORDS));
+        PageSimilarityIndex.Match match = index(1, 0, pages).bestMatch(MinHash.of(pages.get(1)), THRESHOLD);
+        assertThat(match.secondary()).isNull();
+        assertThat(match.primary().pageNumber()).isEqualTo(2);
+        assertThat(match.containment()).isEqualTo(1.0);
+    }
+
+    @Test
+    void mostRecentVersionWinsAmongEquallyGoodMatches() {
+        List<String> pages = paginate(words(3 * PAGE_WORDS));
+        PageSimilarityIndex olderFirst = index(10, 1, pages);
+        add(olderFirst, 20, 0, pages);
+        PageSimilarityIndex newerFirst = index(20, 0, pages);
+        add(newerFirst, 10, 1, pages);
+
+        for (PageSimilarityIndex index : List.of(olderFirst, newerFirst)) {
+            PageSimilarityIndex.Match match = index.bestMatch(MinHash.of(pages.get(2)), THRESHOLD);
+            assertThat(match.primary().scriptId()).isEqualTo(20L);
+            assertThat(match.primary().pageNumber()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void doesNotMatchUnrelatedOrBlankPages() {
+        PageSimilarityIndex index = index(1, 0, paginate(words(10 * PAGE_WORDS)));
+        for (String page : paginate(words(5 * PAGE_WORDS))) {
+            assertThat(index.bestMatch(MinHash.of(page), 0.5)).isNull();
+        }
+        assertThat(index.bestMatch(MinHash.of("  "), THRESHOLD)).isNull();
+        assertThat(new PageSimilarityIndex().isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,119 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.model.enums.RiskSeverity;
+import com.scriptsentries.model.enums.RiskSubCategory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class PreFilterEngineTest {
+
+    private final PreFilterEngine engine = new PreFilterEngine();
+
+    @Test
+    void flagsRealPhoneNumbersAndRatesFictionalOnesLow() {
+        List<PreFilterEngine.RuleMatch> matches = engine.scan(
+                "She dials (310) 555-0199, then 212-867-5309.").matches();
+
+        assertThat(matches).extracting(PreFilterEngine.RuleMatch::subCategory)
+                .containsOnly(RiskSubCategory.PHONE_NUMBER);
+        assertThat(matches).extracting(PreFilterEngine.RuleMatch::entityName, PreFilterEngine.RuleMatch::severity)
+                .containsExactly(
+                        tuple("(310) 555-0199", RiskSeverity.LOW),
+                        tuple("212-867-5309", RiskSeverity.MEDIUM));
+    }
+
+    @Test
+    void flagsUrlsAndEmailsButNotSentenceEnds() {
+        List<PreFilterEngine.RuleMatch> matches = engine.scan(
+                "The banner reads www.riverside-bank.com. Mail tips@riverside.org. He left.It rained.").matches();
+
+        assertThat(matches).extracting(PreFilterEngine.RuleMatch::entityName)
+                .containsExactly("www.riverside-bank.com", "tips@riverside.org");
+        assertThat(matches).extracting(PreFilterEngine.RuleMatch::subCategory)
+                .containsOnly(RiskSubCategory.WEBSITE_URL);
+    }
+
+    @Test
+    void flagsStreetAddressesInTitleCaseOrCapsOnly() {
+        assertThat(engine.scan("They meet at 1428 Elm Street at dawn.").matches())
+                .extracting(PreFilterEngine.RuleMatch::entityName).containsExactly("1428 Elm Street");
+        assertThat(engine.scan("EXT. 221 BAKER ST. - NIGHT").matches())
+                .extracting(PreFilterEngine.RuleMatch::subCategory).containsExactly(RiskSubCategory.ADDRESS);
+        assertThat(engine.scan("3 cars on the road, 40 people in the street.").matches()).isEmpty();
+    }
+
+    @Test
+    void flagsLicensePlatesWithDigitsOnly() {
+        assertThat(engine.scan("Close on the license plate: 7ABC123.").matches())
+                .extracting(PreFilterEngine.RuleMatch::entityName).containsExactly("7ABC123");
+        assertThat(engine.scan("He swaps the plates at night.").matches()).isEmpty();
+    }
+
+    @Test
+    void reportsEachEntityOnce() {
+        assertThat(engine.scan("Call 212-867-5309. No, 212.867.5309!").matches()).hasSize(1);
+    }
+
+    @Test
+    void countsCapitalisedWordsAndQuotationsAsCandidates() {
+        assertThat(PreFilterEngine.hasCandidateEntity("He drinks a Coca-Cola.")).isTrue();
+        assertThat(PreFilterEngine.hasCandidateEntity("She hums \"yesterday\" quietly.")).isTrue();
+    }
+
+    @Test
+    void countsSentenceInitialNamesButNotCommonOpeners() {
+        assertThat(PreFilterEngine.hasCandidateEntity("Starbucks is packed.")).isTrue();
+        assertThat(PreFilterEngine.hasCandidateEntity("It is packed. Nike shoes everywhere.")).isTrue();
+        assertThat(PreFilterEngine.hasCandidateEntity("The room is packed. She waits.")).isFalse();
+        assertThat(PreFilterEngine.hasCandidateEntity("I know. I'm sorry.")).isFalse();
+    }
+
+    @Test
+    void countsSluglinesButNotCuesOrTransitions() {
+        assertThat(PreFilterEngine.hasCandidateEntity("INT. EMPIRE STATE BUILDING - DAY")).isTrue();
+        assertThat(PreFilterEngine.hasCandidateEntity("12A EXT. HARBOR - NIGHT")).isTrue();
+        assertThat(PreFilterEngine.hasCandidateEntity("MAYA\nwe go now.\n\nCUT TO:")).isFalse();
+    }
+
+    @Test
+    void blankPagesHaveNothingToScan() {
+        PreFilterEngine.PageScan scan = engine.scan("  \n ");
+        assertThat(scan.matches()).isEmpty();
+        assertThat(scan.hasCandidates()).isFalse();
+    }
+
+    @Test
+    void scansTwoHundredPagesInWellUnderASecond() {
+        List<String> pages = new ArrayList<>();
+        for (int p = 1; p <= 200; p++) pages.add(page(p));
+        for (int i = 0; i < 3; i++) pages.forEach(engine::scan);
+
+        long start = System.nanoTime();
+        int matches = 0;
+        for (String page : pages) matches += engine.scan(page).matches().size();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(matches).isEqualTo(200 * 2);
+        // A few milliseconds in practice; the bound only catches a regression to per-pattern scans
+        assertThat(millis).isLessThan(500);
+    }
+
+    /** A page of screenplay text with one phone number and one URL. */
+    private static String page(int number) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("INT. WAREHOUSE ").append(number).append(" - NIGHT\n\n");
+        for (int i = 0; i < 6; i++) {
+            sb.append("Rain hammers the roof. MAYA (30s) crosses to the loading dock.\n\n")
+                    .append("                    MAYA\n")
+                    .append("          We open the doors at midnight, not before.\n\n");
+        }
+        sb.append("A flyer on the wall: call 212-867-").append(String.format("%04d", number))
+                .append(" or visit www.warehouse").append(number).append(".com today.\n");
+        return sb.toString();
+    }
+}
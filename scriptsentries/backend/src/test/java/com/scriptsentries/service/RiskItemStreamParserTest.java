@@ -0,0 +1,185 @@
+package com.scriptsentries.service;
+
+import com.scriptsentries.dto.AiPageAnalysisResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Every case is fed one character at a time, in small uneven chunks and in one piece:
+ * the streaming path must not depend on where the chunk boundaries fall.
+ */
+class RiskItemStreamParserTest {
+
+    private static final int[] CHUNK_SIZES = {1, 3, 7, Integer.MAX_VALUE};
+
+    private static final String NIKE =
+            "{\"category\":\"BRANDS\",\"subCategory\":\"LOGO\",\"entityName\":\"Nike\",\"snippet\":\"He said \\\"Nike\\\" twice\"}";
+    private static final String BEATLES =
+            "{\"category\":\"MUSIC\",\"entityName\":\"Yesterday\",\"snippet\":\"see https://example.com/song\"}";
+
+    /** What the parser made of one response, fed in chunks of {@code size}. */
+    private record Parsed(List<AiPageAnalysisResult.AiRiskItem> items, RiskItemStreamParser.Outcome outcome,
+                          boolean truncated) {
+
+        List<String> entities() {
+            return items.stream().map(AiPageAnalysisResult.AiRiskItem::getEntityName).toList();
+        }
+    }
+
+    private static Parsed parse(String response, int size) {
+        List<AiPageAnalysisResult.AiRiskItem> items = new ArrayList<>();
+        RiskItemStreamParser parser = new RiskItemStreamParser(items::add);
+        for (int i = 0; i < response.length(); i += Math.min(size, response.length() - i)) {
+            parser.feed(response.substring(i, i + Math.min(size, response.length() - i)));
+        }
+        RiskItemStreamParser.Outcome outcome = parser.finish();
+        return new Parsed(items, outcome, parser.truncated());
+    }
+
+    @Test
+    void wellFormedResponseIsClean() {
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse("{\"risks\": [" + NIKE + ", " + BEATLES + "]}", size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.CLEAN);
+            assertThat(parsed.entities()).as("chunks of %d", size).containsExactly("Nike", "Yesterday");
+            assertThat(parsed.items().get(0).getSnippet()).isEqualTo("He said \"Nike\" twice");
+            assertThat(parsed.truncated()).isFalse();
+        }
+    }
+
+    @Test
+    void emptyRisksAndOtherKeysAreClean() {
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse("{\"page\": 3, \"notes\": [\"none\"], \"risks\": []}", size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.CLEAN);
+            assertThat(parsed.items()).isEmpty();
+        }
+    }
+
+    @Test
+    void skipsMarkdownFenceAndPreamble() {
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse("Here are the risks [as JSON]:\n```json\n{\"risks\": [" + NIKE + "]}\n```\n", size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.CLEAN);
+            assertThat(parsed.entities()).containsExactly("Nike");
+        }
+    }
+
+    @Test
+    void ignoresCommentsButNotSlashesInStrings() {
+        String response = "{\"risks\": [ // first\n"
+                + "{\"category\":\"MUSIC\", /* the song */ \"entityName\":\"Yesterday\", // title\n"
+                + "\"snippet\":\"see https://example.com/song\"},\n"
+                + "/* second */ " + NIKE + "]}";
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse(response, size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.CLEAN);
+            assertThat(parsed.entities()).containsExactly("Yesterday", "Nike");
+            assertThat(parsed.items().get(0).getSnippet()).isEqualTo("see https://example.com/song");
+        }
+    }
+
+    @Test
+    void acceptsTrailingCommasAndRawNewlines() {
+        String response = "{\"risks\": [{\"category\":\"BRANDS\",\"entityName\":\"Nike\",\"snippet\":\"line one\nline two\",},]}";
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse(response, size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.CLEAN);
+            assertThat(parsed.items().get(0).getSnippet()).isEqualTo("line one\nline two");
+        }
+    }
+
+    @Test
+    void dropsMalformedItemAndKeepsTheRest() {
+        String response = "{\"risks\": [{\"category\": BRANDS, \"entityName\": \"Acme\"}, " + NIKE + "]}";
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse(response, size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.SALVAGED);
+            assertThat(parsed.entities()).containsExactly("Nike");
+            assertThat(parsed.truncated()).isFalse();
+        }
+    }
+
+    @Test
+    void cutAfterCompleteItemIsSalvagedAndTruncated() {
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse("{\"risks\": [" + NIKE + ", ", size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.SALVAGED);
+            assertThat(parsed.entities()).containsExactly("Nike");
+            assertThat(parsed.truncated()).isTrue();
+        }
+    }
+
+    @Test
+    void cutInsideALaterFieldDropsOnlyThatField() {
+        String response = "{\"risks\": [" + NIKE + ", {\"category\":\"MUSIC\",\"entityName\":\"Yesterday\",\"reason\":\"Lyrics are quo";
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse(response, size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.REPAIRED);
+            assertThat(parsed.entities()).containsExactly("Nike", "Yesterday");
+            assertThat(parsed.items().get(1).getReason()).isNull();
+            assertThat(parsed.truncated()).isTrue();
+        }
+    }
+
+    @Test
+    void cutAfterACompleteValueClosesTheItem() {
+        String response = "{\"risks\": [{\"category\":\"MUSIC\",\"entityName\":\"Yesterday\",\"severity\":\"HIGH\"";
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse(response, size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.REPAIRED);
+            assertThat(parsed.items().get(0).getSeverity()).isEqualTo("HIGH");
+        }
+    }
+
+    @Test
+    void cutInsideTheEntityNameKeepsNothingOfThatItem() {
+        String response = "{\"risks\": [{\"category\":\"MUSIC\",\"entityName\":\"Yester";
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse(response, size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.UNUSABLE);
+            assertThat(parsed.items()).isEmpty();
+        }
+    }
+
+    @Test
+    void cutInsideEntityNameAfterCompleteItemsKeepsThem() {
+        String response = "{\"risks\": [" + NIKE + ", {\"category\":\"MUSIC\",\"entityName\":\"Yester";
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse(response, size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.SALVAGED);
+            assertThat(parsed.entities()).containsExactly("Nike");
+        }
+    }
+
+    @Test
+    void readsBareTopLevelArray() {
+        for (int size : CHUNK_SIZES) {
+            Parsed parsed = parse("```json\n[" + NIKE + ", " + BEATLES + "]\n```", size);
+            assertThat(parsed.outcome()).as("chunks of %d", size).isEqualTo(RiskItemStreamParser.Outcome.CLEAN);
+            assertThat(parsed.entities()).containsExactly("Nike", "Yesterday");
+        }
+        assertThat(parse("[]", 1).outcome()).isEqualTo(RiskItemStreamParser.Outcome.CLEAN);
+    }
+
+    @Test
+    void proseWithoutJsonIsUnusable() {
+        for (int size : CHUNK_SIZES) {
+            assertThat(parse("Sorry, I cannot help [with that].", size).outcome()).as("chunks of %d", size)
+                    .isEqualTo(RiskItemStreamParser.Outcome.UNUSABLE);
+            assertThat(parse("", size).outcome()).isEqualTo(RiskItemStreamParser.Outcome.UNUSABLE);
+        }
+    }
+
+    @Test
+    void parseMatchesFeedingInOnePiece() {
+        RiskItemStreamParser.Result result = RiskItemStreamParser.parse("{\"risks\": [" + NIKE + ", ");
+        assertThat(result.outcome()).isEqualTo(RiskItemStreamParser.Outcome.SALVAGED);
+        assertThat(result.items()).hasSize(1);
+        assertThat(result.truncated()).isTrue();
+    }
+}
@@ -0,0 +1,136 @@
+package com.scriptsentries.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ScreenplayParserTest {
+
+    private final ScreenplayParser parser = new ScreenplayParser();
+
+    private static final String PAGE_1 = """
+            THE LONG NIGHT
+
+            FADE IN:
+
+            12 INT. WAREHOUSE - NIGHT 12
+
+            Rain hammers the roof.
+
+                                MAYA
+                      We open the doors at midnight,
+                      not a minute before.
+
+                                DR. HOLT (V.O.)
+                          (over the radio)
+                      Copy that.
+
+            THE DOOR BURSTS OPEN.
+            Wind and rain pour in.
+
+                                MAYA
+                      Nobody moves until I say,
+                                (MORE)
+                                                        2.
+            """;
+
+    private static final String PAGE_2 = """
+                                MAYA (CONT'D)
+                      and I haven't said.
+
+                                                  CUT TO:
+
+            12A EXT. HARBOR - CONTINUOUS
+
+            The boats rock in the swell.
+            """;
+
+    /** The kind, text and speaker of each block of {@code scene}. */
+    private static List<List<Object>> blocks(ScreenplayParser.Scene scene, String... pages) {
+        return scene.blocks().stream()
+                .map(b -> Arrays.<Object>asList(b.kind(), pages[b.page() - 1].substring(b.start(), b.end()).strip(),
+                        b.character()))
+                .toList();
+    }
+
+    @Test
+    void splitsScenesAtSluglinesWithSceneNumbers() {
+        ScreenplayParser.Index index = parser.parse(List.of(PAGE_1, PAGE_2));
+
+        assertThat(index.scenes()).extracting(ScreenplayParser.Scene::number, ScreenplayParser.Scene::heading,
+                        ScreenplayParser.Scene::startPage, ScreenplayParser.Scene::endPage)
+                .containsExactly(
+                        tuple(0, null, 1, 1),
+                        tuple(1, "12 INT. WAREHOUSE - NIGHT 12", 1, 2),
+                        tuple(2, "12A EXT. HARBOR - CONTINUOUS", 2, 2));
+        assertThat(index.headedScenes()).isEqualTo(2L);
+    }
+
+    @Test
+    void textBeforeTheFirstSluglineIsSceneZero() {
+        ScreenplayParser.Scene titlePage = parser.parse(List.of(PAGE_1, PAGE_2)).scenes().get(0);
+
+        assertThat(titlePage.heading()).isNull();
+        assertThat(titlePage.characters()).isEmpty();
+        assertThat(blocks(titlePage, PAGE_1)).containsExactly(
+                Arrays.asList(ScreenplayParser.BlockKind.ACTION, "THE LONG NIGHT", null),
+                Arrays.asList(ScreenplayParser.BlockKind.TRANSITION, "FADE IN:", null));
+        assertThat(titlePage.segments()).hasSize(1);
+        ScreenplayParser.Segment segment = titlePage.segments().get(0);
+        assertThat(PAGE_1.substring(segment.start(), segment.end()).strip()).isEqualTo("THE LONG NIGHT\n\nFADE IN:");
+    }
+
+    @Test
+    void speechContinuesAcrossThePageBreak() {
+        ScreenplayParser.Scene warehouse = parser.parse(List.of(PAGE_1, PAGE_2)).scenes().get(1);
+
+        assertThat(warehouse.characters()).containsExactly("MAYA", "DR. HOLT");
+        List<List<Object>> blocks = blocks(warehouse, PAGE_1, PAGE_2);
+        assertThat(blocks).contains(
+                Arrays.asList(ScreenplayParser.BlockKind.DIALOGUE, "Nobody moves until I say,", "MAYA"),
+                Arrays.asList(ScreenplayParser.BlockKind.CHARACTER, "MAYA (CONT'D)", "MAYA"),
+                Arrays.asList(ScreenplayParser.BlockKind.DIALOGUE, "and I haven't said.", "MAYA"));
+        // (MORE) and the page number are neither dialogue nor action
+        assertThat(blocks.stream().map(b -> b.get(1)).toList()).doesNotContain("(MORE)", "2.");
+        assertThat(warehouse.segments()).extracting(ScreenplayParser.Segment::page).containsExactly(1, 2);
+    }
+
+    @Test
+    void readsParentheticalsAndTransitions() {
+        ScreenplayParser.Scene warehouse = parser.parse(List.of(PAGE_1, PAGE_2)).scenes().get(1);
+
+        assertThat(blocks(warehouse, PAGE_1, PAGE_2)).contains(
+                Arrays.asList(ScreenplayParser.BlockKind.CHARACTER, "DR. HOLT (V.O.)", "DR. HOLT"),
+                Arrays.asList(ScreenplayParser.BlockKind.PARENTHETICAL, "(over the radio)", "DR. HOLT"),
+                Arrays.asList(ScreenplayParser.BlockKind.TRANSITION, "CUT TO:", null));
+        assertThat(warehouse.dialogueBlocks()).isEqualTo(4);
+    }
+
+    @Test
+    void upperCaseActionLineIsNotACue() {
+        ScreenplayParser.Scene warehouse = parser.parse(List.of(PAGE_1, PAGE_2)).scenes().get(1);
+
+        assertThat(blocks(warehouse, PAGE_1, PAGE_2)).contains(
+                Arrays.asList(ScreenplayParser.BlockKind.ACTION, "THE DOOR BURSTS OPEN.\nWind and rain pour in.", null));
+        assertThat(warehouse.characters()).doesNotContain("THE DOOR BURSTS OPEN.");
+        assertThat(warehouse.actionBlocks()).isEqualTo(2);
+    }
+
+    @Test
+    void scenesContinueAcrossPagesOutsideTheRun() {
+        ScreenplayParser.Index index = parser.parse(Arrays.asList(PAGE_1, null, "The boats rock in the swell.\n"));
+
+        ScreenplayParser.Scene warehouse = index.scenes().get(1);
+        assertThat(warehouse.endPage()).isEqualTo(3);
+        assertThat(warehouse.segments()).extracting(ScreenplayParser.Segment::page).containsExactly(1, 3);
+    }
+
+    @Test
+    void textWithoutSluglinesHasNoScenes() {
+        assertThat(parser.parse(List.of("Dear reader,\n\nTHANK YOU\nfor reading.\n")).scenes()).isEmpty();
+    }
+}
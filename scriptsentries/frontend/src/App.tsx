@@ -40,6 +40,8 @@ function ProjectUploadButton({ projectId, onDone }: ProjectUploadButtonProps) {
 
   const [phase,    setPhase]    = useState<'idle' | 'uploading' | 'analyzing'>('idle')
   const [progress, setProgress] = useState(0)
+  const [pages,    setPages]    = useState({ done: 0, total: 0 })
+  const [highs,    setHighs]    = useState(0)
   const [error,    setError]    = useState<string | null>(null)
 
   if (!allowed) return null
@@ -58,14 +60,26 @@ function ProjectUploadButton({ projectId, onDone }: ProjectUploadButtonProps) {
       const script = await scanScript(file, projectId, (pct) => {
         setProgress(pct)
         if (pct >= 100) setPhase('analyzing')
+      }, (job) => {
+        setPhase('analyzing')
+        setPages({ done: job.pagesDone, total: job.pagesTotal })
+      }, 'STANDARD', (page) => {
+        // Flags arrive already saved — they show up in the report while the scan runs
+        setPages({ done: page.pagesDone, total: page.pagesTotal })
+        setHighs(n => n + page.risks.filter(r => r.severity === 'HIGH').length)
       })
       setPhase('idle')
       setProgress(0)
+      setPages({ done: 0, total: 0 })
+      setHighs(0)
       onDone(script)
     } catch (e: unknown) {
-      const msg = (e as { response?: { data?: { error?: string } } })?.response?.data?.error ?? 'Upload failed.'
+      const msg = (e as { response?: { data?: { error?: string } } })?.response?.data?.error
+        ?? (e instanceof Error ? e.message : 'Upload failed.')
       setError(msg)
       setPhase('idle')
+      setPages({ done: 0, total: 0 })
+      setHighs(0)
     }
   }
 
@@ -77,7 +91,7 @@ function ProjectUploadButton({ projectId, onDone }: ProjectUploadButtonProps) {
                            ? 'bg-slate-100 border-slate-200 text-slate-400 cursor-not-allowed'
                            : 'bg-emerald-600 hover:bg-emerald-500 text-white border-emerald-600 active:scale-95'}`}>
         {phase === 'uploading' && <><Loader2 size={14} className="animate-spin" /> Uploading {progress}%</>}
-        {phase === 'analyzing' && <><Loader2 size={14} className="animate-spin" /> Analyzing…</>}
+        {phase === 'analyzing' && <><Loader2 size={14} className="animate-spin" /> Analyzing{pages.total > 0 ? ` ${pages.done}/${pages.total}` : '…'}{highs > 0 ? ` · ${highs} HIGH` : ''}</>}
         {phase === 'idle'      && <><Upload size={14} /> Upload New Script</>}
         <input type="file" accept=".pdf" className="hidden" disabled={busy}
           onChange={e => { const f = e.target.files?.[0]; if (f) handleFile(f) }} />
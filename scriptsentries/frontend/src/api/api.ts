@@ -1,6 +1,6 @@
 // src/api/api.ts
 import axios from 'axios'
-import type { Script, RiskFlag, RiskUpdatePayload } from '../types'
+import type { Script, RiskFlag, RiskUpdatePayload, ScanJob, ScanPageEvent, ScanProfile } from '../types'
 console.log("VITE ENV IS:", import.meta.env.VITE_API_BASE_URL);
 export const api = axios.create({ 
   baseURL: import.meta.env.VITE_API_BASE_URL || '/api' 
@@ -33,17 +33,26 @@ export async function getScript(id: number): Promise<Script> {
  * Upload a PDF for zero-retention AI analysis.
  * projectId MUST be appended to FormData — backend @RequestParam("projectId") is required.
  * Do NOT pass onProgress as the second arg — that was the original bug.
+ *
+ * The backend answers 202 with a scan job; we follow its SSE stream (falling back to
+ * polling) until the analysis finishes and then load the completed script.
+ * onJobProgress reports pages done / total; onPage delivers each page's flags as soon
+ * as that page is analyzed.
  */
 export async function scanScript(
   file: File,
   projectId: number,
   onProgress?: (pct: number) => void,
+  onJobProgress?: (job: ScanJob) => void,
+  profile: ScanProfile = 'STANDARD',
+  onPage?: (event: ScanPageEvent) => void,
 ): Promise<Script> {
   const form = new FormData()
   form.append('file', file)
   form.append('projectId', String(projectId))  // required by backend
+  form.append('profile', profile)
 
-  const { data } = await api.post<Script>('/scripts/scan', form, {
+  const { data: job } = await api.post<ScanJob>('/scripts/scan', form, {
     // Do NOT set Content-Type — axios sets multipart/form-data with boundary
     onUploadProgress: (e) => {
       if (onProgress && e.total) {
@@ -52,9 +61,55 @@ export async function scanScript(
     },
   })
 
+  const finished = await streamScanJob(job.jobId, onJobProgress, onPage)
+    .catch(() => waitForScanJob(job.jobId, onJobProgress))
+  if (finished.state === 'FAILED') {
+    throw new Error(finished.error ?? 'Analysis failed.')
+  }
+  return getScript(finished.scriptId)
+}
+
+export async function getScanJob(jobId: string): Promise<ScanJob> {
+  const { data } = await api.get<ScanJob>(`/scripts/scan/jobs/${jobId}`)
   return data
 }
 
+const SCAN_POLL_MS = 2000
+
+/**
+ * Follows GET /scripts/scan/jobs/{id}/events. Rejects if the stream drops before the
+ * job finishes, so the caller can fall back to polling.
+ */
+function streamScanJob(
+  jobId: string,
+  onJobProgress?: (job: ScanJob) => void,
+  onPage?: (event: ScanPageEvent) => void,
+): Promise<ScanJob> {
+  return new Promise((resolve, reject) => {
+    const base = api.defaults.baseURL ?? '/api'
+    const source = new EventSource(`${base}/scripts/scan/jobs/${jobId}/events`)
+    const finish = (e: MessageEvent) => { source.close(); resolve(JSON.parse(e.data) as ScanJob) }
+
+    source.addEventListener('progress', (e) => onJobProgress?.(JSON.parse((e as MessageEvent).data)))
+    source.addEventListener('page', (e) => onPage?.(JSON.parse((e as MessageEvent).data)))
+    source.addEventListener('complete', (e) => finish(e as MessageEvent))
+    source.addEventListener('failed',   (e) => finish(e as MessageEvent))
+    source.onerror = () => { source.close(); reject(new Error('Scan event stream closed')) }
+  })
+}
+
+async function waitForScanJob(
+  jobId: string,
+  onJobProgress?: (job: ScanJob) => void,
+): Promise<ScanJob> {
+  for (;;) {
+    const job = await getScanJob(jobId)
+    onJobProgress?.(job)
+    if (job.state === 'COMPLETE' || job.state === 'FAILED') return job
+    await new Promise(resolve => setTimeout(resolve, SCAN_POLL_MS))
+  }
+}
+
 // ─── Risk Flags ───────────────────────────────────────────────────────────────
 
 export async function updateRisk(
@@ -14,6 +14,9 @@ export type ClearanceStatus =
 
 export type ScriptStatus = 'PROCESSING' | 'COMPLETE' | 'FAILED'
 
+// FAST only sends pages with a dictionary or rule hit to the model
+export type ScanProfile = 'STANDARD' | 'FAST'
+
 export interface RiskFlag {
   id: number
   category: RiskCategory
@@ -41,6 +44,29 @@ export interface Script {
   risks: RiskFlag[] | null
 }
 
+export type ScanJobState = 'QUEUED' | 'RUNNING' | 'COMPLETE' | 'FAILED'
+
+export interface ScanJob {
+  jobId: string
+  scriptId: number
+  filename: string
+  state: ScanJobState
+  pagesDone: number
+  pagesTotal: number
+  riskCount: number
+  error: string | null
+  submittedAt: string
+  finishedAt: string | null
+}
+
+// SSE "page" event: one finished page and its (already persisted) flags
+export interface ScanPageEvent {
+  pageNumber: number
+  pagesDone: number
+  pagesTotal: number
+  risks: RiskFlag[]
+}
+
 export interface RiskUpdatePayload {
   status?: ClearanceStatus
   comments?: string